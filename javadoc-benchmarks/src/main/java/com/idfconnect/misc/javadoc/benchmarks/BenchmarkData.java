@@ -0,0 +1,213 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+
+/**
+ * Generates the input of the benchmarks. The entries are deterministic, so every run and every loader sees the same data: keys spread over a number of
+ * sections, comma delimited values with repeats across keys, and every eighth line repeating an earlier key so that values get appended.
+ *
+ * @since 3.1.4
+ */
+final class BenchmarkData {
+    /** The prefix of the generated keys in the prefixed profiles */
+    static final String PREFIX        = "app.";
+    /** The number of generated defaults, half of which are also loaded from the input */
+    static final int    DEFAULT_COUNT = 1000;
+    /** The number of generated system properties, all of which override loaded keys */
+    static final int    SYSTEM_COUNT  = 100;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Parses a size such as "1KB", "100MB" or "1GB"
+     *
+     * @param size
+     * @return the size in bytes
+     */
+    static long parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        long unit = 1;
+        if (s.endsWith("GB"))
+            unit = 1L << 30;
+        else if (s.endsWith("MB"))
+            unit = 1L << 20;
+        else if (s.endsWith("KB"))
+            unit = 1L << 10;
+        if (unit != 1)
+            s = s.substring(0, s.length() - 2);
+        else if (s.endsWith("B"))
+            s = s.substring(0, s.length() - 1);
+        return Long.parseLong(s.trim()) * unit;
+    }
+
+    /**
+     * Returns the generated key with the given index
+     *
+     * @param index
+     * @param prefixed
+     * @return
+     */
+    static String key(int index, boolean prefixed) {
+        return (prefixed ? PREFIX : "") + "service" + (index % 97) + ".key" + index;
+    }
+
+    /**
+     * Returns the generated value with the given index
+     *
+     * @param index
+     * @return
+     */
+    static String value(int index) {
+        return "host" + (index % 31) + ".example.com,role" + (index % 7) + "," + ((index & 1) == 0);
+    }
+
+    /**
+     * Generates entries until they add up to about the given number of bytes of properties text
+     *
+     * @param bytes
+     * @param prefixed
+     * @param entries
+     *            called with each key and its raw, comma delimited value
+     */
+    static void generate(long bytes, boolean prefixed, BiConsumer<String, String> entries) {
+        long written = 0;
+        for (int i = 0; written < bytes; i++) {
+            String key = key((i % 8 == 7) ? i - 5 : i, prefixed);
+            String value = value(i);
+            entries.accept(key, value);
+            written += key.length() + value.length() + 4;
+        }
+    }
+
+    /**
+     * Writes a temporary properties file of about the given size, with a comment line every 50 entries. The file is deleted on exit
+     *
+     * @param bytes
+     * @param prefixed
+     * @param quoted
+     *            true to quote the values
+     * @return
+     * @throws IOException
+     */
+    static Path writeFile(long bytes, boolean prefixed, boolean quoted) throws IOException {
+        Path file = Files.createTempFile("toom-bench", ".properties");
+        file.toFile().deleteOnExit();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            int[] count = new int[1];
+            generate(bytes, prefixed, (k, v) -> {
+                try {
+                    if (count[0]++ % 50 == 0)
+                        out.write("# section " + count[0] + "\n");
+                    out.write(k);
+                    out.write(" = ");
+                    if (quoted)
+                        out.write('"');
+                    out.write(v);
+                    if (quoted)
+                        out.write('"');
+                    out.write('\n');
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        }
+        return file;
+    }
+
+    /**
+     * Returns the generated entries of about the given size as Properties. Repeated keys keep their last value
+     *
+     * @param bytes
+     * @param prefixed
+     * @return
+     */
+    static Properties properties(long bytes, boolean prefixed) {
+        Properties props = new Properties();
+        generate(bytes, prefixed, props::setProperty);
+        return props;
+    }
+
+    /**
+     * Returns the generated entries of about the given size as a Map. Repeated keys keep their last value
+     *
+     * @param bytes
+     * @param prefixed
+     * @return
+     */
+    static Map<String, String> map(long bytes, boolean prefixed) {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        generate(bytes, prefixed, map::put);
+        return map;
+    }
+
+    /**
+     * Returns the generated entries of about the given size, with each value split on commas and repeated keys accumulating their values
+     *
+     * @param bytes
+     * @param prefixed
+     * @return
+     */
+    static TriggerOutOfMemory instance(long bytes, boolean prefixed) {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        generate(bytes, prefixed, (k, v) -> {
+            for (String s : v.split(","))
+                props.add(k, s);
+        });
+        return props;
+    }
+
+    /**
+     * Returns the generated defaults. The first half shares its keys with the loaded entries
+     *
+     * @param prefixed
+     * @return
+     */
+    static TriggerOutOfMemory defaults(boolean prefixed) {
+        TriggerOutOfMemory defaults = new TriggerOutOfMemory();
+        for (int i = 0; i < DEFAULT_COUNT; i++) {
+            String key = (i < DEFAULT_COUNT / 2) ? key(i, prefixed) : (prefixed ? PREFIX : "") + "defaults.key" + i;
+            defaults.put(key, "default" + i);
+        }
+        return defaults;
+    }
+
+    /**
+     * Sets the generated system properties, which override the first loaded keys
+     *
+     * @return the names of the properties, to be passed to {@link #clearSystemProperties(List)}
+     */
+    static List<String> setSystemProperties() {
+        List<String> names = new ArrayList<String>(SYSTEM_COUNT);
+        for (int i = 0; i < SYSTEM_COUNT; i++) {
+            String name = key(i, true);
+            System.setProperty(name, "system" + i + ",override");
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Removes the system properties set by {@link #setSystemProperties()}
+     *
+     * @param names
+     */
+    static void clearSystemProperties(List<String> names) {
+        if (names != null)
+            for (String name : names)
+                System.clearProperty(name);
+    }
+}
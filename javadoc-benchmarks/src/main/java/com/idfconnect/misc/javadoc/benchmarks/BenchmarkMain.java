@@ -0,0 +1,64 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, with defaults suited to comparing runs:
+ * <ul>
+ * <li>the GC profiler is added unless other profilers are given with {@code -prof}, so every result includes the allocation rate per operation</li>
+ * <li>results are written as JSON to {@code jmh-result.json} unless a format is given with {@code -rf}, or to {@code jmh-result-<label>.json} with
+ * {@code -Dbench.label=<label>}, so the runs before and after a change can be kept side by side</li>
+ * <li>{@code -Dbench.threads=1,2,4} runs the selected benchmarks once for each thread count, writing one result file per count</li>
+ * </ul>
+ * For example: {@code java -Dbench.label=baseline -jar target/benchmarks.jar LoaderBenchmark -p size=100MB}
+ *
+ * @since 3.1.4
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        String label = System.getProperty("bench.label");
+        List<Integer> threads = new ArrayList<Integer>();
+        String counts = System.getProperty("bench.threads");
+        if (counts != null)
+            for (String count : counts.split(","))
+                if (!count.trim().isEmpty())
+                    threads.add(Integer.valueOf(count.trim()));
+        if (threads.isEmpty())
+            threads.add(null);
+
+        for (Integer count : threads) {
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+            if (cmd.getProfilers().isEmpty())
+                options.addProfiler(GCProfiler.class);
+            if (!cmd.getResultFormat().hasValue()) {
+                StringBuilder result = new StringBuilder("jmh-result");
+                if (label != null && !label.isEmpty())
+                    result.append('-').append(label);
+                if (count != null)
+                    result.append("-t").append(count);
+                options.resultFormat(ResultFormatType.JSON).result(result.append(".json").toString());
+            }
+            if (count != null)
+                options.threads(count);
+            new Runner(options.build()).run();
+        }
+    }
+}
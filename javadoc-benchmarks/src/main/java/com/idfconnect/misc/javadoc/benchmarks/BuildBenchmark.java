@@ -0,0 +1,152 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Measures every {@link TriggerOutOfMemory.Builder} build path over input sizes from 1KB to 100MB, for each {@link Profile} of builder features. The
+ * in-memory inputs are generated from the same entries as the file, so the paths can be compared with each other; each benchmark only generates the
+ * one it builds from.
+ * <p>
+ * The forked JVMs get a 4GB heap, enough for 100MB inputs. The 1GB inputs are a separate run that needs a larger heap, for example
+ * {@code -p size=1GB -jvmArgsAppend "-Xms16g -Xmx16g"}. Run a subset with for example {@code -p size=1KB,1MB}.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class BuildBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({ "1KB", "1MB", "100MB" })
+        public String              size;
+
+        @Param
+        public Profile             profile;
+
+        long                       bytes;
+        Path                       file;
+        TriggerOutOfMemory.Builder builder;
+        private List<String>       systemProperties;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            bytes = BenchmarkData.parseSize(size);
+            file = BenchmarkData.writeFile(bytes, profile.prefixed, profile.quoted);
+            builder = profile.builder();
+            systemProperties = profile.setUp();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            BenchmarkData.clearSystemProperties(systemProperties);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PropertiesInput {
+        Properties properties;
+
+        @Setup(Level.Trial)
+        public void setUp(Input input) {
+            properties = BenchmarkData.properties(input.bytes, input.profile.prefixed);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            properties = null;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MapInput {
+        Map<String, String> map;
+
+        @Setup(Level.Trial)
+        public void setUp(Input input) {
+            map = BenchmarkData.map(input.bytes, input.profile.prefixed);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            map = null;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class InstanceInput {
+        TriggerOutOfMemory instance;
+
+        @Setup(Level.Trial)
+        public void setUp(Input input) {
+            instance = BenchmarkData.instance(input.bytes, input.profile.prefixed);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            instance = null;
+        }
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory reader(Input input) throws IOException, CollectionProviderException {
+        try (BufferedReader reader = Files.newBufferedReader(input.file, StandardCharsets.UTF_8)) {
+            return input.builder.build(reader);
+        }
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory file(Input input) throws CollectionProviderException {
+        return input.builder.build(input.file.toString());
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory fileAsync(Input input) {
+        return input.builder.buildAsync(input.file.toString()).join();
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory properties(Input input, PropertiesInput memory) throws CollectionProviderException {
+        return input.builder.build(memory.properties);
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory map(Input input, MapInput memory) throws CollectionProviderException {
+        return input.builder.build(memory.map);
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory instance(Input input, InstanceInput memory) throws CollectionProviderException {
+        return input.builder.build(memory.instance);
+    }
+}
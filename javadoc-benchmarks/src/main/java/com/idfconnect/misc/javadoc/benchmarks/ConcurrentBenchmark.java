@@ -0,0 +1,118 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idfconnect.misc.javadoc.tests.ConcurrentTriggerOutOfMemory;
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+
+/**
+ * Compares {@link ConcurrentTriggerOutOfMemory} with a {@link TriggerOutOfMemory} guarded by its monitor, for read-only access and for a mix of three
+ * readers to one writer. The read-only benchmarks scale with the number of threads given with {@code -t}; the mixed groups with {@code -tg}, or use
+ * {@code -Dbench.threads=1,2,4,8,16,32,64} with {@link BenchmarkMain} to run the whole range.
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentBenchmark {
+    private static final int KEYS = 10000;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final String[]               names = new String[KEYS];
+        ConcurrentTriggerOutOfMemory concurrent;
+        TriggerOutOfMemory           locked;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            locked = new TriggerOutOfMemory();
+            for (int i = 0; i < KEYS; i++) {
+                names[i] = BenchmarkData.key(i, false);
+                locked.put(names[i], BenchmarkData.value(i));
+            }
+            concurrent = new ConcurrentTriggerOutOfMemory(locked);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // start every thread elsewhere, so the threads do not walk the same keys in lockstep
+            next = ThreadLocalRandom.current().nextInt(KEYS);
+        }
+
+        String next(Shared shared) {
+            int index = next;
+            next = (index + 1 == KEYS) ? 0 : index + 1;
+            return shared.names[index];
+        }
+    }
+
+    @Benchmark
+    public String concurrentRead(Shared shared, Cursor cursor) {
+        return shared.concurrent.getFirstValue(cursor.next(shared));
+    }
+
+    @Benchmark
+    public String lockedRead(Shared shared, Cursor cursor) {
+        String key = cursor.next(shared);
+        synchronized (shared.locked) {
+            return shared.locked.getFirstValue(key);
+        }
+    }
+
+    @Benchmark
+    @Group("concurrentMixed")
+    @GroupThreads(3)
+    public String concurrentMixedRead(Shared shared, Cursor cursor) {
+        return shared.concurrent.getFirstValue(cursor.next(shared));
+    }
+
+    @Benchmark
+    @Group("concurrentMixed")
+    @GroupThreads(1)
+    public ConcurrentTriggerOutOfMemory concurrentMixedWrite(Shared shared, Cursor cursor) {
+        return shared.concurrent.put(cursor.next(shared), "updated");
+    }
+
+    @Benchmark
+    @Group("lockedMixed")
+    @GroupThreads(3)
+    public String lockedMixedRead(Shared shared, Cursor cursor) {
+        String key = cursor.next(shared);
+        synchronized (shared.locked) {
+            return shared.locked.getFirstValue(key);
+        }
+    }
+
+    @Benchmark
+    @Group("lockedMixed")
+    @GroupThreads(1)
+    public TriggerOutOfMemory lockedMixedWrite(Shared shared, Cursor cursor) {
+        String key = cursor.next(shared);
+        synchronized (shared.locked) {
+            return shared.locked.put(key, "updated");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Compares splitting delimited values while building with {@link String#split(String)} on every value, as the builder used to, for single character,
+ * multi-character, escaped and regular expression delimiters.
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DelimiterBenchmark {
+    private static final int           ENTRIES  = 10000;
+    private static final int           SEGMENTS = 8;
+
+    @Param({ ",", "::", "\\|", "[,;]" })
+    public String                      delimiter;
+
+    private Properties                 properties;
+    private TriggerOutOfMemory.Builder builder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // a literal rendering of the delimiter, alternating between the alternatives of the character class
+        String[] literals;
+        if ("\\|".equals(delimiter))
+            literals = new String[] { "|" };
+        else if ("[,;]".equals(delimiter))
+            literals = new String[] { ",", ";" };
+        else
+            literals = new String[] { delimiter };
+        properties = new Properties();
+        for (int i = 0; i < ENTRIES; i++) {
+            StringBuilder value = new StringBuilder();
+            for (int j = 0; j < SEGMENTS; j++) {
+                if (j > 0)
+                    value.append(literals[j % literals.length]);
+                value.append("segment").append(i % 31).append('-').append(j);
+            }
+            properties.setProperty(BenchmarkData.key(i, false), value.toString());
+        }
+        builder = TriggerOutOfMemory.builder().delimiter(delimiter);
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory splitter() throws CollectionProviderException {
+        return builder.build(properties);
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory stringSplit() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        properties.forEach((k, v) -> {
+            for (String value : ((String) v).split(delimiter))
+                if (!value.isEmpty())
+                    props.add((String) k, value);
+        });
+        return props;
+    }
+}
@@ -0,0 +1,108 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Compares the file loading strategies of {@link TriggerOutOfMemory.Builder} on the same comma delimited file: the Reader based loader, the memory-mapped
+ * loader, parallel parsing, lazy values and value deduplication. {@link #buildAndRead(Blackhole)} also reads every value, which includes the deferred
+ * split cost of lazy values.
+ * <p>
+ * The forked JVMs get a 4GB heap, enough for 100MB files. The 1GB file is a separate run that needs a larger heap, for example
+ * {@code -p size=1GB -jvmArgsAppend "-Xms16g -Xmx16g"}.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@State(Scope.Benchmark)
+public class LoaderBenchmark {
+    public enum Strategy {
+        READER,
+        MEMORY_MAPPED,
+        PARALLEL,
+        LAZY,
+        DEDUPLICATE,
+        MEMORY_MAPPED_PARALLEL_LAZY;
+
+        TriggerOutOfMemory.Builder builder() {
+            TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().delimiter(",");
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            switch (this) {
+            case MEMORY_MAPPED:
+                return builder.memoryMapped();
+            case PARALLEL:
+                return builder.memoryMapped().parallelism(parallelism);
+            case LAZY:
+                return builder.lazyValues();
+            case DEDUPLICATE:
+                return builder.deduplicate();
+            case MEMORY_MAPPED_PARALLEL_LAZY:
+                return builder.memoryMapped().parallelism(parallelism).lazyValues();
+            default:
+                return builder;
+            }
+        }
+    }
+
+    @Param({ "1MB", "100MB" })
+    public String                      size;
+
+    @Param
+    public Strategy                    strategy;
+
+    private Path                       file;
+    private String                     path;
+    private TriggerOutOfMemory.Builder builder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchmarkData.writeFile(BenchmarkData.parseSize(size), false, false);
+        path = file.toString();
+        builder = strategy.builder();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory build() throws CollectionProviderException {
+        return builder.build(path);
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory buildAndRead(Blackhole blackhole) throws CollectionProviderException {
+        TriggerOutOfMemory props = builder.build(path);
+        for (List<String> values : props.values())
+            for (int i = 0, n = values.size(); i < n; i++)
+                blackhole.consume(values.get(i));
+        return props;
+    }
+}
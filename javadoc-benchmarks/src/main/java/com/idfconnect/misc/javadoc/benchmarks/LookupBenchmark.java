@@ -0,0 +1,217 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idfconnect.misc.javadoc.tests.ConcurrentTriggerOutOfMemory;
+import com.idfconnect.misc.javadoc.tests.ImmutableTriggerOutOfMemory;
+import com.idfconnect.misc.javadoc.tests.MultiValuedLookup;
+import com.idfconnect.misc.javadoc.tests.OverlayTriggerOutOfMemory;
+import com.idfconnect.misc.javadoc.tests.PrefixView;
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+import com.idfconnect.misc.javadoc.tests.TypedTriggerOutOfMemory;
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Measures the single key lookups of every map flavour: the typed getters of {@link TriggerOutOfMemory} for hits and misses, the frozen
+ * {@link ImmutableTriggerOutOfMemory} including its String-free lookups, the primitive columns of {@link TypedTriggerOutOfMemory}, an
+ * {@link OverlayTriggerOutOfMemory} overriding one key in a hundred, the concurrent map, a memory-mapped snapshot and a {@link PrefixView}. Each thread walks the keys in order, so lookups are not served from a single cache line.
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Maps {
+        static final String          SECTION = "section.";
+
+        @Param({ "1000", "100000" })
+        public int                   keys;
+
+        TriggerOutOfMemory           props;
+        ImmutableTriggerOutOfMemory  frozen;
+        TypedTriggerOutOfMemory      typed;
+        OverlayTriggerOutOfMemory    overlay;
+        ConcurrentTriggerOutOfMemory concurrent;
+        MultiValuedLookup            snapshot;
+        PrefixView                   view;
+        String[]                     names;
+        String[]                     viewNames;
+        String[]                     misses;
+        StringBuilder[]              builders;
+        byte[][]                     bytes;
+        private Path                 source;
+        private Path                 snapshotFile;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, CollectionProviderException {
+            names = new String[keys];
+            viewNames = new String[keys];
+            misses = new String[keys];
+            builders = new StringBuilder[keys];
+            bytes = new byte[keys][];
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < keys; i++) {
+                viewNames[i] = "key" + i;
+                names[i] = SECTION + viewNames[i];
+                misses[i] = SECTION + "missing" + i;
+                builders[i] = new StringBuilder(names[i]);
+                bytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+                text.append(names[i]).append('=').append(i).append(',').append(i & 1).append('\n');
+            }
+            // every key holds a number and a 0/1 flag, so all the typed getters apply to the first value
+            source = Files.createTempFile("toom-bench", ".properties");
+            Files.write(source, text.toString().getBytes(StandardCharsets.UTF_8));
+            snapshotFile = Files.createTempFile("toom-bench", ".snapshot");
+            TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().delimiter(",");
+            props = builder.build(source.toString());
+            props.writeSnapshot(snapshotFile.toString(), source.toString(), builder);
+            snapshot = builder.buildFromSnapshot(snapshotFile.toString(), source.toString());
+            frozen = props.freeze();
+            typed = props.toTyped();
+            overlay = frozen.overlay();
+            for (int i = 0; i < keys; i += 100)
+                overlay.put(names[i], Collections.singletonList(String.valueOf(-i)));
+            concurrent = props.toConcurrent();
+            view = props.subView(SECTION);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(snapshotFile);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int bound) {
+            int index = next;
+            next = (index + 1 == bound) ? 0 : index + 1;
+            return index;
+        }
+    }
+
+    @Benchmark
+    public String getFirstValue(Maps maps, Cursor cursor) {
+        return maps.props.getFirstValue(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String getFirstValueMiss(Maps maps, Cursor cursor) {
+        return maps.props.getFirstValue(maps.misses[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public int getFirstValueAsInt(Maps maps, Cursor cursor) {
+        return maps.props.getFirstValueAsInt(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public long getFirstValueAsLong(Maps maps, Cursor cursor) {
+        return maps.props.getFirstValueAsLong(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public double getFirstValueAsDouble(Maps maps, Cursor cursor) {
+        return maps.props.getFirstValueAsDouble(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public boolean getFirstValueAsBoolean(Maps maps, Cursor cursor) {
+        return maps.props.getFirstValueAsBoolean(maps.names[cursor.next(maps.keys)], false);
+    }
+
+    @Benchmark
+    public Duration getFirstValueAsDuration(Maps maps, Cursor cursor) {
+        return maps.props.getFirstValueAsDuration(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String frozenGetFirstValue(Maps maps, Cursor cursor) {
+        return maps.frozen.getFirstValue(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String frozenGetFirstValueMiss(Maps maps, Cursor cursor) {
+        return maps.frozen.getFirstValue(maps.misses[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String frozenCharSequence(Maps maps, Cursor cursor) {
+        return maps.frozen.getFirstValue(maps.builders[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String frozenBytes(Maps maps, Cursor cursor) {
+        byte[] key = maps.bytes[cursor.next(maps.keys)];
+        return maps.frozen.getFirstValue(key, 0, key.length);
+    }
+
+    @Benchmark
+    public boolean frozenBytesAsBoolean(Maps maps, Cursor cursor) {
+        byte[] key = maps.bytes[cursor.next(maps.keys)];
+        return maps.frozen.getFirstValueAsBoolean(key, 0, key.length, false);
+    }
+
+    @Benchmark
+    public int typedGetInt(Maps maps, Cursor cursor) {
+        return maps.typed.getInt(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public double typedGetDouble(Maps maps, Cursor cursor) {
+        return maps.typed.getDouble(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public int[] typedGetIntValues(Maps maps, Cursor cursor) {
+        return maps.typed.getIntValues(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String overlayGetFirstValue(Maps maps, Cursor cursor) {
+        return maps.overlay.getFirstValue(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String concurrentGetFirstValue(Maps maps, Cursor cursor) {
+        return maps.concurrent.getFirstValue(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String snapshotGetFirstValue(Maps maps, Cursor cursor) {
+        return maps.snapshot.getFirstValue(maps.names[cursor.next(maps.keys)]);
+    }
+
+    @Benchmark
+    public String prefixViewGetFirstValue(Maps maps, Cursor cursor) {
+        return maps.view.getFirstValue(maps.viewNames[cursor.next(maps.keys)]);
+    }
+}
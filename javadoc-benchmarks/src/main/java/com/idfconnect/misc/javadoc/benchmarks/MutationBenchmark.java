@@ -0,0 +1,94 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idfconnect.misc.javadoc.tests.ConcurrentTriggerOutOfMemory;
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+
+/**
+ * Measures the single entry mutators. {@code add} appends to a rotating set of keys, and the map is cleared whenever the keys wrap around so that the value
+ * lists stay short; the {@code put} variants replace the values of the rotating key.
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MutationBenchmark {
+    private static final int             KEYS   = 4096;
+    private static final int             CLEAR  = 4 * KEYS;
+
+    private final String[]               names  = new String[KEYS];
+    private final String[]               values = new String[KEYS];
+    private final List<String>           list   = new ArrayList<String>();
+    private TriggerOutOfMemory           props;
+    private ConcurrentTriggerOutOfMemory concurrent;
+    private int                          next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < KEYS; i++) {
+            names[i] = BenchmarkData.key(i, false);
+            values[i] = "value" + i;
+        }
+        list.add("first");
+        list.add("second");
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        props = new TriggerOutOfMemory();
+        concurrent = new ConcurrentTriggerOutOfMemory();
+        next = 0;
+    }
+
+    private int next() {
+        int index = next;
+        next = (index + 1 == CLEAR) ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public boolean add() {
+        int index = next();
+        if (index == 0)
+            props.clear();
+        return props.add(names[index % KEYS], values[index % KEYS]);
+    }
+
+    @Benchmark
+    public TriggerOutOfMemory putString() {
+        int index = next() % KEYS;
+        return props.put(names[index], values[index]);
+    }
+
+    @Benchmark
+    public List<String> putList() {
+        return props.put(names[next() % KEYS], list);
+    }
+
+    @Benchmark
+    public boolean concurrentAdd() {
+        int index = next();
+        if (index == 0)
+            concurrent.clear();
+        return concurrent.add(names[index % KEYS], values[index % KEYS]);
+    }
+}
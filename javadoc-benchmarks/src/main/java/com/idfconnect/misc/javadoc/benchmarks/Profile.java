@@ -0,0 +1,64 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.util.List;
+
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+
+/**
+ * The builder features exercised by a benchmark run. Each profile enables one feature on top of plain loading, and {@link #ALL} enables them all. The
+ * profiles that apply system properties also use a prefix, as system properties are only applied to prefixed keys.
+ *
+ * @since 3.1.4
+ */
+public enum Profile {
+    PLAIN(false, false, false, false, false),
+    DELIMITED(true, false, false, false, false),
+    QUOTED(false, true, false, false, false),
+    PREFIXED(false, false, true, false, false),
+    DEFAULTS(false, false, false, true, false),
+    SYSTEM_PROPERTIES(false, false, true, false, true),
+    ALL(true, true, true, true, true);
+
+    final boolean delimited;
+    final boolean quoted;
+    final boolean prefixed;
+    final boolean defaults;
+    final boolean systemProperties;
+
+    Profile(boolean delimited, boolean quoted, boolean prefixed, boolean defaults, boolean systemProperties) {
+        this.delimited = delimited;
+        this.quoted = quoted;
+        this.prefixed = prefixed;
+        this.defaults = defaults;
+        this.systemProperties = systemProperties;
+    }
+
+    /**
+     * Returns a builder configured for this profile
+     *
+     * @return
+     */
+    TriggerOutOfMemory.Builder builder() {
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder();
+        if (delimited)
+            builder.delimiter(",");
+        if (quoted)
+            builder.quotedValues();
+        if (prefixed)
+            builder.prefix(BenchmarkData.PREFIX);
+        if (defaults)
+            builder.defaults(BenchmarkData.defaults(prefixed));
+        if (systemProperties)
+            builder.loadSystemProperties();
+        return builder;
+    }
+
+    /**
+     * Sets the system properties of this profile, if any
+     *
+     * @return the names of the properties set, or null
+     */
+    List<String> setUp() {
+        return systemProperties ? BenchmarkData.setSystemProperties() : null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idfconnect.misc.javadoc.tests.IncrementalTriggerOutOfMemoryLoader;
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemoryReloader;
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Measures reloading a file after a single line changed, with the {@link IncrementalTriggerOutOfMemoryLoader} and with the full rebuild of the
+ * {@link TriggerOutOfMemoryReloader}. Before every invocation one value character is toggled in place and the modification time is moved on, so both
+ * loaders see a changed file of the same size.
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+@State(Scope.Benchmark)
+public class ReloadBenchmark {
+    @Param({ "1MB", "100MB" })
+    public String                               size;
+
+    private Path                                file;
+    private long                                offset;
+    private boolean                             toggled;
+    private long                                modified;
+    private IncrementalTriggerOutOfMemoryLoader incremental;
+    private TriggerOutOfMemoryReloader          full;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, CollectionProviderException {
+        file = BenchmarkData.writeFile(BenchmarkData.parseSize(size), false, false);
+        // the digit after the first "host" in the middle of the file
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            byte[] window = new byte[4096];
+            long from = raf.length() / 2;
+            raf.seek(from);
+            int read = raf.read(window);
+            String text = new String(window, 0, read, "US-ASCII");
+            offset = from + text.indexOf("= host") + "= host".length();
+        }
+        modified = Files.getLastModifiedTime(file).toMillis();
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().delimiter(",");
+        incremental = new IncrementalTriggerOutOfMemoryLoader(builder, file.toString());
+        full = new TriggerOutOfMemoryReloader(builder, file.toString());
+    }
+
+    @Setup(Level.Invocation)
+    public void changeLine() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(offset);
+            raf.write(toggled ? '1' : 'X');
+        }
+        toggled = !toggled;
+        modified += 1000;
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        full.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Set<String> incremental() throws CollectionProviderException {
+        return incremental.reload();
+    }
+
+    @Benchmark
+    public boolean full() throws CollectionProviderException {
+        return full.reload();
+    }
+}
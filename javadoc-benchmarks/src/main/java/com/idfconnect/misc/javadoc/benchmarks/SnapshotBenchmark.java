@@ -0,0 +1,89 @@
+package com.idfconnect.misc.javadoc.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idfconnect.misc.javadoc.tests.TriggerOutOfMemory;
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Compares the start-up cost of getting at the properties of a file: opening a current binary snapshot, deserializing a {@link java.io.Serializable}
+ * copy, and parsing the file. Each benchmark looks up one key, so the result is usable as it would be after start-up.
+ *
+ * @since 3.1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+    @Param({ "1MB", "100MB" })
+    public String                      size;
+
+    private Path                       source;
+    private Path                       snapshot;
+    private Path                       serialized;
+    private TriggerOutOfMemory.Builder builder;
+    private String                     probe;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, CollectionProviderException {
+        source = BenchmarkData.writeFile(BenchmarkData.parseSize(size), false, false);
+        snapshot = Files.createTempFile("toom-bench", ".snapshot");
+        serialized = Files.createTempFile("toom-bench", ".ser");
+        builder = TriggerOutOfMemory.builder().delimiter(",");
+        probe = BenchmarkData.key(42, false);
+
+        TriggerOutOfMemory props = builder.build(source.toString());
+        props.writeSnapshot(snapshot.toString(), source.toString(), builder);
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(serialized)))) {
+            out.writeObject(props);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(serialized);
+    }
+
+    @Benchmark
+    public String snapshot() throws CollectionProviderException {
+        return builder.buildFromSnapshot(snapshot.toString(), source.toString()).getFirstValue(probe);
+    }
+
+    @Benchmark
+    public String serializable() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(serialized)))) {
+            return ((TriggerOutOfMemory) in.readObject()).getFirstValue(probe);
+        }
+    }
+
+    @Benchmark
+    public String parse() throws CollectionProviderException {
+        return builder.build(source.toString()).getFirstValue(probe);
+    }
+}
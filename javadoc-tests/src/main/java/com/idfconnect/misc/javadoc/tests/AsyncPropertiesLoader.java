@@ -0,0 +1,266 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Loads a file without blocking a thread on I/O. The file is read through an {@link AsynchronousFileChannel} one buffer at a time, and each buffer is
+ * decoded and parsed on the given executor as soon as it arrives, before the next read is issued. Lines are split exactly as
+ * {@link java.io.BufferedReader#readLine()} splits them, so the results are the same as those of {@link TriggerOutOfMemory.Builder#build(String)}. That
+ * includes the strict UTF-8 decoding of its Reader: malformed input fails the load, whereas the memory-mapped and parallel loaders replace it with
+ * U+FFFD.
+ * <p>
+ * Cancelling the returned future closes the channel, which stops the load at the next buffer. Every failure completes the future with a
+ * {@link CollectionProviderException}.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class AsyncPropertiesLoader implements CompletionHandler<Integer, Void> {
+    private static final Logger                         logger      = LoggerFactory.getLogger(AsyncPropertiesLoader.class);
+    private static final int                            BUFFER_SIZE = 64 * 1024;
+
+    private final AsynchronousFileChannel               channel;
+    private final TriggerOutOfMemory.Builder            builder;
+    private final Executor                              executor;
+    private final LoadMetrics                           metrics;
+    private final LoadLimits                            limits;
+    private final CompletableFuture<TriggerOutOfMemory> result      = new CompletableFuture<TriggerOutOfMemory>();
+    private final TriggerOutOfMemory                    target      = new TriggerOutOfMemory();
+    private final ByteBuffer                            bytes       = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer                            chars       = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharsetDecoder                        decoder     = StandardCharsets.UTF_8.newDecoder();
+    private final StringBuilder                         line        = new StringBuilder();
+    private boolean                                     skipLF;
+    private long                                        position;
+    private long                                        readStart;
+
+    /**
+     * A build that is run on an executor
+     */
+    interface Build {
+        TriggerOutOfMemory build() throws CollectionProviderException;
+    }
+
+    private AsyncPropertiesLoader(AsynchronousFileChannel channel, TriggerOutOfMemory.Builder builder, Executor executor, LoadMetrics metrics,
+            LoadLimits limits) {
+        this.channel = channel;
+        this.builder = builder;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.limits = limits;
+    }
+
+    /**
+     * Starts loading the file
+     *
+     * @param path
+     * @param builder
+     * @param executor
+     *            the executor the file is parsed on
+     * @return the future results, with the defaults and system properties of the builder applied
+     */
+    static CompletableFuture<TriggerOutOfMemory> load(Path path, TriggerOutOfMemory.Builder builder, Executor executor) {
+        LoadLimits limits = LoadLimits.of(builder);
+        AsynchronousFileChannel channel;
+        try {
+            if (limits != null)
+                limits.checkFiles(Collections.singletonList(path));
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+        } catch (IOException ioe) {
+            return failed(new CollectionProviderException(ioe));
+        } catch (CollectionProviderException e) {
+            return failed(e);
+        }
+        AsyncPropertiesLoader loader = new AsyncPropertiesLoader(channel, builder, executor, builder.newMetrics(), limits);
+        // once the results are complete, or cancelled, the channel is closed; a pending read then fails and is ignored
+        loader.result.whenComplete((props, t) -> loader.close());
+        loader.read();
+        return loader.result;
+    }
+
+    /**
+     * Runs a blocking build on the executor
+     *
+     * @param build
+     * @param executor
+     * @return the future results. A build that is cancelled before it starts is skipped
+     */
+    static CompletableFuture<TriggerOutOfMemory> supply(Build build, Executor executor) {
+        CompletableFuture<TriggerOutOfMemory> result = new CompletableFuture<TriggerOutOfMemory>();
+        try {
+            executor.execute(() -> {
+                if (result.isDone())
+                    return;
+                try {
+                    result.complete(build.build());
+                } catch (CollectionProviderException e) {
+                    result.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(new CollectionProviderException(e));
+                } catch (Error e) {
+                    // the future must still complete, or whoever waits for it would wait forever
+                    result.completeExceptionally(e);
+                    throw e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new CollectionProviderException(e));
+        }
+        return result;
+    }
+
+    static CompletableFuture<TriggerOutOfMemory> failed(CollectionProviderException e) {
+        CompletableFuture<TriggerOutOfMemory> result = new CompletableFuture<TriggerOutOfMemory>();
+        result.completeExceptionally(e);
+        return result;
+    }
+
+    private void read() {
+        if (result.isDone())
+            return;
+        if (metrics != null)
+            readStart = System.nanoTime();
+        channel.read(bytes, position, null, this);
+    }
+
+    @Override
+    public void completed(Integer count, Void attachment) {
+        try {
+            executor.execute(() -> consume(count));
+        } catch (RejectedExecutionException e) {
+            fail(new CollectionProviderException(e));
+        }
+    }
+
+    @Override
+    public void failed(Throwable exc, Void attachment) {
+        fail(new CollectionProviderException(exc));
+    }
+
+    /**
+     * Parses the bytes that were just read, then reads the next buffer or completes the results at the end of the file
+     */
+    private void consume(int count) {
+        if (result.isDone())
+            return;
+        try {
+            long mark = 0;
+            if (metrics != null) {
+                mark = System.nanoTime();
+                metrics.readNanos += mark - readStart;
+            }
+            boolean eof = (count < 0);
+            if (!eof) {
+                position += count;
+                if (metrics != null)
+                    metrics.bytesRead += count;
+            }
+            ((Buffer) bytes).flip();
+            decode(eof);
+            bytes.compact();
+            if (eof && line.length() > 0)
+                TriggerOutOfMemory.parseLine(line.toString(), builder, target, metrics, limits);
+            if (metrics != null)
+                metrics.parseNanos += System.nanoTime() - mark;
+            if (eof)
+                result.complete(TriggerOutOfMemory.completeCore(target, builder, metrics));
+            else
+                read();
+        } catch (LoadLimits.LimitExceededException e) {
+            fail(e.toCollectionProviderException());
+        } catch (CollectionProviderException e) {
+            fail(e);
+        } catch (CharacterCodingException | RuntimeException e) {
+            fail(new CollectionProviderException(e));
+        }
+    }
+
+    private void decode(boolean eof) throws CharacterCodingException {
+        CoderResult decoded;
+        do {
+            decoded = decoder.decode(bytes, chars, eof);
+            if (decoded.isError())
+                decoded.throwException();
+            split();
+        } while (decoded.isOverflow());
+        if (eof) {
+            do {
+                decoded = decoder.flush(chars);
+                split();
+            } while (decoded.isOverflow());
+        }
+    }
+
+    /**
+     * Parses the complete lines of the decoded characters, keeping the last, incomplete line for the next buffer
+     */
+    private void split() {
+        ((Buffer) chars).flip();
+        char[] a = chars.array();
+        int end = chars.limit();
+        int from = 0;
+        for (int i = 0; i < end; i++) {
+            char ch = a[i];
+            if (skipLF) {
+                // a "\r\n" split across two buffers ends a single line
+                skipLF = false;
+                if (ch == '\n') {
+                    from = i + 1;
+                    continue;
+                }
+            }
+            if (ch == '\n' || ch == '\r') {
+                String next;
+                if (line.length() == 0) {
+                    next = new String(a, from, i - from);
+                } else {
+                    line.append(a, from, i - from);
+                    next = line.toString();
+                    line.setLength(0);
+                }
+                if (limits != null)
+                    limits.checkLine(next.length());
+                TriggerOutOfMemory.parseLine(next, builder, target, metrics, limits);
+                skipLF = (ch == '\r');
+                from = i + 1;
+            }
+        }
+        line.append(a, from, end - from);
+        // a line without an end is caught while it grows, rather than once it has been buffered
+        if (limits != null)
+            limits.checkLine(line.length());
+        ((Buffer) chars).clear();
+    }
+
+    private void fail(CollectionProviderException e) {
+        result.completeExceptionally(e);
+    }
+
+    private void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close {}", channel, e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.idfconnect.misc.javadoc.tests;
+
+/**
+ * The lenient reading of boolean values shared by the lookups that take a default value: "true" and "yes" in any case are true, anything else is false
+ *
+ * @since 3.1.4
+ */
+final class BooleanValues {
+    private BooleanValues() {
+    }
+
+    /**
+     * Returns the value as a boolean, or the default value if there is no value
+     *
+     * @param value
+     *            the stored value, possibly null
+     * @param defaultValue
+     * @return
+     */
+    static boolean asBoolean(String value, boolean defaultValue) {
+        if (value == null)
+            return defaultValue;
+        return isTrue(value);
+    }
+
+    /**
+     * Returns true if the value is "true" or "yes" in any case
+     *
+     * @param value
+     *            a non-null value
+     * @return
+     */
+    static boolean isTrue(String value) {
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+}
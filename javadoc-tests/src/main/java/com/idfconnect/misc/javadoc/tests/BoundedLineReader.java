@@ -0,0 +1,77 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A Reader whose {@link #readLine()} fails once a line grows beyond a maximum length, instead of buffering the whole line first as
+ * {@link BufferedReader#readLine()} does. Lines end at '\n', '\r' or "\r\n", as with {@link BufferedReader}. Only {@link #readLine()} may be used to read
+ * from it.
+ *
+ * @since 3.1.4
+ */
+final class BoundedLineReader extends BufferedReader {
+    private final int           maxLength;
+    private final char[]        buffer = new char[8192];
+    private final StringBuilder line   = new StringBuilder();
+    private int                 position;
+    private int                 limit;
+    private boolean             skipLF;
+
+    /**
+     * @param in
+     * @param maxLength
+     *            the maximum number of characters of a line, excluding its terminator
+     */
+    BoundedLineReader(Reader in, int maxLength) {
+        // reads of a whole buffer go straight to the underlying reader, so the inherited buffer is never used
+        super(in, 1);
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the next line
+     *
+     * @throws LoadLimits.LimitExceededException
+     *             if the line is longer than the maximum length
+     */
+    @Override
+    public String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            if (position == limit) {
+                int count = super.read(buffer, 0, buffer.length);
+                if (count == -1)
+                    return (line.length() > 0) ? line.toString() : null;
+                position = 0;
+                limit = count;
+            }
+            if (skipLF) {
+                skipLF = false;
+                if (buffer[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == '\n' || c == '\r') {
+                    append(start, position);
+                    position++;
+                    skipLF = (c == '\r');
+                    return line.toString();
+                }
+                position++;
+            }
+            append(start, position);
+        }
+    }
+
+    private void append(int start, int end) {
+        if (line.length() + (end - start) > maxLength)
+            throw new LoadLimits.LimitExceededException("A line exceeds the maximum line length of " + maxLength);
+        line.append(buffer, start, end - start);
+    }
+}
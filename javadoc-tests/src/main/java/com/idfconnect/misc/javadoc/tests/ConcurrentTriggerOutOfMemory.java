@@ -0,0 +1,193 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A thread-safe variant of {@link TriggerOutOfMemory} for instances shared by many threads, with the same API.
+ * <p>
+ * The map is a {@link ConcurrentHashMap}, which locks per hash bin on writes, and every value list is a {@link CopyOnWriteArrayList}. {@link #add(String,
+ * String)} is atomic, and reads such as {@link #getFirstValue(String)} never lock: they work on the immutable array behind the value list. Lists passed
+ * to {@link #put(String, List)}, or returned by the functions of {@link #compute(String, BiFunction)}, {@link #merge(String, List, BiFunction)} and
+ * the other methods that store a new list, are copied into a copy-on-write list. Like any {@link ConcurrentHashMap}, null keys and values are not
+ * supported.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public class ConcurrentTriggerOutOfMemory extends ConcurrentHashMap<String, List<String>> implements MultiValuedLookup {
+    private static final long serialVersionUID = -3164512383471183624L;
+
+    public ConcurrentTriggerOutOfMemory() {
+    }
+
+    /**
+     * Creates a thread-safe copy of the given properties
+     *
+     * @param props
+     */
+    public ConcurrentTriggerOutOfMemory(Map<String, ? extends List<String>> props) {
+        super(Math.max(16, props.size() * 4 / 3 + 1));
+        props.forEach(this::put);
+    }
+
+    /**
+     * Method getFirstValue. Never locks
+     *
+     * @param key
+     *            String
+     * @return String
+     */
+    @Override
+    public String getFirstValue(String key) {
+        List<String> values = get(key);
+        if (values == null)
+            return null;
+        // the iterator works on a snapshot, so there is no race between a size check and get(0)
+        for (String value : values)
+            return value;
+        return null;
+    }
+
+    /**
+     * Atomically adds a value to the values of the key
+     *
+     * @param key
+     *            String
+     * @param value
+     *            String
+     * @return boolean
+     */
+    public boolean add(String key, String value) {
+        if (value == null)
+            throw new NullPointerException();
+        super.compute(key, (k, values) -> {
+            if (values == null)
+                values = new CopyOnWriteArrayList<String>();
+            values.add(value);
+            return values;
+        });
+        return true;
+    }
+
+    /**
+     * Puts a copy of the values, replacing any/all existing values
+     */
+    @Override
+    public List<String> put(String key, List<String> values) {
+        return super.put(key, new CopyOnWriteArrayList<String>(values));
+    }
+
+    @Override
+    public List<String> putIfAbsent(String key, List<String> values) {
+        return super.putIfAbsent(key, new CopyOnWriteArrayList<String>(values));
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends List<String>> m) {
+        m.forEach(this::put);
+    }
+
+    @Override
+    public List<String> replace(String key, List<String> values) {
+        return super.replace(key, new CopyOnWriteArrayList<String>(values));
+    }
+
+    @Override
+    public boolean replace(String key, List<String> oldValues, List<String> newValues) {
+        return super.replace(key, oldValues, new CopyOnWriteArrayList<String>(newValues));
+    }
+
+    @Override
+    public List<String> computeIfAbsent(String key, Function<? super String, ? extends List<String>> mappingFunction) {
+        return super.computeIfAbsent(key, k -> copyOf(mappingFunction.apply(k), null));
+    }
+
+    @Override
+    public List<String> computeIfPresent(String key, BiFunction<? super String, ? super List<String>, ? extends List<String>> remappingFunction) {
+        return super.computeIfPresent(key, (k, values) -> copyOf(remappingFunction.apply(k, values), values));
+    }
+
+    @Override
+    public List<String> compute(String key, BiFunction<? super String, ? super List<String>, ? extends List<String>> remappingFunction) {
+        return super.compute(key, (k, values) -> copyOf(remappingFunction.apply(k, values), values));
+    }
+
+    @Override
+    public List<String> merge(String key, List<String> values,
+            BiFunction<? super List<String>, ? super List<String>, ? extends List<String>> remappingFunction) {
+        List<String> copy = new CopyOnWriteArrayList<String>(values);
+        return super.merge(key, copy, (existing, given) -> {
+            List<String> merged = remappingFunction.apply(existing, given);
+            return (merged == copy) ? copy : copyOf(merged, existing);
+        });
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super List<String>, ? extends List<String>> function) {
+        super.replaceAll((k, values) -> copyOf(function.apply(k, values), values));
+    }
+
+    /**
+     * Returns the list computed for a key as a copy-on-write list of this map: the list the key already holds is kept, and any other list is copied
+     *
+     * @param computed
+     *            the list returned by a function, or null to remove the key
+     * @param existing
+     *            the list the key holds, or null
+     * @return
+     */
+    private static List<String> copyOf(List<String> computed, List<String> existing) {
+        return (computed == null || computed == existing) ? computed : new CopyOnWriteArrayList<String>(computed);
+    }
+
+    /**
+     * Puts a single value, replacing any/all existing values
+     *
+     * @param key
+     *            a {@link java.lang.String} object.
+     * @param value
+     *            a {@link java.lang.String} object.
+     * @return this object
+     */
+    public ConcurrentTriggerOutOfMemory put(String key, String value) {
+        List<String> values = new CopyOnWriteArrayList<String>();
+        values.add(value);
+        super.put(key, values);
+        return this;
+    }
+
+    /**
+     * <p>
+     * put.
+     * </p>
+     *
+     * @param key
+     *            a {@link java.lang.String} object.
+     * @param value
+     *            a int.
+     * @return this object
+     */
+    public ConcurrentTriggerOutOfMemory put(String key, int value) {
+        return put(key, Integer.toString(value));
+    }
+
+    /**
+     * <p>
+     * put.
+     * </p>
+     *
+     * @param key
+     *            a {@link java.lang.String} object.
+     * @param value
+     *            a boolean.
+     * @return this object
+     */
+    public ConcurrentTriggerOutOfMemory put(String key, boolean value) {
+        return put(key, Boolean.toString(value));
+    }
+}
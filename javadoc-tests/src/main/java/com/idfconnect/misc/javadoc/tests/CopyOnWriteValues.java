@@ -0,0 +1,98 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Values shared with another map that are copied on the first write. Reads go straight to the shared list; the first change copies it into a list of
+ * its own, and all later reads and writes use the copy, so neither the other map nor any other list sharing the same values sees the change.
+ * <p>
+ * Changes made to the shared list itself, by the map it belongs to, are seen until this list has been written, so values are best shared from a source
+ * that is never written, such as an {@link ImmutableTriggerOutOfMemory} or a built map used as defaults. A list of this class is serialized as a plain
+ * copy of its values.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class CopyOnWriteValues extends AbstractList<String> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 2610393702916372581L;
+
+    private List<String>      values;
+    private boolean           copied;
+
+    CopyOnWriteValues(List<String> shared) {
+        this.values = shared;
+    }
+
+    /**
+     * Returns a copy-on-write list sharing the given values. A list of this class is not wrapped again: the new list shares the values it currently reads,
+     * so reads never go through a chain of lists. The given list is never modified, as it may belong to a map that other threads read
+     *
+     * @param shared
+     * @return the list, or null if the values are null
+     */
+    static CopyOnWriteValues of(List<String> shared) {
+        if (shared == null)
+            return null;
+        if (shared instanceof CopyOnWriteValues)
+            return new CopyOnWriteValues(((CopyOnWriteValues) shared).values);
+        return new CopyOnWriteValues(shared);
+    }
+
+    private List<String> writable() {
+        if (!copied) {
+            values = new ArrayList<String>(values);
+            copied = true;
+        }
+        modCount++;
+        return values;
+    }
+
+    @Override
+    public String get(int index) {
+        return values.get(index);
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public String set(int index, String element) {
+        return writable().set(index, element);
+    }
+
+    @Override
+    public boolean add(String element) {
+        return writable().add(element);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends String> c) {
+        return writable().addAll(c);
+    }
+
+    @Override
+    public void add(int index, String element) {
+        writable().add(index, element);
+    }
+
+    @Override
+    public String remove(int index) {
+        return writable().remove(index);
+    }
+
+    @Override
+    public void clear() {
+        writable().clear();
+    }
+
+    final Object writeReplace() {
+        return new ArrayList<String>(values);
+    }
+}
@@ -0,0 +1,227 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A delimiter compiled once for splitting multi-valued properties. Values are appended straight to the target list without an intermediate array.
+ * <p>
+ * The results are the same as {@link String#split(String)}: the whole value is kept when the delimiter does not occur, trailing empty values are dropped
+ * and, for regular expressions, a zero-width match at the start of the value is ignored. Delimiters without regular expression meta characters, and
+ * single escaped characters such as "\\|", are matched literally without the regex engine.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class DelimiterSplitter {
+    private static final Logger           logger     = LoggerFactory.getLogger(DelimiterSplitter.class);
+    private static final String           REGEX_META = ".$|()[{^?*+\\";
+
+    /** The comma splitter applied to System property values */
+    static final DelimiterSplitter        COMMA      = compile(",");
+
+    private final String                  delimiter;
+    private final String                  literal;
+    private final Pattern                 pattern;
+
+    private DelimiterSplitter(String delimiter, String literal, Pattern pattern) {
+        this.delimiter = delimiter;
+        this.literal = literal;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Compiles the delimiter
+     *
+     * @param delimiter
+     * @return
+     * @throws java.util.regex.PatternSyntaxException
+     *             if the delimiter is not a valid regular expression
+     */
+    static DelimiterSplitter compile(String delimiter) {
+        String literal = literalOf(delimiter);
+        return new DelimiterSplitter(delimiter, literal, (literal == null) ? Pattern.compile(delimiter) : null);
+    }
+
+    /**
+     * Returns the literal text of the delimiter, or null if it is matched as a regular expression
+     */
+    String literal() {
+        return literal;
+    }
+
+    /**
+     * Splits the value and adds the results to the values of the given key. The key is only added to the target if there is at least one resulting value.
+     *
+     * @param value
+     * @param name
+     * @param target
+     * @param pool
+     *            the optional pool to deduplicate the values
+     * @return the number of values added
+     */
+    int splitInto(String value, String name, TriggerOutOfMemory target, InternPool pool) {
+        return splitInto(value, name, target, pool, null);
+    }
+
+    /**
+     * Splits the value and adds the results to the values of the given key, checking the number of values of the key against the limits as each value is
+     * added
+     *
+     * @param value
+     * @param name
+     * @param target
+     * @param pool
+     *            the optional pool to deduplicate the values
+     * @param limits
+     *            the limits to enforce, or null
+     * @return the number of values added
+     */
+    int splitInto(String value, String name, TriggerOutOfMemory target, InternPool pool, LoadLimits limits) {
+        List<String> values = target.get(name);
+        boolean created = (values == null);
+        if (created)
+            values = new ArrayList<String>();
+        int count = (limits != null && limits.limitsValuesPerKey()) ? split(value, values, name, limits) : split(value, values, null, null);
+        if (pool != null)
+            for (int i = values.size() - count; i < values.size(); i++)
+                values.set(i, pool.intern(values.get(i)));
+        if (created && count > 0)
+            target.put(name, values);
+        if (logger.isTraceEnabled())
+            logger.trace("Adding {}={}", name, values.subList(values.size() - count, values.size()));
+        return count;
+    }
+
+    /**
+     * Returns true if the range of the value is made of the literal delimiter only, in which case it splits into no values at all. Always false for regular
+     * expressions, which are not applied until the value is split
+     *
+     * @param value
+     * @param start
+     * @param end
+     * @return
+     */
+    boolean isOnlyDelimiters(String value, int start, int end) {
+        if (literal == null || end == start || (end - start) % literal.length() != 0)
+            return false;
+        for (int i = start; i < end; i += literal.length())
+            if (!value.startsWith(literal, i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Splits the value and appends the results to the list
+     *
+     * @param value
+     * @param values
+     * @return the number of values appended
+     */
+    int split(String value, List<String> values) {
+        return split(value, values, null, null);
+    }
+
+    private int split(String value, List<String> values, String name, LoadLimits limits) {
+        return (literal != null) ? splitLiteral(value, values, name, limits) : splitPattern(value, values, name, limits);
+    }
+
+    private int splitLiteral(String value, List<String> values, String name, LoadLimits limits) {
+        int pos = value.indexOf(literal);
+        if (pos == -1) {
+            add(values, value, name, limits);
+            return 1;
+        }
+        int count = 0;
+        int pendingEmpty = 0;
+        int index = 0;
+        while (true) {
+            int end = (pos == -1) ? value.length() : pos;
+            if (end == index) {
+                pendingEmpty++;
+            } else {
+                count += flushEmpty(pendingEmpty, values, name, limits);
+                pendingEmpty = 0;
+                add(values, value.substring(index, end), name, limits);
+                count++;
+            }
+            if (pos == -1)
+                return count;
+            index = pos + literal.length();
+            pos = value.indexOf(literal, index);
+        }
+    }
+
+    private int splitPattern(String value, List<String> values, String name, LoadLimits limits) {
+        Matcher m = pattern.matcher(value);
+        int count = 0;
+        int pendingEmpty = 0;
+        int index = 0;
+        boolean matched = false;
+        while (m.find()) {
+            // a zero-width match at the beginning never produces a leading empty value
+            if (index == 0 && m.start() == 0 && m.end() == 0)
+                continue;
+            matched = true;
+            if (m.start() == index) {
+                pendingEmpty++;
+            } else {
+                count += flushEmpty(pendingEmpty, values, name, limits);
+                pendingEmpty = 0;
+                add(values, value.substring(index, m.start()), name, limits);
+                count++;
+            }
+            index = m.end();
+        }
+        if (!matched) {
+            add(values, value, name, limits);
+            return 1;
+        }
+        if (index < value.length()) {
+            count += flushEmpty(pendingEmpty, values, name, limits);
+            add(values, value.substring(index), name, limits);
+            count++;
+        }
+        return count;
+    }
+
+    private static int flushEmpty(int pendingEmpty, List<String> values, String name, LoadLimits limits) {
+        for (int i = 0; i < pendingEmpty; i++)
+            add(values, "", name, limits);
+        return pendingEmpty;
+    }
+
+    private static void add(List<String> values, String value, String name, LoadLimits limits) {
+        values.add(value);
+        if (limits != null)
+            limits.checkValues(name, values.size());
+    }
+
+    /**
+     * Returns the text matched by the delimiter if it has no regular expression meta characters or is a single escaped character, otherwise null
+     */
+    private static String literalOf(String delimiter) {
+        if (delimiter.length() == 2 && delimiter.charAt(0) == '\\' && !isAsciiLetterOrDigit(delimiter.charAt(1)))
+            return delimiter.substring(1);
+        if (delimiter.isEmpty())
+            return null;
+        for (int i = 0; i < delimiter.length(); i++)
+            if (REGEX_META.indexOf(delimiter.charAt(i)) != -1)
+                return null;
+        return delimiter;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char ch) {
+        return (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    @Override
+    public String toString() {
+        return delimiter;
+    }
+}
@@ -0,0 +1,30 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.time.Duration;
+
+/**
+ * The parsing of duration values shared by the duration getters: a value is either an ISO-8601 duration such as PT30S, or a number of milliseconds
+ *
+ * @since 3.1.4
+ */
+final class Durations {
+    private Durations() {
+    }
+
+    /**
+     * Parses a duration value
+     *
+     * @param value
+     *            a non-null value
+     * @return
+     * @throws NumberFormatException
+     *             if the value is neither a duration nor a number
+     * @throws java.time.format.DateTimeParseException
+     *             if the value looks like an ISO-8601 duration but is not one
+     */
+    static Duration parse(String value) throws NumberFormatException {
+        if (value.indexOf('P') == -1 && value.indexOf('p') == -1)
+            return Duration.ofMillis(Long.parseLong(value));
+        return Duration.parse(value);
+    }
+}
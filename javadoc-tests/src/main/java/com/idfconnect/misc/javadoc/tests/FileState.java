@@ -0,0 +1,157 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32;
+
+/**
+ * The size, modification time and content checksum of a file, used to tell whether a properties file has actually changed.
+ * <p>
+ * The size and modification time are compared first, so an unchanged file is not read. Modification times have a granularity, which is up to two seconds
+ * on some file systems, so a file rewritten with the same size shortly after its state was taken may keep its modification time. A state taken less
+ * than {@link #GRANULARITY_MILLIS} after the modification time of the file is therefore never trusted on size and time alone, and the file is checksummed
+ * again until a state is taken later than that. This assumes that the clock of the file system and that of the JVM roughly agree.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class FileState {
+    /** The size of the buffer a file is checksummed through */
+    static final int         CHECKSUM_BUFFER    = 64 * 1024;
+    /** The coarsest modification time granularity of the common file systems */
+    static final long        GRANULARITY_MILLIS = 2000;
+    private static final int MAX_BUFFER         = Integer.MAX_VALUE - 8;
+
+    final long               size;
+    final long               lastModified;
+    final long               checksum;
+    /** The time the state was taken, before the file was read */
+    final long               takenAt;
+
+    FileState(long size, long lastModified, long checksum, long takenAt) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.checksum = checksum;
+        this.takenAt = takenAt;
+    }
+
+    /**
+     * Reads the modification time of the file, and streams it through a new buffer to compute its size and checksum
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    static FileState of(Path path) throws IOException {
+        return of(path, ByteBuffer.allocate(CHECKSUM_BUFFER));
+    }
+
+    /**
+     * Reads the modification time of the file, and streams it through the given buffer to compute its size and checksum, so the file is never held in
+     * memory and may be of any size. The size is that of the bytes checksummed rather than the one reported by the file system, so the two always agree
+     *
+     * @param path
+     * @param buffer
+     *            the buffer to read through, which is overwritten
+     * @return
+     * @throws IOException
+     */
+    static FileState of(Path path, ByteBuffer buffer) throws IOException {
+        long takenAt = System.currentTimeMillis();
+        // the modification time is taken before reading, so a write that lands during the read is seen again by the next check
+        long lastModified = lastModified(path);
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ((Buffer) buffer).clear();
+            int count;
+            while ((count = channel.read(buffer)) >= 0) {
+                ((Buffer) buffer).flip();
+                crc.update(buffer);
+                ((Buffer) buffer).clear();
+                size += count;
+            }
+        }
+        return new FileState(size, lastModified, crc.getValue(), takenAt);
+    }
+
+    /**
+     * Returns the state of contents already read from the file. The size and checksum are those of the contents, so they describe exactly the bytes that
+     * are parsed
+     *
+     * @param contents
+     *            the contents, from the position to the limit, which are left unchanged
+     * @param lastModified
+     *            the modification time, taken before the contents were read
+     * @param takenAt
+     *            the time the modification time was taken
+     * @return
+     */
+    static FileState of(ByteBuffer contents, long lastModified, long takenAt) {
+        CRC32 crc = new CRC32();
+        crc.update(contents.duplicate());
+        return new FileState(contents.remaining(), lastModified, crc.getValue(), takenAt);
+    }
+
+    /**
+     * Returns the modification time of the file in milliseconds
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    static long lastModified(Path path) throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * Reads the whole file into a heap buffer, which is a copy that later writes to the file do not change, unlike a mapping. A file that grows meanwhile
+     * is read up to its size when reading started
+     *
+     * @param path
+     * @return the contents, positioned at 0
+     * @throws IOException
+     *             if the file cannot be read or is too large for one buffer
+     */
+    static ByteBuffer read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_BUFFER)
+                throw new IOException("File " + path + " of " + size + " bytes is too large to read into memory");
+            ByteBuffer contents = ByteBuffer.allocate((int) size);
+            while (contents.hasRemaining() && channel.read(contents) >= 0)
+                ;
+            ((Buffer) contents).flip();
+            return contents;
+        }
+    }
+
+    /**
+     * Returns true if the size and modification time of the file are unchanged, and the modification time is old enough to be trusted, in which case the
+     * file does not need to be read. Otherwise the file may have changed, and a new state must be taken to compare the checksums
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    boolean isUnchanged(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified && lastModified + GRANULARITY_MILLIS <= takenAt;
+    }
+
+    /**
+     * Returns true if the other state has the same contents
+     *
+     * @param other
+     * @return
+     */
+    boolean hasSameContents(FileState other) {
+        return size == other.size && checksum == other.checksum;
+    }
+}
@@ -0,0 +1,334 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A compact, read-only snapshot of a {@link TriggerOutOfMemory}, created with {@link TriggerOutOfMemory#freeze()}.
+ * <p>
+ * Instead of a hash map node and a value list per key, the snapshot keeps the keys in a single array indexed by an open-addressed hash table, and all
+ * values in one shared array that each key addresses as an offset/length slice. A key with a single value takes exactly one value slot and is returned as
+ * a singleton list. The lists returned by {@link #get(Object)} are unmodifiable views onto the shared array. Mutable maps that share a snapshot rather
+ * than copy it are derived with {@link #overlay()}.
+ * </p>
+ * <p>
+ * Keys can also be looked up as any {@link CharSequence} or as a UTF-8 byte range, for example straight from a request buffer. These lookups hash the key
+ * the same way as {@link String#hashCode()} and compare it in place, so they allocate nothing.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public final class ImmutableTriggerOutOfMemory extends AbstractMap<String, List<String>> implements MultiValuedLookup {
+    private final String[]                       keys;
+    private final int[]                          offsets;
+    private final String[]                       values;
+    private final int[]                          table;
+    private final int                            mask;
+    private Set<Map.Entry<String, List<String>>> entrySet;
+
+    private ImmutableTriggerOutOfMemory(String[] keys, int[] offsets, String[] values) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.values = values;
+
+        // size the table for a load factor of at most 0.5, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(2, keys.length) * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = spread(keys[i].hashCode()) & mask;
+            while (table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Creates a snapshot of the given properties. Null keys are not supported
+     *
+     * @param props
+     * @return
+     */
+    static ImmutableTriggerOutOfMemory copyOf(Map<String, List<String>> props) {
+        int count = 0;
+        for (List<String> v : props.values())
+            count += (v != null) ? v.size() : 0;
+        String[] keys = new String[props.size()];
+        int[] offsets = new int[props.size() + 1];
+        String[] values = new String[count];
+        int i = 0;
+        int offset = 0;
+        for (Map.Entry<String, List<String>> entry : props.entrySet()) {
+            if (entry.getKey() == null)
+                throw new NullPointerException("Null keys cannot be frozen");
+            keys[i] = entry.getKey();
+            offsets[i++] = offset;
+            if (entry.getValue() != null)
+                for (String value : entry.getValue())
+                    values[offset++] = value;
+        }
+        offsets[i] = offset;
+        return new ImmutableTriggerOutOfMemory(keys, offsets, values);
+    }
+
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index of the key, or -1 if it is not present
+     */
+    private int indexOf(Object key) {
+        if (!(key instanceof String))
+            return -1;
+        int slot = spread(key.hashCode()) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (keys[entry - 1].equals(key))
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the key, or -1 if it is not present, without creating a String
+     */
+    private int indexOf(CharSequence key) {
+        if (key instanceof String)
+            return indexOf((Object) key);
+        int hash = KeyHashes.hash(key);
+        int slot = spread(hash) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            String candidate = keys[entry - 1];
+            if (candidate.hashCode() == hash && candidate.contentEquals(key))
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the UTF-8 encoded key, or -1 if it is not present, without creating a String
+     */
+    private int indexOf(byte[] key, int offset, int length) {
+        int hash = KeyHashes.hash(key, offset, length);
+        int slot = spread(hash) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            String candidate = keys[entry - 1];
+            if (candidate.hashCode() == hash && KeyHashes.matches(candidate, key, offset, length))
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private String firstValueAt(int index) {
+        if (index == -1 || offsets[index] == offsets[index + 1])
+            return null;
+        return values[offsets[index]];
+    }
+
+    private List<String> valuesAt(int index) {
+        int from = offsets[index];
+        int to = offsets[index + 1];
+        if (to - from == 1)
+            return Collections.singletonList(values[from]);
+        return (to == from) ? Collections.<String> emptyList() : new Slice(from, to);
+    }
+
+    @Override
+    public List<String> get(Object key) {
+        int index = indexOf(key);
+        return (index == -1) ? null : valuesAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the first value of the key without creating a view of its values
+     */
+    @Override
+    public String getFirstValue(String key) {
+        return firstValueAt(indexOf(key));
+    }
+
+    /**
+     * Returns the first value of the key without creating a String for the key
+     *
+     * @param key
+     * @return the first value, or null if there is none
+     */
+    public String getFirstValue(CharSequence key) {
+        return firstValueAt(indexOf(key));
+    }
+
+    /**
+     * Returns the first value of the UTF-8 (or ASCII) encoded key without creating a String for the key
+     *
+     * @param key
+     *            the buffer holding the key
+     * @param offset
+     *            the offset of the key in the buffer
+     * @param length
+     *            the length of the key in bytes
+     * @return the first value, or null if there is none
+     */
+    public String getFirstValue(byte[] key, int offset, int length) {
+        return firstValueAt(indexOf(key, offset, length));
+    }
+
+    /**
+     * Same as {@link #getFirstValueAsBoolean(String, boolean)}, without creating a String for the key
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public boolean getFirstValueAsBoolean(CharSequence key, boolean defaultValue) {
+        return BooleanValues.asBoolean(getFirstValue(key), defaultValue);
+    }
+
+    /**
+     * Same as {@link #getFirstValueAsBoolean(String, boolean)}, for a UTF-8 (or ASCII) encoded key and without creating a String for the key
+     *
+     * @param key
+     *            the buffer holding the key
+     * @param offset
+     *            the offset of the key in the buffer
+     * @param length
+     *            the length of the key in bytes
+     * @param defaultValue
+     * @return
+     */
+    public boolean getFirstValueAsBoolean(byte[] key, int offset, int length, boolean defaultValue) {
+        return BooleanValues.asBoolean(getFirstValue(key, offset, length), defaultValue);
+    }
+
+    /**
+     * Returns a mutable copy of this snapshot
+     *
+     * @return
+     */
+    public TriggerOutOfMemory thaw() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        for (int i = 0; i < keys.length; i++) {
+            List<String> list = new ArrayList<String>(offsets[i + 1] - offsets[i]);
+            for (int j = offsets[i]; j < offsets[i + 1]; j++)
+                list.add(values[j]);
+            props.put(keys[i], list);
+        }
+        return props;
+    }
+
+    /**
+     * Returns a new, empty overlay on top of this snapshot, which is shared rather than copied: the overlay holds only the keys that are put or removed
+     * later. Takes constant time, so any number of maps can be derived from one snapshot
+     *
+     * @return
+     */
+    public OverlayTriggerOutOfMemory overlay() {
+        return new OverlayTriggerOutOfMemory(this);
+    }
+
+    /**
+     * Returns the estimated heap size of this snapshot, excluding the key and value Strings which it shares with its source
+     *
+     * @return
+     */
+    public long estimatedSize() {
+        return MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 6 * MemoryEstimator.REFERENCE) + MemoryEstimator.referenceArray(keys.length)
+                + MemoryEstimator.intArray(offsets.length) + MemoryEstimator.referenceArray(values.length) + MemoryEstimator.intArray(table.length);
+    }
+
+    /**
+     * Reports the estimated heap footprint of this snapshot compared with a {@link TriggerOutOfMemory} holding the same entries
+     *
+     * @return
+     */
+    public String footprintReport() {
+        long mutable = MemoryEstimator.hashMapStructure(this);
+        long frozen = estimatedSize();
+        long strings = MemoryEstimator.strings(this);
+        return String.format("keys=%d values=%d strings=%d bytes; mutable structure=%d bytes, frozen structure=%d bytes (%.1f%% saved); total %d -> %d bytes",
+                keys.length, values.length, strings, mutable, frozen, (mutable == 0) ? 0.0 : 100.0 * (mutable - frozen) / mutable, mutable + strings,
+                frozen + strings);
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<String>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Map.Entry<String, List<String>>> iterator() {
+                    return new Iterator<Map.Entry<String, List<String>>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, List<String>> next() {
+                            if (next >= keys.length)
+                                throw new NoSuchElementException();
+                            int index = next++;
+                            return new AbstractMap.SimpleImmutableEntry<String, List<String>>(keys[index], valuesAt(index));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * An unmodifiable view of a range of the shared values array
+     */
+    private final class Slice extends AbstractList<String> implements RandomAccess {
+        private final int from;
+        private final int to;
+
+        Slice(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= to - from)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            return values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+import com.idfconnect.ssorest.common.utils.StringUtil;
+
+/**
+ * Loads a {@link TriggerOutOfMemory} from a file and, on {@link #reload()}, patches the same map in place by re-parsing only the lines that changed.
+ * <p>
+ * The loader keeps a 64-bit hash and the key of every line of the previous load. On reload the file is scanned for line boundaries and hashes, the unchanged
+ * leading and trailing lines are skipped, and the keys of the lines in between (old and new) are the affected keys. Only the lines of the affected keys are
+ * parsed, in file order, so repeated keys keep their append order. Each affected key is then resolved with the same precedence as a full build: system
+ * property overrides, then the file, then system property defaults, then the builder defaults. The result is equal to a full rebuild with the same builder.
+ * </p>
+ * <p>
+ * The file is read into a heap buffer once per load, with the parser of {@link TriggerOutOfMemory.Builder#memoryMapped()}, and must be smaller than 2GB.
+ * It is not mapped, as a file edited in place may be truncated while it is parsed. The checksum that tells whether the file changed is taken from the
+ * same bytes that are parsed, so the recorded state always matches the map. A file modified within two seconds of a check is checksummed again by the
+ * next check even if its size and modification time are unchanged, as a file system may not record a second write that soon. The builder and its
+ * defaults must not be changed after the loader is created. If a system property under the prefix is added, removed or changed, the next reload falls
+ * back to a full rebuild of the map.
+ * </p>
+ * <p>
+ * The limits of the builder are enforced on every load. A reload that would exceed them fails and leaves the map unchanged; the retained bytes are only
+ * tracked by full loads.
+ * </p>
+ * <p>
+ * The map is modified in place and is not safe to read while {@link #reload()} runs; readers on other threads should use
+ * {@link TriggerOutOfMemoryReloader} instead, or be synchronized on this loader.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public class IncrementalTriggerOutOfMemoryLoader {
+    private static final Logger              logger     = LoggerFactory.getLogger(IncrementalTriggerOutOfMemoryLoader.class);
+    private static final long                FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long                FNV_PRIME  = 0x100000001b3L;
+
+    private final TriggerOutOfMemory.Builder builder;
+    private final Path                       path;
+    private final TriggerOutOfMemory         props      = new TriggerOutOfMemory();
+    private FileState                        state;
+    private Map<String, List<String>>        systemProperties;
+    private long[]                           lineHashes;
+    private String[]                         lineKeys;
+
+    /**
+     * The bounds and hashes of the lines of the file contents
+     */
+    private static final class LineIndex implements MappedPropertiesLoader.LineVisitor {
+        private final ByteBuffer buffer;
+        int                      count;
+        int[]                    starts = new int[1024];
+        int[]                    ends   = new int[1024];
+        long[]                   hashes = new long[1024];
+
+        LineIndex(ByteBuffer buffer) {
+            this.buffer = buffer;
+            MappedPropertiesLoader.forEachLine(buffer, 0, buffer.limit(), true, this);
+        }
+
+        @Override
+        public void line(int start, int end) {
+            if (count == starts.length) {
+                int capacity = count * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+            }
+            long hash = FNV_OFFSET;
+            for (int i = start; i < end; i++)
+                hash = (hash ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+            starts[count] = start;
+            ends[count] = end;
+            hashes[count++] = (hash ^ (end - start)) * FNV_PRIME;
+        }
+    }
+
+    /**
+     * Creates the loader and performs the initial, full load on the calling thread
+     *
+     * @param builder
+     *            the builder used for every (re)load; it must not be changed afterwards
+     * @param filePath
+     * @throws CollectionProviderException
+     *             if the initial load fails
+     */
+    public IncrementalTriggerOutOfMemoryLoader(TriggerOutOfMemory.Builder builder, String filePath) throws CollectionProviderException {
+        if (filePath == null)
+            throw new CollectionProviderException("No file path specified");
+        this.builder = builder;
+        this.path = FileSystems.getDefault().getPath(filePath);
+        try {
+            long takenAt = System.currentTimeMillis();
+            long lastModified = FileState.lastModified(path);
+            ByteBuffer contents = FileState.read(path);
+            fullLoad(contents, props);
+            state = FileState.of(contents, lastModified, takenAt);
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } catch (LoadLimits.LimitExceededException e) {
+            throw e.toCollectionProviderException();
+        }
+    }
+
+    /**
+     * Returns the map, which is the same instance after every reload
+     *
+     * @return
+     */
+    public TriggerOutOfMemory get() {
+        return props;
+    }
+
+    /**
+     * Checks the file and, if its contents changed, patches the map
+     *
+     * @return the keys that were added, removed or whose values changed
+     * @throws CollectionProviderException
+     *             if the file cannot be read; the map is left unchanged
+     */
+    public synchronized Set<String> reload() throws CollectionProviderException {
+        try {
+            FileState previousState = state;
+            if (previousState.isUnchanged(path))
+                return Collections.emptySet();
+            // the modification time is taken before reading, so a write that lands during the read is seen again by the next check
+            long takenAt = System.currentTimeMillis();
+            long lastModified = FileState.lastModified(path);
+            ByteBuffer contents = FileState.read(path);
+            FileState newState = FileState.of(contents, lastModified, takenAt);
+            if (newState.hasSameContents(previousState)) {
+                logger.debug("{} was touched but its contents are unchanged", path);
+                state = newState;
+                return Collections.emptySet();
+            }
+            Set<String> changed;
+            if (systemProperties.equals(prefixedSystemProperties())) {
+                changed = patch(contents);
+            } else {
+                logger.debug("System properties under {} changed, reloading {} in full", builder.prefix, path);
+                TriggerOutOfMemory loaded = new TriggerOutOfMemory();
+                fullLoad(contents, loaded);
+                changed = replaceWith(loaded);
+            }
+            state = newState;
+            return Collections.unmodifiableSet(changed);
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } catch (LoadLimits.LimitExceededException e) {
+            throw e.toCollectionProviderException();
+        }
+    }
+
+    /**
+     * Loads the whole contents into an empty map, recording the hash and key of every line
+     *
+     * @param buffer
+     *            the contents of the file, positioned at 0
+     * @param target
+     *            the empty map to load into
+     */
+    private void fullLoad(ByteBuffer buffer, TriggerOutOfMemory target) throws IOException, CollectionProviderException {
+        LoadLimits limits = LoadLimits.of(builder);
+        if (limits != null)
+            limits.checkFiles(Collections.singletonList(path));
+        LoadMetrics metrics = builder.newMetrics();
+        long mark = (metrics != null) ? System.nanoTime() : 0;
+        LineIndex lines = new LineIndex(buffer);
+        if (metrics != null) {
+            long indexed = System.nanoTime();
+            metrics.readNanos = indexed - mark;
+            metrics.bytesRead = buffer.limit();
+            mark = indexed;
+        }
+        MappedPropertiesLoader loader = new MappedPropertiesLoader(builder, metrics, limits);
+        loader.bind(buffer);
+        Map<String, String> canonical = new HashMap<String, String>();
+        String[] keys = new String[lines.count];
+        for (int i = 0; i < lines.count; i++) {
+            String key = loader.parseLine(buffer, lines.starts[i], lines.ends[i], target);
+            if (key != null) {
+                String existing = canonical.putIfAbsent(key, key);
+                keys[i] = (existing != null) ? existing : key;
+            }
+        }
+        if (metrics != null)
+            metrics.parseNanos = System.nanoTime() - mark;
+        systemProperties = prefixedSystemProperties();
+        TriggerOutOfMemory.completeCore(target, builder, metrics);
+        lineHashes = Arrays.copyOf(lines.hashes, lines.count);
+        lineKeys = keys;
+    }
+
+    /**
+     * Makes the map equal to a fully reloaded one in place, so that only the keys that changed are written and no copy of the previous map is needed
+     *
+     * @param loaded
+     * @return the changed keys
+     */
+    private Set<String> replaceWith(TriggerOutOfMemory loaded) {
+        Set<String> changed = TriggerOutOfMemoryReloader.changedKeys(props, loaded);
+        for (String key : changed) {
+            List<String> values = loaded.get(key);
+            if (values == null)
+                props.remove(key);
+            else
+                props.put(key, values);
+        }
+        return changed;
+    }
+
+    /**
+     * Re-parses the lines of the keys affected by the changed lines and patches the map
+     *
+     * @param buffer
+     *            the contents of the file, positioned at 0
+     * @return the changed keys
+     */
+    private Set<String> patch(ByteBuffer buffer) {
+        LineIndex lines = new LineIndex(buffer);
+
+        // skip the unchanged lines at both ends
+        int oldCount = lineHashes.length;
+        int common = Math.min(oldCount, lines.count);
+        int head = 0;
+        while (head < common && lineHashes[head] == lines.hashes[head])
+            head++;
+        int tail = 0;
+        while (tail < common - head && lineHashes[oldCount - 1 - tail] == lines.hashes[lines.count - 1 - tail])
+            tail++;
+        int oldEnd = oldCount - tail;
+        int newEnd = lines.count - tail;
+        logger.debug("Re-parsing lines {} to {} of {}", head, newEnd, path);
+
+        String[] keys = new String[lines.count];
+        System.arraycopy(lineKeys, 0, keys, 0, head);
+        System.arraycopy(lineKeys, oldEnd, keys, newEnd, tail);
+
+        // the keys of the removed and the added lines are affected
+        Set<String> affected = new HashSet<String>();
+        for (int i = head; i < oldEnd; i++)
+            if (lineKeys[i] != null)
+                affected.add(lineKeys[i]);
+        // the changed lines are only parsed for their keys here, so the limits on values are not counted twice; their lengths are checked though, as
+        // not all of them are parsed again below
+        LoadLimits limits = LoadLimits.of(builder);
+        MappedPropertiesLoader keyLoader = new MappedPropertiesLoader(builder, null, null);
+        keyLoader.bind(buffer);
+        TriggerOutOfMemory scratch = new TriggerOutOfMemory();
+        for (int i = head; i < newEnd; i++) {
+            if (limits != null)
+                limits.checkLine(lines.ends[i] - lines.starts[i]);
+            keys[i] = keyLoader.parseLine(buffer, lines.starts[i], lines.ends[i], scratch);
+            if (keys[i] != null)
+                affected.add(keys[i]);
+        }
+
+        // parse every line of the affected keys in file order, to keep the append order of repeated keys
+        MappedPropertiesLoader loader = new MappedPropertiesLoader(builder, null, limits);
+        loader.bind(buffer);
+        TriggerOutOfMemory loaded = new TriggerOutOfMemory();
+        if (!affected.isEmpty())
+            for (int i = 0; i < lines.count; i++)
+                if (keys[i] != null && affected.contains(keys[i]))
+                    loader.parseLine(buffer, lines.starts[i], lines.ends[i], loaded);
+
+        // the key limit applies to the keys of the file, as with a full load
+        if (limits != null) {
+            Set<String> fileKeys = new HashSet<String>(Arrays.asList(keys));
+            fileKeys.remove(null);
+            limits.checkKeys(fileKeys.size());
+        }
+
+        Set<String> changed = new HashSet<String>();
+        for (String key : affected) {
+            if (isOverridden(key))
+                continue;
+            List<String> values = loaded.get(key);
+            if (values == null)
+                values = lowerPrecedence(key);
+            List<String> previous = props.get(key);
+            if (Objects.equals(previous, values))
+                continue;
+            changed.add(key);
+            if (values == null)
+                props.remove(key);
+            else
+                props.put(key, values);
+        }
+        lineHashes = Arrays.copyOf(lines.hashes, lines.count);
+        lineKeys = keys;
+        return changed;
+    }
+
+    /**
+     * Returns true if the key is set by a system property that overrides the file
+     */
+    private boolean isOverridden(String key) {
+        return builder.loadSystemProperties && StringUtil.isNotBlank(builder.prefix) && systemProperties.containsKey(key);
+    }
+
+    /**
+     * Resolves a key that is not in the file from the system property defaults and the builder defaults
+     *
+     * @return the values, or null if the key is absent
+     */
+    private List<String> lowerPrecedence(String key) {
+        boolean prefixed = StringUtil.isNotBlank(builder.prefix);
+        if (builder.useSystemPropertiesAsDefaults && prefixed) {
+            List<String> values = systemProperties.get(key);
+            if (values != null) {
+                // a system default that splits into no values hides the builder default
+                return values.isEmpty() ? null : SystemPropertiesSnapshot.copy(values, builder.internPool);
+            }
+        }
+        if (builder.defaults == null)
+            return null;
+        // shared copy-on-write as in a full build, so writing to the map never changes the defaults
+        return CopyOnWriteValues.of(builder.defaults.get(prefixed ? builder.prefix + key : key));
+    }
+
+    /**
+     * Returns the split system properties under the prefix, keyed without the prefix, if the builder uses system properties at all
+     */
+    private Map<String, List<String>> prefixedSystemProperties() {
+        if ((builder.useSystemPropertiesAsDefaults || builder.loadSystemProperties) && StringUtil.isNotBlank(builder.prefix))
+            return SystemPropertiesSnapshot.current().withPrefix(builder.prefix);
+        return Collections.emptyMap();
+    }
+}
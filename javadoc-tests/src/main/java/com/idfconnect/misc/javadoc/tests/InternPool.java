@@ -0,0 +1,131 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe pool used to deduplicate the keys and values created while loading properties. A pool can be shared by any number of builds in
+ * the same JVM, so repeated values such as "true", host names or role names end up as a single String instance.
+ * <p>
+ * Once the pool holds its maximum number of entries it stops admitting new Strings; lookups of pooled Strings still succeed. The counters are updated
+ * without locking and are only approximate while loads are in progress.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public class InternPool {
+    /** The default maximum number of pooled Strings */
+    public static final int                         DEFAULT_MAX_ENTRIES = 64 * 1024;
+    private static final InternPool                 SHARED              = new InternPool(DEFAULT_MAX_ENTRIES);
+
+    private final int                               maxEntries;
+    private final ConcurrentHashMap<String, String> pool;
+    private final LongAdder                         hits                = new LongAdder();
+    private final LongAdder                         misses              = new LongAdder();
+    private final LongAdder                         bytesSaved          = new LongAdder();
+
+    /**
+     * Creates a pool holding up to the given number of Strings
+     *
+     * @param maxEntries
+     */
+    public InternPool(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("The pool must hold at least one entry");
+        this.maxEntries = maxEntries;
+        this.pool = new ConcurrentHashMap<String, String>(Math.min(maxEntries, 1024));
+    }
+
+    /**
+     * Returns the JVM-wide pool used by {@link TriggerOutOfMemory.Builder#deduplicate()}
+     *
+     * @return
+     */
+    public static InternPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the pooled instance equal to the given String, adding it to the pool if there is room
+     *
+     * @param s
+     * @return the pooled instance, or s itself
+     */
+    public String intern(String s) {
+        if (s == null)
+            return null;
+        String pooled = pool.get(s);
+        if (pooled != null) {
+            if (pooled != s) {
+                hits.increment();
+                bytesSaved.add(MemoryEstimator.string(s));
+            }
+            return pooled;
+        }
+        misses.increment();
+        if (pool.size() >= maxEntries)
+            return s;
+        pooled = pool.putIfAbsent(s, s);
+        return (pooled != null) ? pooled : s;
+    }
+
+    /**
+     * Null-safe variant for an optional pool
+     */
+    static String intern(InternPool pool, String s) {
+        return (pool != null) ? pool.intern(s) : s;
+    }
+
+    /**
+     * @return the number of lookups that returned an already pooled instance
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups of Strings that were not pooled yet
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that returned an already pooled instance
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return (total == 0) ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * @return the estimated number of bytes of duplicate Strings that were replaced by pooled instances
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /**
+     * @return the number of pooled Strings
+     */
+    public int size() {
+        return pool.size();
+    }
+
+    /**
+     * Removes all pooled Strings and resets the counters
+     */
+    public void clear() {
+        pool.clear();
+        hits.reset();
+        misses.reset();
+        bytesSaved.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InternPool[size=%d, hits=%d, misses=%d, hitRate=%.3f, bytesSaved=%d]", size(), getHitCount(), getMissCount(), getHitRate(),
+                getBytesSaved());
+    }
+}
@@ -0,0 +1,145 @@
+package com.idfconnect.misc.javadoc.tests;
+
+/**
+ * Hashing and matching of keys that are not held as Strings, without creating a String. The hashes are the same as {@link String#hashCode()} of the
+ * equivalent String, so keys in any form can be looked up in the same table.
+ * <p>
+ * Byte ranges are decoded as UTF-8 on the fly, which covers ASCII. A malformed UTF-8 sequence never matches a key.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class KeyHashes {
+    private static final int MALFORMED = -1;
+
+    private KeyHashes() {
+    }
+
+    /**
+     * Returns the hash code of the characters, which is the same as {@link String#hashCode()} of the equivalent String
+     *
+     * @param key
+     * @return
+     */
+    static int hash(CharSequence key) {
+        int h = 0;
+        for (int i = 0, length = key.length(); i < length; i++)
+            h = 31 * h + key.charAt(i);
+        return h;
+    }
+
+    /**
+     * Returns the hash code of the UTF-8 encoded key, which is the same as {@link String#hashCode()} of the decoded String
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return
+     */
+    static int hash(byte[] bytes, int offset, int length) {
+        int h = 0;
+        int end = offset + length;
+        for (int i = offset; i < end;) {
+            int b = bytes[i];
+            if (b >= 0) {
+                h = 31 * h + b;
+                i++;
+                continue;
+            }
+            int decoded = decode(bytes, i, end);
+            if (decoded == MALFORMED) {
+                // the hash does not matter, as the key cannot match
+                h = 31 * h + 0xfffd;
+                i++;
+                continue;
+            }
+            int cp = decoded & 0x1fffff;
+            if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT)
+                h = 31 * (31 * h + Character.highSurrogate(cp)) + Character.lowSurrogate(cp);
+            else
+                h = 31 * h + cp;
+            i += decoded >>> 21;
+        }
+        return h;
+    }
+
+    /**
+     * Returns true if the String is equal to the UTF-8 encoded key
+     *
+     * @param s
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return
+     */
+    static boolean matches(String s, byte[] bytes, int offset, int length) {
+        // every character takes at least one byte and at most three, or four for a surrogate pair
+        if (s.length() > length || 3 * s.length() < length)
+            return false;
+        int k = 0;
+        int end = offset + length;
+        for (int i = offset; i < end;) {
+            if (k == s.length())
+                return false;
+            int b = bytes[i];
+            if (b >= 0) {
+                if (s.charAt(k++) != b)
+                    return false;
+                i++;
+                continue;
+            }
+            int decoded = decode(bytes, i, end);
+            if (decoded == MALFORMED)
+                return false;
+            int cp = decoded & 0x1fffff;
+            if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (k + 1 >= s.length() || s.charAt(k) != Character.highSurrogate(cp) || s.charAt(k + 1) != Character.lowSurrogate(cp))
+                    return false;
+                k += 2;
+            } else if (s.charAt(k++) != cp) {
+                return false;
+            }
+            i += decoded >>> 21;
+        }
+        return k == s.length();
+    }
+
+    /**
+     * Decodes the multi-byte UTF-8 sequence at the given position
+     *
+     * @return the number of bytes in bits 21 and up and the code point in the lower 21 bits, or {@link #MALFORMED}
+     */
+    private static int decode(byte[] bytes, int i, int end) {
+        int b = bytes[i] & 0xff;
+        int length;
+        int cp;
+        int min;
+        if ((b & 0xe0) == 0xc0) {
+            length = 2;
+            cp = b & 0x1f;
+            min = 0x80;
+        } else if ((b & 0xf0) == 0xe0) {
+            length = 3;
+            cp = b & 0x0f;
+            min = 0x800;
+        } else if ((b & 0xf8) == 0xf0) {
+            length = 4;
+            cp = b & 0x07;
+            min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            return MALFORMED;
+        }
+        if (i + length > end)
+            return MALFORMED;
+        for (int j = 1; j < length; j++) {
+            int c = bytes[i + j] & 0xff;
+            if ((c & 0xc0) != 0x80)
+                return MALFORMED;
+            cp = (cp << 6) | (c & 0x3f);
+        }
+        // reject overlong forms, surrogates and code points beyond the Unicode range, as the String decoder does
+        if (cp < min || cp > Character.MAX_CODE_POINT || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE))
+            return MALFORMED;
+        return (length << 21) | cp;
+    }
+}
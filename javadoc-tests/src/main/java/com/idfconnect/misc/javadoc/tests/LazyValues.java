@@ -0,0 +1,200 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The values of a key loaded with {@link TriggerOutOfMemory.Builder#lazyValues()}. The raw value of every line of the key is kept as loaded, and the quote
+ * stripping and delimiter split only happen on the first access to the list; the resulting values are then kept and the raw values released.
+ * <p>
+ * The raw values are Strings, as decoded by the loaders, so the mode saves the split values and their lists rather than the input itself: memory still
+ * grows with the size of the input, but by one String per line instead of one per value. A list holds no more than a reference to the settings shared by
+ * its load, its single raw value or an array of them, and the parsed values, so it is lighter than the ArrayList an eager load creates per key.
+ * </p>
+ * <p>
+ * The list is fully mutable once parsed. The first access may come from any thread: parsing is synchronized and the parsed values are published through
+ * a volatile field, so a loaded map that is only read can still be shared. A list of this class is serialized as a plain list of its split values.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class LazyValues extends AbstractList<String> implements RandomAccess, Serializable {
+    private static final long          serialVersionUID = -3811547021907452126L;
+
+    private final transient Source     source;
+    /** The raw value of the only line of the key, or an array of those of its lines */
+    private Object                     raw;
+    private int                        rawCount;
+    private volatile ArrayList<String> values;
+
+    /**
+     * How the raw values of a load are parsed, shared by all the lists of the load
+     */
+    static final class Source {
+        private final DelimiterSplitter splitter;
+        private final boolean           quoted;
+        private final InternPool        pool;
+
+        /**
+         * @param splitter
+         * @param quoted
+         *            true if the values still have to be stripped of their (already validated) quotes
+         * @param pool
+         *            the optional pool to deduplicate the values
+         */
+        Source(DelimiterSplitter splitter, boolean quoted, InternPool pool) {
+            this.splitter = splitter;
+            this.quoted = quoted;
+            this.pool = pool;
+        }
+
+        boolean matches(DelimiterSplitter splitter, boolean quoted, InternPool pool) {
+            return this.splitter == splitter && this.quoted == quoted && this.pool == pool;
+        }
+    }
+
+    private LazyValues(Source source, String first) {
+        this.source = source;
+        this.raw = first;
+        this.rawCount = 1;
+    }
+
+    /**
+     * Records a raw value for the key. A value that splits into no values at all is dropped, so that a key whose values are all empty stays absent, as with
+     * eager loading. The source must have a literal delimiter, see {@link TriggerOutOfMemory.Builder#splitsLazily()}
+     *
+     * @param name
+     * @param value
+     *            the trimmed value
+     * @param source
+     * @param target
+     */
+    static void add(String name, String value, Source source, TriggerOutOfMemory target) {
+        int start = source.quoted ? value.indexOf('\"') + 1 : 0;
+        int end = source.quoted ? value.indexOf('\"', start) : value.length();
+        if (source.splitter.isOnlyDelimiters(value, start, end))
+            return;
+        List<String> existing = target.get(name);
+        if (existing == null)
+            target.put(name, new LazyValues(source, value));
+        else if (existing instanceof LazyValues)
+            ((LazyValues) existing).append(value);
+        else
+            source.splitter.splitInto(unquote(value, source.quoted), name, target, source.pool);
+    }
+
+    private static String unquote(String value, boolean quoted) {
+        if (!quoted)
+            return value;
+        int start = value.indexOf('\"') + 1;
+        return value.substring(start, value.indexOf('\"', start));
+    }
+
+    private synchronized void append(String value) {
+        if (values != null) {
+            parseInto(value, values);
+            return;
+        }
+        if (rawCount == 1) {
+            raw = new String[] { (String) raw, value, null };
+        } else {
+            String[] array = (String[]) raw;
+            if (rawCount == array.length)
+                raw = array = Arrays.copyOf(array, rawCount * 2);
+            array[rawCount] = value;
+        }
+        rawCount++;
+    }
+
+    private String rawAt(int index) {
+        return (rawCount == 1) ? (String) raw : ((String[]) raw)[index];
+    }
+
+    /**
+     * Appends the values of another list, keeping both unparsed if possible
+     *
+     * @param other
+     */
+    void appendAll(List<String> other) {
+        if (other instanceof LazyValues) {
+            LazyValues lazy = (LazyValues) other;
+            synchronized (lazy) {
+                if (lazy.values == null) {
+                    for (int i = 0; i < lazy.rawCount; i++)
+                        append(lazy.rawAt(i));
+                    return;
+                }
+            }
+        }
+        addAll(other);
+    }
+
+    /**
+     * Returns the number of values if they have been split, otherwise the number of raw values, without splitting them
+     *
+     * @return
+     */
+    synchronized int sizeHint() {
+        ArrayList<String> parsed = values;
+        return (parsed != null) ? parsed.size() : rawCount;
+    }
+
+    private ArrayList<String> values() {
+        ArrayList<String> parsed = values;
+        if (parsed == null) {
+            synchronized (this) {
+                parsed = values;
+                if (parsed == null) {
+                    parsed = new ArrayList<String>(rawCount);
+                    for (int i = 0; i < rawCount; i++)
+                        parseInto(rawAt(i), parsed);
+                    values = parsed;
+                    raw = null;
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private void parseInto(String value, List<String> target) {
+        int count = source.splitter.split(unquote(value, source.quoted), target);
+        if (source.pool != null)
+            for (int i = target.size() - count; i < target.size(); i++)
+                target.set(i, source.pool.intern(target.get(i)));
+    }
+
+    @Override
+    public String get(int index) {
+        return values().get(index);
+    }
+
+    @Override
+    public int size() {
+        return values().size();
+    }
+
+    @Override
+    public String set(int index, String element) {
+        return values().set(index, element);
+    }
+
+    @Override
+    public void add(int index, String element) {
+        values().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public String remove(int index) {
+        modCount++;
+        return values().remove(index);
+    }
+
+    private Object writeReplace() {
+        return new ArrayList<String>(values());
+    }
+}
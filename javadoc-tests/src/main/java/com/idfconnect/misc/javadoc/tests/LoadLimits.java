@@ -0,0 +1,213 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Enforces the limits set on a {@link TriggerOutOfMemory.Builder} while loading, and keeps the running totals of a single load. Only created when at least
+ * one limit is set, so loads without limits do not pay for the checks.
+ * <p>
+ * The limits apply to the loaded entries only, not to the defaults or system properties applied afterwards. Retained bytes are the estimated heap size of
+ * the loaded keys and values and of their entries, not counting Strings shared through deduplication. The values of a key are counted as they are split,
+ * so a line with too many values fails before they have all been created.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class LoadLimits {
+    private final int  maxLineLength;
+    private final int  maxValuesPerKey;
+    private final int  maxKeys;
+    private final long       maxRetainedBytes;
+    /** The retained bytes of the whole load, shared by all its parts */
+    private final AtomicLong retainedBytes;
+
+    private LoadLimits(int maxLineLength, int maxValuesPerKey, int maxKeys, long maxRetainedBytes, AtomicLong retainedBytes) {
+        this.maxLineLength = maxLineLength;
+        this.maxValuesPerKey = maxValuesPerKey;
+        this.maxKeys = maxKeys;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.retainedBytes = retainedBytes;
+    }
+
+    /**
+     * Returns the limits of the builder for a new load, or null if the builder has none
+     *
+     * @param builder
+     * @return
+     */
+    static LoadLimits of(TriggerOutOfMemory.Builder builder) {
+        if (builder.maxLineLength == 0 && builder.maxValuesPerKey == 0 && builder.maxKeys == 0 && builder.maxRetainedBytes == 0)
+            return null;
+        return new LoadLimits(builder.maxLineLength, builder.maxValuesPerKey, builder.maxKeys, builder.maxRetainedBytes, new AtomicLong());
+    }
+
+    /**
+     * Returns the same limits for a part of the load that is parsed into a map of its own, possibly on another thread, and merged later with
+     * {@link #merged(TriggerOutOfMemory)}. The part checks keys and values against its own map, but adds its retained bytes to those of the whole load,
+     * so the parts in flight fail as soon as they retain too much together rather than each being allowed the maximum
+     *
+     * @return
+     */
+    LoadLimits part() {
+        return new LoadLimits(maxLineLength, maxValuesPerKey, maxKeys, maxRetainedBytes, retainedBytes);
+    }
+
+    /**
+     * Thrown when a limit is exceeded. It is unchecked so that it can leave the line visitors and parallel tasks, and is turned into a
+     * {@link CollectionProviderException} by the build
+     */
+    static final class LimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LimitExceededException(String message) {
+            super(message);
+        }
+
+        CollectionProviderException toCollectionProviderException() {
+            return new CollectionProviderException(getMessage());
+        }
+    }
+
+    /**
+     * Fails fast if files are too large to load together, that is if their estimated size once loaded exceeds the maximum retained bytes. Does nothing
+     * without that limit. The heap that happens to be free is not checked, as it depends on when garbage was last collected
+     *
+     * @param paths
+     * @throws CollectionProviderException
+     */
+    void checkFiles(Collection<Path> paths) throws CollectionProviderException {
+        if (maxRetainedBytes == 0)
+            return;
+        long size = 0;
+        try {
+            for (Path path : paths)
+                size += Files.size(path);
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        }
+        checkSize((paths.size() == 1) ? "File " + paths.iterator().next() : paths.size() + " files", size);
+    }
+
+    /**
+     * Fails fast if input of the given size would retain more than the maximum retained bytes once loaded. Does nothing without that limit
+     *
+     * @param input
+     *            a description of the input, for the message
+     * @param size
+     *            the size of the input in bytes
+     * @throws CollectionProviderException
+     */
+    void checkSize(String input, long size) throws CollectionProviderException {
+        if (maxRetainedBytes == 0)
+            return;
+        long estimate = MemoryEstimator.fileLoad(size);
+        if (estimate > maxRetainedBytes)
+            throw new CollectionProviderException(input + " of " + size + " bytes would retain an estimated " + estimate + " bytes, more than the maximum of "
+                    + maxRetainedBytes);
+    }
+
+    /**
+     * Checks the length of a line before it is parsed
+     *
+     * @param length
+     *            the length in characters, or in bytes for memory-mapped files
+     */
+    void checkLine(long length) {
+        if (maxLineLength > 0 && length > maxLineLength)
+            throw new LimitExceededException("Line of length " + length + " exceeds the maximum line length of " + maxLineLength);
+    }
+
+    boolean limitsLineLength() {
+        return maxLineLength > 0;
+    }
+
+    boolean limitsValuesPerKey() {
+        return maxValuesPerKey > 0;
+    }
+
+    int maxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Returns the number of values of the key before a line is parsed, or -1 if it is absent
+     *
+     * @param name
+     * @param target
+     * @return
+     */
+    static int valuesOf(String name, TriggerOutOfMemory target) {
+        List<String> values = target.get(name);
+        if (values == null)
+            return -1;
+        return (values instanceof LazyValues) ? ((LazyValues) values).sizeHint() : values.size();
+    }
+
+    /**
+     * Checks the target after a line added values to a key
+     *
+     * @param name
+     * @param before
+     *            the number of values of the key before the line, as returned by {@link #valuesOf(String, TriggerOutOfMemory)}
+     * @param chars
+     *            the length of the raw value of the line
+     * @param target
+     */
+    void added(String name, int before, int chars, TriggerOutOfMemory target) {
+        int after = valuesOf(name, target);
+        if (after == -1)
+            return;
+        long retained = 0;
+        if (before == -1) {
+            if (maxKeys > 0 && target.size() > maxKeys)
+                throw new LimitExceededException("Key " + name + " exceeds the maximum of " + maxKeys + " keys");
+            retained += MemoryEstimator.entry(name);
+        }
+        checkValues(name, after);
+        retained += MemoryEstimator.values(after - Math.max(before, 0), chars);
+        checkRetained(retainedBytes.addAndGet(retained));
+    }
+
+    /**
+     * Checks the target after a part of the load was merged into it. The retained bytes of the part were already counted as it was loaded
+     *
+     * @param target
+     */
+    void merged(TriggerOutOfMemory target) {
+        checkKeys(target.size());
+    }
+
+    /**
+     * Checks the number of keys of a whole map
+     *
+     * @param count
+     */
+    void checkKeys(int count) {
+        if (maxKeys > 0 && count > maxKeys)
+            throw new LimitExceededException("The loaded properties exceed the maximum of " + maxKeys + " keys");
+    }
+
+    /**
+     * Checks the number of values of a key
+     *
+     * @param name
+     * @param count
+     */
+    void checkValues(String name, int count) {
+        if (maxValuesPerKey > 0 && count > maxValuesPerKey)
+            throw new LimitExceededException("Key " + name + " has " + count + " values, more than the maximum of " + maxValuesPerKey);
+    }
+
+    private void checkRetained(long retainedBytes) {
+        if (maxRetainedBytes > 0 && retainedBytes > maxRetainedBytes)
+            throw new LimitExceededException("The loaded properties retain an estimated " + retainedBytes + " bytes, more than the maximum of "
+                    + maxRetainedBytes);
+    }
+}
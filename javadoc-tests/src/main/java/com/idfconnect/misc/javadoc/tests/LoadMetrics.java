@@ -0,0 +1,303 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of a single build, reported to the {@link Listener} set with {@link TriggerOutOfMemory.Builder#metrics(Listener)} once the build completes.
+ * When no listener is set, no statistics are collected at all.
+ * <p>
+ * The phases are timed as follows:
+ * </p>
+ * <ul>
+ * <li>read: the time spent reading lines from a Reader or file. A memory-mapped file is read as its pages are touched while parsing, so this only covers
+ * mapping it</li>
+ * <li>parse: the time spent parsing the raw entries into the results. With parallel parsing this is the sum over the parsing threads</li>
+ * <li>defaults: the time spent filling in the system property defaults and the builder defaults</li>
+ * <li>system properties: the time spent applying the overriding system properties</li>
+ * </ul>
+ * <p>
+ * Timing every line adds a small cost to a build while a listener is set.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public final class LoadMetrics {
+    /**
+     * Notified after each build of a builder it is set on
+     */
+    public interface Listener {
+        /**
+         * @param metrics
+         *            the statistics of the completed build
+         */
+        void loaded(LoadMetrics metrics);
+    }
+
+    /**
+     * The reasons for ignoring a line of input
+     */
+    public enum SkipReason {
+        /** The line is empty or only holds whitespace */
+        BLANK,
+        /** The line starts with '#' or '!' */
+        COMMENT,
+        /** The line has no '=', or nothing after it */
+        MISSING_EQUALS,
+        /** Quoted values are expected, but the value is not enclosed in quotes */
+        MISSING_QUOTES
+    }
+
+    long               bytesRead;
+    long               lines;
+    final long[]       skipped = new long[SkipReason.values().length];
+    long               readNanos;
+    long               parseNanos;
+    long               defaultsNanos;
+    long               systemPropertiesNanos;
+    int                peakTemporaryKeys;
+    private int        keys;
+    private long       values;
+
+    LoadMetrics() {
+    }
+
+    /**
+     * Records a line that was ignored
+     *
+     * @param reason
+     */
+    void skip(SkipReason reason) {
+        skipped[reason.ordinal()]++;
+    }
+
+    /**
+     * Records the number of keys held in temporary maps at a point of the build, keeping the highest
+     *
+     * @param keys
+     */
+    void peak(int keys) {
+        if (keys > peakTemporaryKeys)
+            peakTemporaryKeys = keys;
+    }
+
+    /**
+     * Adds the statistics of a partial load, for example a chunk parsed on another thread
+     *
+     * @param other
+     */
+    void add(LoadMetrics other) {
+        bytesRead += other.bytesRead;
+        lines += other.lines;
+        for (int i = 0; i < skipped.length; i++)
+            skipped[i] += other.skipped[i];
+        readNanos += other.readNanos;
+        parseNanos += other.parseNanos;
+    }
+
+    /**
+     * Counts the keys and values of the completed results. Lazily loaded values that have not been split yet are counted as one value per line
+     *
+     * @param props
+     */
+    void count(Map<String, List<String>> props) {
+        keys = props.size();
+        values = 0;
+        for (List<String> v : props.values())
+            if (v != null)
+                values += (v instanceof LazyValues) ? ((LazyValues) v).sizeHint() : v.size();
+    }
+
+    /**
+     * Returns the number of bytes read from a file as they are encoded in it, or of characters read from a Reader, including line terminators
+     *
+     * @return
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of lines parsed, including the ignored ones, or of the raw entries under the prefix
+     *
+     * @return
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * Returns the number of lines ignored for the given reason
+     *
+     * @param reason
+     * @return
+     */
+    public long getSkippedLines(SkipReason reason) {
+        return skipped[reason.ordinal()];
+    }
+
+    /**
+     * Returns the number of lines ignored for any reason
+     *
+     * @return
+     */
+    public long getSkippedLines() {
+        long total = 0;
+        for (long count : skipped)
+            total += count;
+        return total;
+    }
+
+    /**
+     * Returns the number of keys in the results
+     *
+     * @return
+     */
+    public int getKeys() {
+        return keys;
+    }
+
+    /**
+     * Returns the number of values in the results
+     *
+     * @return
+     */
+    public long getValues() {
+        return values;
+    }
+
+    /**
+     * Returns the time spent in the read phase
+     *
+     * @return
+     */
+    public Duration getReadTime() {
+        return Duration.ofNanos(readNanos);
+    }
+
+    /**
+     * Returns the time spent in the parse phase
+     *
+     * @return
+     */
+    public Duration getParseTime() {
+        return Duration.ofNanos(parseNanos);
+    }
+
+    /**
+     * Returns the time spent in the defaults phase
+     *
+     * @return
+     */
+    public Duration getDefaultsTime() {
+        return Duration.ofNanos(defaultsNanos);
+    }
+
+    /**
+     * Returns the time spent in the system properties phase
+     *
+     * @return
+     */
+    public Duration getSystemPropertiesTime() {
+        return Duration.ofNanos(systemPropertiesNanos);
+    }
+
+    /**
+     * Returns the highest number of keys held while loading, before the defaults and system properties are applied. With parallel parsing this includes
+     * the partial map being merged
+     *
+     * @return
+     */
+    public int getPeakTemporaryKeys() {
+        return peakTemporaryKeys;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("bytes=").append(bytesRead).append(" lines=").append(lines).append(" skipped={");
+        for (SkipReason reason : SkipReason.values()) {
+            if (reason.ordinal() > 0)
+                sb.append(", ");
+            sb.append(reason).append('=').append(skipped[reason.ordinal()]);
+        }
+        sb.append("} keys=").append(keys).append(" values=").append(values).append(" peakTemporaryKeys=").append(peakTemporaryKeys);
+        sb.append(String.format(" read=%.3fms parse=%.3fms defaults=%.3fms systemProperties=%.3fms", readNanos / 1e6, parseNanos / 1e6, defaultsNanos / 1e6,
+                systemPropertiesNanos / 1e6));
+        return sb.toString();
+    }
+
+    /**
+     * Counts the bytes read through it, below the decoder of a Reader, so multi-byte characters and line terminators count as they are in the file
+     */
+    static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Counts the characters read through it, including the line terminators that are dropped by {@link java.io.BufferedReader#readLine()}
+     */
+    static final class CountingReader extends FilterReader {
+        long count;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0)
+                count++;
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Loads raw properties from a memory-mapped file, scanning the mapped bytes directly rather than going through a Reader. Strings are only created for the
+ * keys and values that are kept.
+ * <p>
+ * The results are the same as the Reader based loader in {@link TriggerOutOfMemory} for UTF-8 input: line terminators, blank lines, comments, the '=' and
+ * quote rules and the delimiter split all follow the same semantics. The structural characters are all ASCII and can never appear inside a multi-byte UTF-8
+ * sequence, so scanning bytes is safe. Literal ASCII delimiters are matched on the bytes as well; other delimiters are applied to the decoded value. Malformed
+ * UTF-8 sequences are replaced rather than rejected.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class MappedPropertiesLoader {
+    private static final Logger     logger     = LoggerFactory.getLogger(MappedPropertiesLoader.class);
+    private static final int        MAX_WINDOW = Integer.MAX_VALUE;
+
+    private final DelimiterSplitter splitter;
+    private final boolean           useQuotedValues;
+    private final InternPool        internPool;
+    private final LazyValues.Source lazySource;
+    private final byte[]            delimiterBytes;
+    private final LoadMetrics       metrics;
+    private final LoadLimits        limits;
+    private byte[]                  scratch    = new byte[256];
+    private ByteBuffer              view;
+
+    MappedPropertiesLoader(TriggerOutOfMemory.Builder builder) {
+        this(builder, null, null);
+    }
+
+    /**
+     * @param builder
+     * @param metrics
+     *            the statistics to count the parsed lines in, or null
+     * @param limits
+     *            the limits to enforce, or null
+     */
+    MappedPropertiesLoader(TriggerOutOfMemory.Builder builder, LoadMetrics metrics, LoadLimits limits) {
+        this.metrics = metrics;
+        this.limits = limits;
+        this.splitter = builder.splitter;
+        this.useQuotedValues = builder.useQuotedValues;
+        this.internPool = builder.internPool;
+        this.lazySource = builder.splitsLazily() ? new LazyValues.Source(splitter, false, internPool) : null;
+        this.delimiterBytes = asciiBytes((splitter != null) ? splitter.literal() : null);
+    }
+
+    /**
+     * Maps the file in windows of at most 2GB and parses every line into the target. A window always ends on a line boundary; the trailing partial line is
+     * re-mapped at the start of the next window.
+     *
+     * @param path
+     * @param target
+     * @throws CollectionProviderException
+     */
+    void loadInto(Path path, TriggerOutOfMemory target) throws CollectionProviderException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long remaining = size - position;
+                int length = (int) Math.min(remaining, MAX_WINDOW);
+                long mark = (metrics != null) ? System.nanoTime() : 0;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean eof = (length == remaining);
+                if (metrics != null) {
+                    long mapped = System.nanoTime();
+                    metrics.readNanos += mapped - mark;
+                    mark = mapped;
+                }
+                int consumed = parseLines(buffer, 0, length, eof, target);
+                if (metrics != null) {
+                    metrics.parseNanos += System.nanoTime() - mark;
+                    metrics.bytesRead += consumed;
+                }
+                if (consumed == 0)
+                    throw new CollectionProviderException("Line at offset " + position + " exceeds the maximum mappable size");
+                position += consumed;
+            }
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        }
+    }
+
+    /**
+     * Receives the bounds of each line found by {@link MappedPropertiesLoader#forEachLine(ByteBuffer, int, int, boolean, LineVisitor)}
+     */
+    interface LineVisitor {
+        /**
+         * @param start
+         *            the offset of the first byte of the line
+         * @param end
+         *            the offset just past the last byte of the line, excluding the terminator
+         */
+        void line(int start, int end);
+    }
+
+    /**
+     * Parses every complete line in the given range of the buffer. Lines are terminated by '\n', '\r' or "\r\n", as with {@link java.io.BufferedReader#readLine()}.
+     *
+     * @param buffer
+     * @param start
+     * @param limit
+     * @param eof
+     *            true if the range ends at the end of input, in which case a trailing unterminated line is parsed as well
+     * @param target
+     * @return the number of bytes consumed from start, which is the start of the first incomplete line
+     */
+    int parseLines(ByteBuffer buffer, int start, int limit, boolean eof, TriggerOutOfMemory target) {
+        bind(buffer);
+        return forEachLine(buffer, start, limit, eof, (lineStart, lineEnd) -> parseLine(buffer, lineStart, lineEnd, target));
+    }
+
+    /**
+     * Calls the visitor for every complete line in the given range of the buffer, with the same line terminator rules as
+     * {@link #parseLines(ByteBuffer, int, int, boolean, TriggerOutOfMemory)}
+     *
+     * @param buffer
+     * @param start
+     * @param limit
+     * @param eof
+     *            true if the range ends at the end of input, in which case a trailing unterminated line is visited as well
+     * @param visitor
+     * @return the number of bytes consumed from start, which is the start of the first incomplete line
+     */
+    static int forEachLine(ByteBuffer buffer, int start, int limit, boolean eof, LineVisitor visitor) {
+        int lineStart = start;
+        for (int i = start; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                visitor.line(lineStart, i);
+                lineStart = i + 1;
+            } else if (b == '\r') {
+                if (i + 1 < limit) {
+                    visitor.line(lineStart, i);
+                    if (buffer.get(i + 1) == '\n')
+                        i++;
+                    lineStart = i + 1;
+                } else if (eof) {
+                    visitor.line(lineStart, i);
+                    lineStart = limit;
+                } else {
+                    // a "\r\n" pair may be split across windows
+                    return lineStart - start;
+                }
+            }
+        }
+        if (lineStart < limit && eof) {
+            visitor.line(lineStart, limit);
+            lineStart = limit;
+        }
+        return lineStart - start;
+    }
+
+    /**
+     * Sets the buffer that subsequent calls to {@link #parseLine(ByteBuffer, int, int, TriggerOutOfMemory)} read from
+     *
+     * @param buffer
+     */
+    void bind(ByteBuffer buffer) {
+        view = buffer.duplicate();
+    }
+
+    /**
+     * Parses a single line (without terminator) of the bound buffer and adds the resulting values to the target
+     *
+     * @return the key of the line, which may have had no values, or null if the line was ignored
+     */
+    String parseLine(ByteBuffer buffer, int start, int end, TriggerOutOfMemory target) {
+        if (metrics != null)
+            metrics.lines++;
+        if (limits != null)
+            limits.checkLine(end - start);
+
+        // ignore blank lines
+        if (trimStart(buffer, start, end) == end)
+            return skip(LoadMetrics.SkipReason.BLANK);
+
+        // ignore comments
+        byte first = buffer.get(start);
+        if (first == '#' || first == '!')
+            return skip(LoadMetrics.SkipReason.COMMENT);
+
+        // ignore lines with no = sign
+        int posOfEq = indexOf(buffer, (byte) '=', start, end);
+        if (posOfEq == -1 || posOfEq == (end - 1)) {
+            logger.warn("missing '=', ignored line {}", decode(start, end));
+            return skip(LoadMetrics.SkipReason.MISSING_EQUALS);
+        }
+
+        // trim property names
+        int nameStart = trimStart(buffer, start, posOfEq);
+        int nameEnd = trimEnd(buffer, nameStart, posOfEq);
+        int valueStart = trimStart(buffer, posOfEq + 1, end);
+        int valueEnd = trimEnd(buffer, valueStart, end);
+
+        // handle quoted values
+        if (useQuotedValues) {
+            int posOfFirstQuote = indexOf(buffer, (byte) '\"', valueStart, valueEnd);
+            if (posOfFirstQuote == -1 || posOfFirstQuote == (valueEnd - 1)) {
+                logger.warn("missing '\"' around values, ignored line {}", decode(start, end));
+                return skip(LoadMetrics.SkipReason.MISSING_QUOTES);
+            }
+            int posOfNextQuote = indexOf(buffer, (byte) '\"', posOfFirstQuote + 1, valueEnd);
+            if (posOfNextQuote == -1) {
+                logger.warn("missing '\"' around values, ignored line {}", decode(start, end));
+                return skip(LoadMetrics.SkipReason.MISSING_QUOTES);
+            }
+            valueStart = posOfFirstQuote + 1;
+            valueEnd = posOfNextQuote;
+        }
+
+        String name = InternPool.intern(internPool, decode(nameStart, nameEnd));
+        int before = (limits != null) ? LoadLimits.valuesOf(name, target) : 0;
+
+        // if we have a delimiter, apply it to the value; in lazy mode the quotes are already stripped, as that costs nothing here
+        if (lazySource != null) {
+            LazyValues.add(name, decode(valueStart, valueEnd), lazySource, target);
+        } else if (splitter == null) {
+            String value = InternPool.intern(internPool, decode(valueStart, valueEnd));
+            logger.trace("Adding {}={}", name, value);
+            target.add(name, value);
+        } else if (delimiterBytes != null) {
+            splitInto(buffer, valueStart, valueEnd, name, target);
+        } else {
+            splitter.splitInto(decode(valueStart, valueEnd), name, target, internPool, limits);
+        }
+        if (limits != null)
+            limits.added(name, before, valueEnd - valueStart, target);
+        return name;
+    }
+
+    /**
+     * Counts an ignored line, if metrics are collected
+     *
+     * @return null, the result of {@link #parseLine(ByteBuffer, int, int, TriggerOutOfMemory)} for an ignored line
+     */
+    private String skip(LoadMetrics.SkipReason reason) {
+        if (metrics != null)
+            metrics.skip(reason);
+        return null;
+    }
+
+    /**
+     * Splits the value on the literal delimiter bytes with the same semantics as {@link DelimiterSplitter}: the whole value is kept when there is no
+     * delimiter, and trailing empty values are dropped. The number of values is checked against the limits as they are added
+     */
+    private void splitInto(ByteBuffer buffer, int start, int end, String name, TriggerOutOfMemory target) {
+        int pos = indexOf(buffer, delimiterBytes, start, end);
+        if (pos == -1) {
+            String value = InternPool.intern(internPool, decode(start, end));
+            logger.trace("Adding {}={}", name, value);
+            target.add(name, value);
+            return;
+        }
+        List<String> values = target.get(name);
+        boolean created = (values == null);
+        if (created)
+            values = new ArrayList<String>();
+        int pendingEmpty = 0;
+        int segmentStart = start;
+        while (true) {
+            int segmentEnd = (pos == -1) ? end : pos;
+            if (segmentEnd == segmentStart) {
+                pendingEmpty++;
+            } else {
+                for (; pendingEmpty > 0; pendingEmpty--)
+                    add(values, "", name);
+                String value = InternPool.intern(internPool, decode(segmentStart, segmentEnd));
+                logger.trace("Adding {}={}", name, value);
+                add(values, value, name);
+            }
+            if (pos == -1)
+                break;
+            segmentStart = pos + delimiterBytes.length;
+            pos = indexOf(buffer, delimiterBytes, segmentStart, end);
+        }
+        if (created && !values.isEmpty())
+            target.put(name, values);
+    }
+
+    private void add(List<String> values, String value, String name) {
+        values.add(value);
+        if (limits != null)
+            limits.checkValues(name, values.size());
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (length == 0)
+            return "";
+        if (length > scratch.length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        ((Buffer) view).limit(end);
+        ((Buffer) view).position(start);
+        view.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (buffer.get(i) == b)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Equivalent of {@link String#trim()}: every byte up to and including space is whitespace. Such bytes are always single byte characters in UTF-8.
+     */
+    private static int trimStart(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xff) <= ' ')
+            start++;
+        return start;
+    }
+
+    private static int trimEnd(ByteBuffer buffer, int start, int end) {
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ')
+            end--;
+        return end;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] bytes, int start, int end) {
+        int last = end - bytes.length;
+        outer: for (int i = start; i <= last; i++) {
+            for (int j = 0; j < bytes.length; j++)
+                if (buffer.get(i + j) != bytes[j])
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bytes of a literal delimiter if it is all ASCII, otherwise null
+     */
+    private static byte[] asciiBytes(String literal) {
+        if (literal == null)
+            return null;
+        byte[] bytes = new byte[literal.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char ch = literal.charAt(i);
+            if (ch >= 0x80)
+                return null;
+            bytes[i] = (byte) ch;
+        }
+        return bytes;
+    }
+}
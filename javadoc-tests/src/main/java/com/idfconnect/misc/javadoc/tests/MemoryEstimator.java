@@ -0,0 +1,128 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rough heap size estimates for the different representations of multi-valued properties. The estimates assume a 64-bit JVM with compressed references
+ * (12 byte object headers, 4 byte references, 8 byte alignment) and compact Strings.
+ *
+ * @since 3.1.4
+ */
+final class MemoryEstimator {
+    static final int  OBJECT_HEADER = 12;
+    static final int  ARRAY_HEADER  = 16;
+    static final int  REFERENCE     = 4;
+    static final int  HASHMAP       = 48;
+    static final int  HASHMAP_NODE  = 32;
+    static final int  ARRAYLIST     = 24;
+    static final int  STRING        = 24;
+
+    private MemoryEstimator() {
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    static long referenceArray(long length) {
+        return align(ARRAY_HEADER + REFERENCE * length);
+    }
+
+    static long byteArray(long length) {
+        return align(ARRAY_HEADER + length);
+    }
+
+    static long intArray(long length) {
+        return align(ARRAY_HEADER + 4L * length);
+    }
+
+    static long longArray(long length) {
+        return align(ARRAY_HEADER + 8L * length);
+    }
+
+    /**
+     * Estimates a String, including its backing array
+     */
+    static long string(String s) {
+        if (s == null)
+            return 0;
+        int bytesPerChar = 1;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xff) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING + align(ARRAY_HEADER + (long) bytesPerChar * s.length());
+    }
+
+    /**
+     * Estimates the capacity of an ArrayList that was filled with add(), which starts at 10 and grows by half
+     */
+    static long arrayListCapacity(int size) {
+        if (size == 0)
+            return 0;
+        long capacity = 10;
+        while (capacity < size)
+            capacity += capacity >> 1;
+        return capacity;
+    }
+
+    /**
+     * Estimates the capacity of the table of a HashMap that was filled with put(), which starts at 16 and doubles beyond a load factor of 0.75
+     */
+    static long hashMapCapacity(int size) {
+        long capacity = 16;
+        while (size > capacity * 3 / 4)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Estimates the structure of a HashMap of ArrayLists: the map, its table and nodes, and the lists and their arrays. Keys and values are not included
+     */
+    static long hashMapStructure(Map<String, List<String>> map) {
+        long size = HASHMAP + referenceArray(hashMapCapacity(map.size())) + (long) map.size() * HASHMAP_NODE;
+        for (List<String> values : map.values())
+            if (values != null)
+                size += ARRAYLIST + referenceArray(arrayListCapacity(values.size()));
+        return size;
+    }
+
+    /**
+     * Estimates a new key of a HashMap of ArrayLists: the node, an empty list and the key itself
+     */
+    static long entry(String key) {
+        return HASHMAP_NODE + ARRAYLIST + string(key);
+    }
+
+    /**
+     * Estimates values added to a list: the references and Strings, assuming one byte per character
+     */
+    static long values(int count, long chars) {
+        return count * (long) (REFERENCE + STRING + ARRAY_HEADER) + chars;
+    }
+
+    /**
+     * Estimates the least heap needed to load a properties file of the given size: its keys and values take at least one byte per character once loaded,
+     * and they are assumed to make up most of the file
+     */
+    static long fileLoad(long fileSize) {
+        return fileSize;
+    }
+
+    /**
+     * Estimates the keys and values themselves. Strings shared between entries are counted once per reference
+     */
+    static long strings(Map<String, List<String>> map) {
+        long size = 0;
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            size += string(entry.getKey());
+            if (entry.getValue() != null)
+                for (String value : entry.getValue())
+                    size += string(value);
+        }
+        return size;
+    }
+}
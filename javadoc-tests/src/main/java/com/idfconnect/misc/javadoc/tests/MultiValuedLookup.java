@@ -0,0 +1,250 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Read access to multi-valued properties, shared by {@link TriggerOutOfMemory} and its read-only representations. The typed getters are all expressed in
+ * terms of {@link #getFirstValue(String)}, so an implementation only needs to make that lookup cheap; a null first value is treated as absent.
+ *
+ * @since 3.1.4
+ */
+public interface MultiValuedLookup {
+    /**
+     * Returns the values for the key
+     *
+     * @param key
+     *            the key
+     * @return the values, or null if the key is not present
+     */
+    List<String> get(Object key);
+
+    /**
+     * Method getFirstValue.
+     *
+     * @param key
+     *            String
+     * @return String
+     */
+    default String getFirstValue(String key) {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            return null;
+        return values.get(0);
+    }
+
+    /**
+     * Method getFirstValue.
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a {@link java.lang.String} object.
+     * @return String
+     */
+    default String getFirstValue(String key, String defaultValue) {
+        String value = getFirstValue(key);
+        return (value != null) ? value : defaultValue;
+    }
+
+    /**
+     * Method getFirstValueAsInt.
+     *
+     * @param key
+     *            String
+     * @return int
+     * @throws java.lang.NumberFormatException
+     *             if the value is not an integer
+     */
+    default int getFirstValueAsInt(String key) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if the stored value is null <em>OR</em> an empty string
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a int.
+     * @return int
+     * @throws java.lang.NumberFormatException
+     *             if the value is not an integer
+     */
+    default int getFirstValueAsInt(String key, int defaultValue) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            return defaultValue;
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Method getFirstValueAsLong.
+     *
+     * @param key
+     *            String
+     * @return long
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a long
+     */
+    default long getFirstValueAsLong(String key) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return Long.parseLong(value);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a long.
+     * @return long
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a long
+     */
+    default long getFirstValueAsLong(String key, long defaultValue) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            return defaultValue;
+        return Long.parseLong(value);
+    }
+
+    /**
+     * Method getFirstValueAsDouble.
+     *
+     * @param key
+     *            String
+     * @return double
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a double
+     */
+    default double getFirstValueAsDouble(String key) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a double.
+     * @return double
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a double
+     */
+    default double getFirstValueAsDouble(String key, double defaultValue) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            return defaultValue;
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * Method getFirstValueAsDuration. The value is either an ISO-8601 duration such as PT30S, or a number of milliseconds
+     *
+     * @param key
+     *            String
+     * @return a {@link java.time.Duration} object.
+     * @throws java.lang.NumberFormatException
+     *             if there is no value
+     * @throws java.time.format.DateTimeParseException
+     *             if the value is not a duration
+     */
+    default Duration getFirstValueAsDuration(String key) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return Durations.parse(value);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a {@link java.time.Duration} object.
+     * @return a {@link java.time.Duration} object.
+     */
+    default Duration getFirstValueAsDuration(String key, Duration defaultValue) {
+        String value = getFirstValue(key);
+        if (value == null)
+            return defaultValue;
+        return Durations.parse(value);
+    }
+
+    /**
+     * Method getFirstValueAsEnum. The value must match the name of a constant exactly
+     *
+     * @param key
+     *            String
+     * @param type
+     *            the enum type
+     * @return the enum constant
+     * @throws java.lang.NumberFormatException
+     *             if there is no value
+     * @throws java.lang.IllegalArgumentException
+     *             if the value is not a constant of the enum type
+     */
+    default <E extends Enum<E>> E getFirstValueAsEnum(String key, Class<E> type) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return Enum.valueOf(type, value);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            the default enum constant, which also determines the enum type
+     * @return the enum constant
+     */
+    default <E extends Enum<E>> E getFirstValueAsEnum(String key, E defaultValue) {
+        String value = getFirstValue(key);
+        if (value == null)
+            return defaultValue;
+        return Enum.valueOf(defaultValue.getDeclaringClass(), value);
+    }
+
+    /**
+     * Method getFirstValueAsBoolean.
+     *
+     * @param key
+     *            String
+     * @return boolean
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a boolean
+     */
+    default boolean getFirstValueAsBoolean(String key) throws NumberFormatException {
+        String value = getFirstValue(key);
+        if (value == null)
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return Boolean.valueOf(value);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if the stored value is null <em>OR</em> an empty string
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a bool
+     * @return bool
+     */
+    default boolean getFirstValueAsBoolean(String key, boolean defaultValue) {
+        return BooleanValues.asBoolean(getFirstValue(key), defaultValue);
+    }
+}
@@ -0,0 +1,513 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A mutable map of multi-valued properties that keeps only its differences from a shared, read-only base, created with
+ * {@link ImmutableTriggerOutOfMemory#overlay()} or {@link TriggerOutOfMemory.Builder#buildOverlay(String, ImmutableTriggerOutOfMemory)}.
+ * <p>
+ * The entries of the base are never copied. Keys that are put or removed are recorded in a small delta map on top of the base, so any number of maps can
+ * be derived from one large base, each taking heap in proportion to its own overrides only. The lists returned for entries of the base are copy-on-write:
+ * they read the shared values, and the first write copies them into the delta. {@link #clone()} takes constant time: the clone shares the delta and its
+ * lists too, and whichever of the two is changed first copies the delta map, and then each list on its first write. The lists returned by
+ * {@link #get(Object)} and the iterators check this on every write, so a list fetched before a clone never changes the clone. A list passed to
+ * {@link #put(String, List)} remains the caller's, and writing it directly changes every clone taken since.
+ * </p>
+ * <p>
+ * Null keys and values are not supported. An overlay is not thread-safe, and as a clone changes the state of the original, neither is cloning it; a
+ * base may be shared by any number of threads.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public class OverlayTriggerOutOfMemory extends AbstractMap<String, List<String>> implements MultiValuedLookup, Cloneable {
+    private static final ImmutableTriggerOutOfMemory EMPTY   = ImmutableTriggerOutOfMemory.copyOf(Collections.<String, List<String>> emptyMap());
+    /** Marks a key that was removed; compared by identity, so no list that can be put is ever mistaken for it */
+    private static final List<String>                REMOVED = Collections.unmodifiableList(new ArrayList<String>(0));
+
+    private ImmutableTriggerOutOfMemory              base;
+    /** The keys that were put or removed since the overlay was created; null until the first change */
+    private HashMap<String, List<String>>            delta;
+    /** True if the delta is shared with a clone, and must be copied before it is changed */
+    private boolean                                  shared;
+    /** The lists of the delta that no clone shares, which are written in place; null if there are none */
+    private Set<List<String>>                        owned;
+    private int                                      size;
+    private Set<Map.Entry<String, List<String>>>     entrySet;
+
+    OverlayTriggerOutOfMemory(ImmutableTriggerOutOfMemory base) {
+        this.base = base;
+        this.size = base.size();
+    }
+
+    /**
+     * Creates an overlay holding the given entries on top of the base
+     *
+     * @param base
+     * @param entries
+     *            the entries that take precedence over the base, which are taken over without copying
+     * @param hidden
+     *            keys of the base to remove, unless they are in the entries
+     */
+    OverlayTriggerOutOfMemory(ImmutableTriggerOutOfMemory base, Map<String, List<String>> entries, Set<String> hidden) {
+        this(base);
+        if (entries.isEmpty() && hidden.isEmpty())
+            return;
+        delta = new HashMap<String, List<String>>(Math.max(16, (entries.size() + hidden.size()) * 4 / 3 + 1));
+        entries.forEach(this::put);
+        for (String key : hidden)
+            if (!entries.containsKey(key))
+                remove(key);
+    }
+
+    /**
+     * Returns the shared base of this overlay
+     *
+     * @return
+     */
+    public ImmutableTriggerOutOfMemory base() {
+        return base;
+    }
+
+    /**
+     * Returns the number of keys that were put or removed on top of the base, which is what the heap taken by this overlay is proportional to
+     *
+     * @return
+     */
+    public int overrideCount() {
+        return (delta == null) ? 0 : delta.size();
+    }
+
+    /**
+     * Returns the delta, created or copied as needed so that it may be changed. A delta shared with a clone is copied, but not its lists, which stay
+     * shared until they are written through {@link #own(Values)}
+     */
+    private HashMap<String, List<String>> writableDelta() {
+        if (delta == null) {
+            delta = new HashMap<String, List<String>>();
+        } else if (shared) {
+            delta = new HashMap<String, List<String>>(delta);
+            shared = false;
+        }
+        return delta;
+    }
+
+    private boolean isOwned(List<String> values) {
+        return owned != null && owned.contains(values);
+    }
+
+    private void markOwned(List<String> values) {
+        if (owned == null)
+            owned = Collections.newSetFromMap(new IdentityHashMap<List<String>, Boolean>());
+        owned.add(values);
+    }
+
+    private void disown(List<String> values) {
+        if (owned != null && values != null)
+            owned.remove(values);
+    }
+
+    /**
+     * Makes the values of the list its own before it is written: values of the base, or a list of the delta that a clone may share, are copied. The copy
+     * replaces the values of the entry the list was returned for, unless the entry has been removed or replaced since, in which case the list is left
+     * out of the overlay like the list of a removed {@link HashMap} entry. A list of a base entry whose values were already copied through another list
+     * writes to that copy, as two lists returned by a {@link HashMap} for the same entry would
+     */
+    private void own(Values list) {
+        if (!list.fromBase && isOwned(list.values))
+            return;
+        HashMap<String, List<String>> writable = writableDelta();
+        List<String> current = writable.get(list.key);
+        boolean attached;
+        if (list.fromBase) {
+            list.fromBase = false;
+            if (current instanceof BaseCopy) {
+                list.values = current;
+                if (isOwned(current))
+                    return;
+                attached = true;
+            } else {
+                attached = (current == null && base.containsKey(list.key));
+            }
+        } else {
+            attached = (current == list.values);
+        }
+        List<String> copy = (list.values instanceof BaseCopy || attached && current == null) ? new BaseCopy(list.values)
+                : new ArrayList<String>(list.values);
+        if (attached)
+            writable.put(list.key, copy);
+        markOwned(copy);
+        list.values = copy;
+    }
+
+    /**
+     * Returns the values of the key. The list of an entry of the base is copied into this overlay on its first write
+     */
+    @Override
+    public List<String> get(Object key) {
+        if (delta != null) {
+            List<String> values = delta.get(key);
+            if (values == REMOVED)
+                return null;
+            if (values != null)
+                return new Values(this, (String) key, values, false);
+        }
+        List<String> values = base.get(key);
+        return (values != null) ? new Values(this, (String) key, values, true) : null;
+    }
+
+    /**
+     * Method getFirstValue. Allocates nothing
+     *
+     * @param key
+     *            String
+     * @return String
+     */
+    @Override
+    public String getFirstValue(String key) {
+        if (delta != null) {
+            List<String> values = delta.get(key);
+            if (values != null)
+                return (values == REMOVED || values.isEmpty()) ? null : values.get(0);
+        }
+        return base.getFirstValue(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (delta != null) {
+            List<String> values = delta.get(key);
+            if (values != null)
+                return values != REMOVED;
+        }
+        return base.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<String> put(String key, List<String> value) {
+        if (key == null || value == null)
+            throw new NullPointerException("Null keys and values are not supported");
+        List<String> previous = writableDelta().put(key, value);
+        disown(previous);
+        markOwned(value);
+        if (previous == REMOVED) {
+            size++;
+            return null;
+        }
+        if (previous != null)
+            return previous;
+        previous = base.get(key);
+        if (previous == null)
+            size++;
+        return previous;
+    }
+
+    @Override
+    public List<String> remove(Object key) {
+        if (!containsKey(key))
+            return null;
+        HashMap<String, List<String>> writable = writableDelta();
+        List<String> previous = writable.get(key);
+        if (previous == null)
+            previous = base.get(key);
+        else
+            disown(previous);
+        // a key that is only in the delta needs no marker, but one left by an iterator is harmless
+        if (base.containsKey(key))
+            writable.put((String) key, REMOVED);
+        else
+            writable.remove(key);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Adds a value to the values of the key
+     *
+     * @param key
+     * @param value
+     * @return
+     */
+    public boolean add(String key, String value) {
+        List<String> existingValues = get(key);
+        if (existingValues == null) {
+            existingValues = new ArrayList<String>();
+            put(key, existingValues);
+        }
+        return existingValues.add(value);
+    }
+
+    /**
+     * Removes all entries. The base is let go rather than masked, so this takes constant time
+     */
+    @Override
+    public void clear() {
+        base = EMPTY;
+        delta = null;
+        shared = false;
+        owned = null;
+        size = 0;
+    }
+
+    /**
+     * Returns a copy of this overlay in constant time. The two share the base and the current delta until either of them is changed, and each list of the
+     * delta until it is written
+     */
+    @Override
+    public OverlayTriggerOutOfMemory clone() {
+        try {
+            if (delta != null)
+                shared = true;
+            owned = null;
+            OverlayTriggerOutOfMemory clone = (OverlayTriggerOutOfMemory) super.clone();
+            clone.entrySet = null;
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    /**
+     * Returns a compact, read-only snapshot of the current entries, merging the delta into a copy of the base. Later changes to this overlay are not
+     * reflected in the snapshot
+     *
+     * @return
+     */
+    public ImmutableTriggerOutOfMemory freeze() {
+        return (delta == null) ? base : ImmutableTriggerOutOfMemory.copyOf(this);
+    }
+
+    /**
+     * Returns the estimated heap size of this overlay: the delta map and its lists. The shared base and the key and value Strings are not included
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimatedSize() {
+        long size = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 6 * MemoryEstimator.REFERENCE + 8);
+        if (delta != null) {
+            size += MemoryEstimator.HASHMAP + MemoryEstimator.referenceArray(MemoryEstimator.hashMapCapacity(delta.size()))
+                    + (long) delta.size() * MemoryEstimator.HASHMAP_NODE;
+            for (List<String> values : delta.values())
+                if (values != REMOVED)
+                    size += MemoryEstimator.ARRAYLIST + MemoryEstimator.referenceArray(MemoryEstimator.arrayListCapacity(values.size()));
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<String>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Map.Entry<String, List<String>>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    OverlayTriggerOutOfMemory.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Iterates over the delta first and then over the keys of the base that are not in the delta. Keys put while iterating over the base only go into
+     * the delta, which has already been iterated over, so no key is returned twice
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, List<String>>> {
+        private Iterator<Map.Entry<String, List<String>>> deltaEntries;
+        private Iterator<Map.Entry<String, List<String>>> baseEntries;
+        private Map.Entry<String, List<String>>           next;
+        private Map.Entry<String, List<String>>           nextDeltaEntry;
+        private String                                    lastKey;
+        private Map.Entry<String, List<String>>           lastDeltaEntry;
+        private final HashMap<String, List<String>>       iterated = delta;
+
+        EntryIterator() {
+            if (delta != null)
+                deltaEntries = delta.entrySet().iterator();
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            nextDeltaEntry = null;
+            while (deltaEntries != null && deltaEntries.hasNext()) {
+                Map.Entry<String, List<String>> entry = deltaEntries.next();
+                if (entry.getValue() != REMOVED) {
+                    nextDeltaEntry = entry;
+                    next = new Entry(entry.getKey(), new Values(OverlayTriggerOutOfMemory.this, entry.getKey(), entry.getValue(), false));
+                    return;
+                }
+            }
+            deltaEntries = null;
+            if (baseEntries == null)
+                baseEntries = base.entrySet().iterator();
+            while (baseEntries.hasNext()) {
+                Map.Entry<String, List<String>> entry = baseEntries.next();
+                if (delta == null || !delta.containsKey(entry.getKey())) {
+                    next = new Entry(entry.getKey(), new Values(OverlayTriggerOutOfMemory.this, entry.getKey(), entry.getValue(), true));
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, List<String>> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            Map.Entry<String, List<String>> entry = next;
+            lastKey = entry.getKey();
+            lastDeltaEntry = nextDeltaEntry;
+            advance();
+            return entry;
+        }
+
+        /**
+         * Removes the last entry. Within the delta being iterated, the entry is marked as removed rather than taken out, which would break the iteration;
+         * if the delta has been copied for a clone since, the entry is removed from the copy
+         */
+        @Override
+        public void remove() {
+            if (lastKey == null)
+                throw new IllegalStateException();
+            if (lastDeltaEntry != null && delta == iterated && !shared) {
+                lastDeltaEntry.setValue(REMOVED);
+                size--;
+            } else {
+                OverlayTriggerOutOfMemory.this.remove(lastKey);
+            }
+            lastKey = null;
+            lastDeltaEntry = null;
+        }
+    }
+
+    /**
+     * An entry returned by the iterator, whose value is set through the overlay
+     */
+    private final class Entry extends AbstractMap.SimpleEntry<String, List<String>> {
+        private static final long serialVersionUID = -5171580431402342264L;
+
+        Entry(String key, List<String> value) {
+            super(key, value);
+        }
+
+        @Override
+        public List<String> setValue(List<String> value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * The list a base entry was copied into on its first write. Other lists returned for the same base entry write to it as well
+     */
+    private static final class BaseCopy extends ArrayList<String> {
+        private static final long serialVersionUID = -2337457287094926522L;
+
+        BaseCopy(Collection<String> values) {
+            super(values);
+        }
+    }
+
+    /**
+     * A list returned for an entry, which reads its current values and calls {@link OverlayTriggerOutOfMemory#own(Values)} before every write, so that it
+     * never writes values shared with the base or with a clone. A list of this class is serialized as a plain copy of its values
+     */
+    private static final class Values extends AbstractList<String> implements RandomAccess, java.io.Serializable {
+        private static final long               serialVersionUID = 4402935561385627095L;
+
+        private final OverlayTriggerOutOfMemory owner;
+        private final String                    key;
+        private List<String>                    values;
+        /** True while the values are those of the base entry */
+        private boolean                         fromBase;
+
+        Values(OverlayTriggerOutOfMemory owner, String key, List<String> values, boolean fromBase) {
+            this.owner = owner;
+            this.key = key;
+            this.values = values;
+            this.fromBase = fromBase;
+        }
+
+        private List<String> writable() {
+            owner.own(this);
+            modCount++;
+            return values;
+        }
+
+        @Override
+        public String get(int index) {
+            return values.get(index);
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public String set(int index, String element) {
+            return writable().set(index, element);
+        }
+
+        @Override
+        public boolean add(String element) {
+            return writable().add(element);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends String> c) {
+            return writable().addAll(c);
+        }
+
+        @Override
+        public void add(int index, String element) {
+            writable().add(index, element);
+        }
+
+        @Override
+        public String remove(int index) {
+            return writable().remove(index);
+        }
+
+        @Override
+        public void clear() {
+            writable().clear();
+        }
+
+        private Object writeReplace() {
+            return new ArrayList<String>(values);
+        }
+    }
+}
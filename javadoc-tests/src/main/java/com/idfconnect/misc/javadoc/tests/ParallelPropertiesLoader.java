@@ -0,0 +1,247 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Parses raw properties on several threads. The input is split at line boundaries into chunks that are parsed into partial maps, which are then merged in
+ * input order: values of a key repeated across chunks are appended in the same order as the sequential loaders would have added them.
+ *
+ * @since 3.1.4
+ */
+final class ParallelPropertiesLoader {
+    private static final int MAX_WINDOW        = Integer.MAX_VALUE;
+    private static final int MIN_CHUNK_SIZE    = 256 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int BATCH_LINES       = 16 * 1024;
+
+    private ParallelPropertiesLoader() {
+    }
+
+    /**
+     * Memory-maps the file and parses it in chunks on the given number of threads
+     *
+     * @param path
+     * @param builder
+     * @param target
+     * @param metrics
+     *            the statistics to collect, or null. Each chunk collects its own, which are added up as the chunks are merged
+     * @param limits
+     *            the limits to enforce, or null. Each chunk checks keys and values on its own and draws on the retained bytes of the whole load, and the
+     *            merged results are checked as a whole
+     * @throws CollectionProviderException
+     */
+    static void loadFile(Path path, TriggerOutOfMemory.Builder builder, TriggerOutOfMemory target, LoadMetrics metrics, LoadLimits limits)
+            throws CollectionProviderException {
+        int parallelism = builder.parallelism;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long remaining = size - position;
+                int length = (int) Math.min(remaining, MAX_WINDOW);
+                long mark = (metrics != null) ? System.nanoTime() : 0;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean eof = (length == remaining);
+                if (metrics != null)
+                    metrics.readNanos += System.nanoTime() - mark;
+                int end = eof ? length : lastLineEnd(buffer, length);
+                if (end == 0)
+                    throw new CollectionProviderException("Line at offset " + position + " exceeds the maximum mappable size");
+
+                int count = Math.max(1, Math.min(parallelism * CHUNKS_PER_THREAD, end / MIN_CHUNK_SIZE));
+                List<ForkJoinTask<TriggerOutOfMemory>> tasks = new ArrayList<ForkJoinTask<TriggerOutOfMemory>>(count);
+                List<LoadMetrics> chunks = new ArrayList<LoadMetrics>(count);
+                int chunkStart = 0;
+                for (int i = 1; i <= count; i++) {
+                    int chunkEnd = (i == count) ? end : nextLineStart(buffer, Math.max(chunkStart, (int) ((long) end * i / count)), end);
+                    if (chunkEnd == chunkStart)
+                        continue;
+                    int from = chunkStart;
+                    LoadMetrics chunkMetrics = (metrics != null) ? new LoadMetrics() : null;
+                    LoadLimits part = (limits != null) ? limits.part() : null;
+                    chunks.add(chunkMetrics);
+                    tasks.add(pool.submit(() -> {
+                        // each chunk ends on a line boundary, so it can be parsed as if it were the end of input
+                        long start = (chunkMetrics != null) ? System.nanoTime() : 0;
+                        TriggerOutOfMemory partial = new TriggerOutOfMemory();
+                        new MappedPropertiesLoader(builder, chunkMetrics, part).parseLines(buffer, from, chunkEnd, true, partial);
+                        if (chunkMetrics != null)
+                            chunkMetrics.parseNanos = System.nanoTime() - start;
+                        return partial;
+                    }));
+                    chunkStart = chunkEnd;
+                }
+                for (int i = 0; i < tasks.size(); i++) {
+                    merge(tasks.get(i).join(), target, metrics, limits);
+                    if (metrics != null)
+                        metrics.add(chunks.get(i));
+                    if (limits != null)
+                        limits.merged(target);
+                }
+                if (metrics != null)
+                    metrics.bytesRead += end;
+                position += end;
+            }
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads the lines on the calling thread and parses them in batches on the given number of threads. The number of batches in flight is bounded so that
+     * the reader does not run ahead of the parsers.
+     *
+     * @param reader
+     * @param builder
+     * @param target
+     * @param metrics
+     *            the statistics to collect, or null. Lines are read and timed on the calling thread, and each batch collects its own parse statistics
+     * @param limits
+     *            the limits to enforce, or null. Each batch checks keys and values on its own and draws on the retained bytes of the whole load, and the
+     *            merged results are checked as a whole
+     * @throws CollectionProviderException
+     */
+    static void loadReader(BufferedReader reader, TriggerOutOfMemory.Builder builder, TriggerOutOfMemory target, LoadMetrics metrics, LoadLimits limits)
+            throws CollectionProviderException {
+        int parallelism = builder.parallelism;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Batches batches = new Batches(metrics, limits);
+        try {
+            List<String> batch = new ArrayList<String>(BATCH_LINES);
+            String line = null;
+            long mark = (metrics != null) ? System.nanoTime() : 0;
+            while ((line = reader.readLine()) != null) {
+                if (metrics != null) {
+                    long read = System.nanoTime();
+                    metrics.readNanos += read - mark;
+                    mark = read;
+                }
+                batch.add(line);
+                if (batch.size() == BATCH_LINES) {
+                    batches.submit(pool, batch, builder);
+                    batch = new ArrayList<String>(BATCH_LINES);
+                    if (batches.size() > parallelism * 2)
+                        batches.mergeNext(target);
+                    if (metrics != null)
+                        mark = System.nanoTime();
+                }
+            }
+            if (!batch.isEmpty())
+                batches.submit(pool, batch, builder);
+            while (batches.size() > 0)
+                batches.mergeNext(target);
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The batches in flight, in input order, with the statistics and limits each is parsed with
+     */
+    private static final class Batches {
+        private final LoadMetrics                             metrics;
+        private final LoadLimits                              limits;
+        private final Deque<ForkJoinTask<TriggerOutOfMemory>> inflight     = new ArrayDeque<ForkJoinTask<TriggerOutOfMemory>>();
+        private final Deque<LoadMetrics>                      batchMetrics = new ArrayDeque<LoadMetrics>();
+
+        Batches(LoadMetrics metrics, LoadLimits limits) {
+            this.metrics = metrics;
+            this.limits = limits;
+        }
+
+        int size() {
+            return inflight.size();
+        }
+
+        void submit(ForkJoinPool pool, List<String> batch, TriggerOutOfMemory.Builder builder) {
+            LoadMetrics partMetrics = (metrics != null) ? new LoadMetrics() : null;
+            LoadLimits partLimits = (limits != null) ? limits.part() : null;
+            if (partMetrics != null)
+                batchMetrics.add(partMetrics);
+            inflight.add(pool.submit(() -> {
+                long start = (partMetrics != null) ? System.nanoTime() : 0;
+                TriggerOutOfMemory partial = new TriggerOutOfMemory();
+                for (String line : batch)
+                    TriggerOutOfMemory.parseLine(line, builder, partial, partMetrics, partLimits);
+                if (partMetrics != null)
+                    partMetrics.parseNanos = System.nanoTime() - start;
+                return partial;
+            }));
+        }
+
+        /**
+         * Merges the oldest batch in flight into the target
+         */
+        void mergeNext(TriggerOutOfMemory target) {
+            merge(inflight.poll().join(), target, metrics, limits);
+            if (metrics != null)
+                metrics.add(batchMetrics.poll());
+            if (limits != null)
+                limits.merged(target);
+        }
+    }
+
+    /**
+     * Merges a partial map into the target. The partial maps must be merged in input order
+     */
+    private static void merge(TriggerOutOfMemory partial, TriggerOutOfMemory target, LoadMetrics metrics, LoadLimits limits) {
+        if (metrics != null)
+            metrics.peak(target.size() + partial.size());
+        partial.forEach((k, v) -> {
+            List<String> existing = target.get(k);
+            if (existing == null) {
+                target.put(k, v);
+                return;
+            }
+            if (limits != null && limits.limitsValuesPerKey())
+                limits.checkValues(k, LoadLimits.valuesOf(k, target) + v.size());
+            if (existing instanceof LazyValues)
+                ((LazyValues) existing).appendAll(v);
+            else
+                existing.addAll(v);
+        });
+    }
+
+    /**
+     * Returns the position after the last line terminator in the buffer, or 0 if there is none. A '\r' that is the last byte may be the first half of a
+     * "\r\n" pair; the '\n' then starts the next window as a blank line, which is ignored.
+     */
+    private static int lastLineEnd(ByteBuffer buffer, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r')
+                return i + 1;
+        }
+        return 0;
+    }
+
+    private static int nextLineStart(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n')
+                return i + 1;
+            if (b == '\r')
+                return (i + 1 < end && buffer.get(i + 1) == '\n') ? i + 2 : i + 1;
+        }
+        return end;
+    }
+}
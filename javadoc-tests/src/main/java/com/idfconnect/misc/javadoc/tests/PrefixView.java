@@ -0,0 +1,138 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A live, read-only view of the entries of a {@link TriggerOutOfMemory} whose keys start with a prefix, with the prefix stripped from the keys. Created with
+ * {@link TriggerOutOfMemory#subView(String)}.
+ * <p>
+ * Nothing is copied: lookups go straight to the underlying map, and iteration walks the range of the map's sorted key index that starts with the prefix, so
+ * it takes O(log n + matches). Changes to the underlying map are visible through the view. Value lists are returned as unmodifiable views.
+ * </p>
+ * <p>
+ * The underlying map is hashed by the full keys, so each lookup of a key through the view creates the prefixed key as a new String, which is as costly as
+ * concatenating it in the caller. A view is meant for iterating a group of keys and passing it around; keys that are looked up on a hot path are better
+ * read from the underlying map with their full names, or from a {@link #copy()} taken once.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public final class PrefixView extends AbstractMap<String, List<String>> implements MultiValuedLookup {
+    private final TriggerOutOfMemory             parent;
+    private final String                         prefix;
+    private Set<Map.Entry<String, List<String>>> entrySet;
+
+    PrefixView(TriggerOutOfMemory parent, String prefix) {
+        this.parent = parent;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the prefix stripped from the keys of the underlying map
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public List<String> get(Object key) {
+        if (!(key instanceof String))
+            return null;
+        List<String> values = parent.get(prefix + key);
+        return (values == null) ? null : Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof String) && parent.containsKey(prefix + key);
+    }
+
+    /**
+     * Returns the first value of the key without creating a view of its values
+     */
+    @Override
+    public String getFirstValue(String key) {
+        return parent.getFirstValue(prefix + key);
+    }
+
+    @Override
+    public int size() {
+        int[] count = new int[1];
+        parent.forEachWithPrefix(prefix, (k, v) -> count[0]++);
+        return count[0];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !entrySet().iterator().hasNext();
+    }
+
+    /**
+     * Returns a mutable, prefix-stripped copy of this view. The value lists are copied as well, so changes to the copy and to the underlying map never
+     * affect each other
+     *
+     * @return
+     */
+    public TriggerOutOfMemory copy() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        parent.forEachWithPrefix(prefix, (key, values) -> props.put(key, (values == null) ? null : new ArrayList<String>(values)));
+        return props;
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<String>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Map.Entry<String, List<String>>> iterator() {
+                    return new Iterator<Map.Entry<String, List<String>>>() {
+                        private final Iterator<String>          keys = parent.keyIndex().tailSet(prefix).iterator();
+                        private Map.Entry<String, List<String>> next = advance();
+
+                        private Map.Entry<String, List<String>> advance() {
+                            while (keys.hasNext()) {
+                                String key = keys.next();
+                                if (!key.startsWith(prefix))
+                                    return null;
+                                // the index may still hold keys removed through the key set or an iterator
+                                List<String> values = parent.get(key);
+                                if (values != null || parent.containsKey(key))
+                                    return new AbstractMap.SimpleImmutableEntry<String, List<String>>(key.substring(prefix.length()),
+                                            (values == null) ? null : Collections.unmodifiableList(values));
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public Map.Entry<String, List<String>> next() {
+                            if (next == null)
+                                throw new NoSuchElementException();
+                            Map.Entry<String, List<String>> entry = next;
+                            next = advance();
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return PrefixView.this.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+}
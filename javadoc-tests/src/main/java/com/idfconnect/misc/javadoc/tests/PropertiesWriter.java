@@ -0,0 +1,347 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Writes multi-valued properties back out as text that the Reader based loaders read back into the same map, created with
+ * {@link TriggerOutOfMemory#writer()} or {@link TriggerOutOfMemory.Builder#writer()}.
+ * <p>
+ * Each key is written as {@code key=value} lines. Without a delimiter, every value of a key is written on a line of its own, which the loaders append to
+ * the key. With a delimiter, all values of a key are joined on one line. Values are enclosed in quotes if {@link #quotedValues()} is set. The text is
+ * streamed through a character buffer and, for byte outputs, a UTF-8 encoding buffer, which are reused by every write of this writer; only one line is
+ * held at a time, so outputs of any size can be written.
+ * </p>
+ * <p>
+ * Every entry is checked before it is written, and an entry that would not read back the same fails the write with a
+ * {@link CollectionProviderException}: for example a key holding '=' or a line break, a value holding the delimiter, or an empty list of values. The
+ * entries written before it remain in the output. The text is read back with a builder that has the same delimiter and quoting, and no prefix, defaults
+ * or system properties.
+ * </p>
+ * <p>
+ * A writer is not thread-safe.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public final class PropertiesWriter {
+    private static final int     BUFFER_SIZE = 64 * 1024;
+
+    private String               delimiter;
+    private boolean              useQuotedValues;
+    private boolean              sortKeys;
+    private final StringBuilder  line        = new StringBuilder();
+    private final CharBuffer     chars       = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharsetEncoder encoder     = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer           bytes;
+    private Writer               writer;
+    private OutputStream         stream;
+    private WritableByteChannel  channel;
+
+    PropertiesWriter() {
+    }
+
+    /**
+     * Sets the delimiter values are joined with. Only delimiters that the loaders match literally can be written: text without regular expression meta
+     * characters, or a single escaped character such as "\\|"
+     *
+     * @param delimiter
+     *            the delimiter, as given to {@link TriggerOutOfMemory.Builder#delimiter(String)}, or null to write each value on its own line
+     * @return
+     * @throws IllegalArgumentException
+     *             if the delimiter is a regular expression
+     */
+    public PropertiesWriter delimiter(String delimiter) {
+        if (delimiter == null) {
+            this.delimiter = null;
+            return this;
+        }
+        String literal = DelimiterSplitter.compile(delimiter).literal();
+        if (literal == null)
+            throw new IllegalArgumentException("Values cannot be joined with the regular expression " + delimiter);
+        this.delimiter = literal;
+        return this;
+    }
+
+    /**
+     * Set to enclose values in quotes
+     *
+     * @return
+     */
+    public PropertiesWriter quotedValues() {
+        this.useQuotedValues = true;
+        return this;
+    }
+
+    /**
+     * Set to write the keys in their natural order rather than in the order of the map
+     *
+     * @return
+     */
+    public PropertiesWriter sortKeys() {
+        this.sortKeys = true;
+        return this;
+    }
+
+    /**
+     * Writes the properties to the Writer, which is flushed but not closed
+     *
+     * @param props
+     * @param out
+     * @throws CollectionProviderException
+     *             if an entry cannot be written so that it reads back the same, or the Writer fails
+     */
+    public void write(Map<String, List<String>> props, Writer out) throws CollectionProviderException {
+        writer = out;
+        try {
+            writeEntries(props);
+            out.flush();
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } finally {
+            writer = null;
+        }
+    }
+
+    /**
+     * Writes the properties to the stream in UTF-8. The stream is flushed but not closed
+     *
+     * @param props
+     * @param out
+     * @throws CollectionProviderException
+     *             if an entry cannot be written so that it reads back the same, or the stream fails
+     */
+    public void write(Map<String, List<String>> props, OutputStream out) throws CollectionProviderException {
+        stream = out;
+        try {
+            writeEntries(props);
+            out.flush();
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } finally {
+            stream = null;
+        }
+    }
+
+    /**
+     * Writes the properties to the channel in UTF-8, such as a {@link FileChannel} at its current position. The channel is not closed
+     *
+     * @param props
+     * @param out
+     * @throws CollectionProviderException
+     *             if an entry cannot be written so that it reads back the same, or the channel fails
+     */
+    public void write(Map<String, List<String>> props, WritableByteChannel out) throws CollectionProviderException {
+        channel = out;
+        try {
+            writeEntries(props);
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Writes the properties to a file in UTF-8, replacing its contents
+     *
+     * @param props
+     * @param filePath
+     * @throws CollectionProviderException
+     *             if an entry cannot be written so that it reads back the same, or the file cannot be written
+     */
+    public void write(Map<String, List<String>> props, String filePath) throws CollectionProviderException {
+        if (filePath == null)
+            throw new CollectionProviderException("No file path specified");
+        try (FileChannel out = FileChannel.open(FileSystems.getDefault().getPath(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(props, out);
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        }
+    }
+
+    private void writeEntries(Map<String, List<String>> props) throws IOException, CollectionProviderException {
+        ((Buffer) chars).clear();
+        encoder.reset();
+        if (writer == null) {
+            if (bytes == null)
+                bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            ((Buffer) bytes).clear();
+        }
+        if (sortKeys) {
+            String[] keys = props.keySet().toArray(new String[props.size()]);
+            for (String key : keys)
+                if (key == null)
+                    throw new CollectionProviderException("A null key cannot be written");
+            Arrays.sort(keys);
+            for (String key : keys)
+                writeEntry(key, props.get(key));
+        } else {
+            for (Map.Entry<String, List<String>> entry : props.entrySet())
+                writeEntry(entry.getKey(), entry.getValue());
+        }
+        drain(true);
+    }
+
+    private void writeEntry(String key, List<String> values) throws IOException, CollectionProviderException {
+        String invalid = checkKey(key);
+        if (invalid == null && (values == null || values.isEmpty()))
+            invalid = "it has no values";
+        if (invalid == null && delimiter != null) {
+            invalid = appendLine(key, values);
+            if (invalid == null)
+                emit();
+        } else if (invalid == null) {
+            for (int i = 0; i < values.size() && invalid == null; i++) {
+                invalid = appendLine(key, values.subList(i, i + 1));
+                if (invalid == null)
+                    emit();
+            }
+        }
+        if (invalid != null)
+            throw new CollectionProviderException("Entry " + key + " cannot be written so that it reads back the same: " + invalid);
+    }
+
+    /**
+     * Returns why the key cannot be written, or null if it can
+     */
+    private static String checkKey(String key) {
+        if (key == null)
+            return "the key is null";
+        int length = key.length();
+        if (length > 0 && (key.charAt(0) <= ' ' || key.charAt(length - 1) <= ' '))
+            return "the key starts or ends with whitespace";
+        if (length > 0 && (key.charAt(0) == '#' || key.charAt(0) == '!'))
+            return "the key starts like a comment";
+        for (int i = 0; i < length; i++) {
+            char ch = key.charAt(i);
+            if (ch == '=' || ch == '\n' || ch == '\r')
+                return "the key holds '=' or a line break";
+        }
+        return null;
+    }
+
+    /**
+     * Fills the line buffer with the key and the values joined by the delimiter, as they would be split when read back
+     *
+     * @return why the values cannot be written, or null if they can
+     */
+    private String appendLine(String key, List<String> values) {
+        line.setLength(0);
+        line.append(key).append('=');
+        if (useQuotedValues)
+            line.append('"');
+        int start = line.length();
+        int count = values.size();
+        for (int i = 0; i < count; i++) {
+            String value = values.get(i);
+            if (value == null)
+                return "a value is null";
+            if (i > 0)
+                line.append(delimiter);
+            line.append(value);
+        }
+        int end = line.length();
+        if (delimiter != null) {
+            // the delimiter must only be found where it joins two values
+            int from = start;
+            for (int i = 0; i < count; i++) {
+                int pos = line.indexOf(delimiter, from);
+                int expected = from + values.get(i).length();
+                if (i < count - 1 ? pos != expected : pos != -1)
+                    return "a value holds the delimiter";
+                from = expected + delimiter.length();
+            }
+            // trailing empty values are dropped when a line is split
+            if (count > 1 && values.get(count - 1).isEmpty())
+                return "the last value is empty";
+        }
+        for (int i = start; i < end; i++) {
+            char ch = line.charAt(i);
+            if (ch == '\n' || ch == '\r')
+                return "a value holds a line break";
+            if (useQuotedValues && ch == '"')
+                return "a value holds a quote";
+        }
+        if (useQuotedValues) {
+            line.append('"');
+        } else {
+            // unquoted values are trimmed, and a line ending with '=' is ignored
+            if (end == start)
+                return "the value is empty";
+            if (line.charAt(start) <= ' ' || line.charAt(end - 1) <= ' ')
+                return "a value starts or ends with whitespace";
+        }
+        line.append('\n');
+        return null;
+    }
+
+    /**
+     * Copies the line buffer into the character buffer, draining it whenever it fills up
+     */
+    private void emit() throws IOException {
+        int length = line.length();
+        for (int offset = 0; offset < length;) {
+            int count = Math.min(chars.remaining(), length - offset);
+            line.getChars(offset, offset + count, chars.array(), chars.position());
+            ((Buffer) chars).position(chars.position() + count);
+            offset += count;
+            if (!chars.hasRemaining())
+                drain(false);
+        }
+    }
+
+    /**
+     * Writes out the character buffer, encoding it for byte outputs. A surrogate pair split across two fills is kept until the next one
+     */
+    private void drain(boolean endOfInput) throws IOException {
+        ((Buffer) chars).flip();
+        if (writer != null) {
+            writer.write(chars.array(), 0, chars.limit());
+            ((Buffer) chars).clear();
+            return;
+        }
+        CoderResult encoded;
+        do {
+            encoded = encoder.encode(chars, bytes, endOfInput);
+            if (encoded.isError())
+                encoded.throwException();
+            flushBytes();
+        } while (encoded.isOverflow());
+        if (endOfInput) {
+            do {
+                encoded = encoder.flush(bytes);
+                flushBytes();
+            } while (encoded.isOverflow());
+        }
+        chars.compact();
+    }
+
+    private void flushBytes() throws IOException {
+        ((Buffer) bytes).flip();
+        if (stream != null) {
+            stream.write(bytes.array(), 0, bytes.limit());
+        } else {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+        ((Buffer) bytes).clear();
+    }
+}
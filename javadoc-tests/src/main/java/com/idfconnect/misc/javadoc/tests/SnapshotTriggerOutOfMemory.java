@@ -0,0 +1,453 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * A read-only view of a binary snapshot file written by {@link TriggerOutOfMemory#writeSnapshot(String, String)}. The snapshot is memory-mapped and lookups
+ * are served straight from the mapped bytes, without building a hash map; each String is decoded on first access and then cached.
+ * <p>
+ * The file starts with a header holding the size and CRC-32 of the source properties file and the fingerprint of the builder configuration, followed by
+ * the sections below. All numbers are big-endian ints.
+ * </p>
+ * <ul>
+ * <li>string table: the byte offset of each distinct String, followed by their UTF-8 bytes at the end of the file</li>
+ * <li>key index: the String id and hash code of each key, and the offset of its values slice</li>
+ * <li>value slices: the String ids of all values, key after key; -1 stands for a null value</li>
+ * <li>hash table: an open-addressed table of key indexes plus one, with the same layout as {@link ImmutableTriggerOutOfMemory}</li>
+ * </ul>
+ * <p>
+ * A snapshot records the finished map, so it is only served to a builder whose configuration, defaults and System properties give the same fingerprint.
+ * The sections are checked when the snapshot is opened, with one pass over their ints and without decoding any String, so that a truncated or corrupt
+ * file is rejected then rather than failing or looping in later lookups.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public final class SnapshotTriggerOutOfMemory extends AbstractMap<String, List<String>> implements MultiValuedLookup {
+    private static final int                     MAGIC       = 0x544f4f4d;
+    private static final int                     VERSION     = 2;
+    private static final int                     HEADER_SIZE = 52;
+    private static final int                     NULL_ID     = -1;
+
+    private final ByteBuffer                     buffer;
+    private final long                           sourceSize;
+    private final long                           sourceChecksum;
+    private final long                           configFingerprint;
+    private final int                            keyCount;
+    private final int                            mask;
+    private final int                            stringOffsets;
+    private final int                            keyIds;
+    private final int                            keyHashes;
+    private final int                            valueOffsets;
+    private final int                            valueIds;
+    private final int                            table;
+    private final int                            stringData;
+    private final String[]                       strings;
+    private Set<Map.Entry<String, List<String>>> entrySet;
+
+    private SnapshotTriggerOutOfMemory(ByteBuffer buffer) throws CollectionProviderException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new CollectionProviderException("Not a properties snapshot");
+        if (buffer.getInt(4) != VERSION)
+            throw new CollectionProviderException("Unsupported snapshot version " + buffer.getInt(4));
+        this.buffer = buffer;
+        this.sourceSize = buffer.getLong(8);
+        this.sourceChecksum = buffer.getLong(16);
+        this.configFingerprint = buffer.getLong(24);
+        int stringCount = buffer.getInt(32);
+        this.keyCount = buffer.getInt(36);
+        int valueCount = buffer.getInt(40);
+        int capacity = buffer.getInt(44);
+        int stringDataLength = buffer.getInt(48);
+        if (stringCount < 0 || keyCount < 0 || valueCount < 0 || stringDataLength < 0 || Integer.bitCount(capacity) != 1 || capacity <= keyCount)
+            throw corrupt("invalid header");
+        long length = HEADER_SIZE + 4L * ((long) stringCount + 1 + 3L * keyCount + 1 + valueCount + capacity) + stringDataLength;
+        if (length != buffer.limit())
+            throw corrupt("expected " + length + " bytes, found " + buffer.limit());
+        this.mask = capacity - 1;
+        this.stringOffsets = HEADER_SIZE;
+        this.keyIds = stringOffsets + 4 * (stringCount + 1);
+        this.keyHashes = keyIds + 4 * keyCount;
+        this.valueOffsets = keyHashes + 4 * keyCount;
+        this.valueIds = valueOffsets + 4 * (keyCount + 1);
+        this.table = valueIds + 4 * valueCount;
+        this.stringData = table + 4 * capacity;
+        checkOffsets(stringOffsets, stringCount, stringDataLength, "string offsets");
+        checkOffsets(valueOffsets, keyCount, valueCount, "value offsets");
+        checkIds(keyIds, keyCount, 0, stringCount, "key");
+        checkIds(valueIds, valueCount, NULL_ID, stringCount, "value");
+        // every key in the table exactly once, and at least one empty slot so that the probing of a missing key ends
+        BitSet seen = new BitSet(keyCount);
+        for (int slot = 0; slot < capacity; slot++) {
+            int entry = buffer.getInt(table + 4 * slot);
+            if (entry < 0 || entry > keyCount)
+                throw corrupt("hash table entry " + entry + " out of range");
+            if (entry == 0)
+                continue;
+            if (seen.get(entry - 1))
+                throw corrupt("hash table holds key " + (entry - 1) + " twice");
+            seen.set(entry - 1);
+        }
+        if (seen.cardinality() != keyCount)
+            throw corrupt("hash table holds " + seen.cardinality() + " of " + keyCount + " keys");
+        this.strings = new String[stringCount];
+    }
+
+    private static CollectionProviderException corrupt(String reason) {
+        return new CollectionProviderException("Truncated or corrupt properties snapshot: " + reason);
+    }
+
+    /**
+     * Checks that the count + 1 offsets at the position go from 0 to the end without decreasing
+     */
+    private void checkOffsets(int position, int count, int end, String section) throws CollectionProviderException {
+        int previous = 0;
+        for (int i = 0; i <= count; i++) {
+            int offset = buffer.getInt(position + 4 * i);
+            if ((i == 0) ? offset != 0 : offset < previous)
+                throw corrupt(section + " out of order at " + i);
+            previous = offset;
+        }
+        if (previous != end)
+            throw corrupt(section + " end at " + previous + " instead of " + end);
+    }
+
+    /**
+     * Checks that the count String ids at the position are between min and the number of Strings
+     */
+    private void checkIds(int position, int count, int min, int stringCount, String section) throws CollectionProviderException {
+        for (int i = 0; i < count; i++) {
+            int id = buffer.getInt(position + 4 * i);
+            if (id < min || id >= stringCount)
+                throw corrupt(section + " String id " + id + " out of range");
+        }
+    }
+
+    /**
+     * Memory-maps a snapshot file and checks its sections
+     *
+     * @param path
+     * @return
+     * @throws CollectionProviderException
+     *             if the file cannot be read or is not a valid snapshot
+     */
+    static SnapshotTriggerOutOfMemory open(Path path) throws CollectionProviderException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new CollectionProviderException("Snapshot " + path + " is too large");
+            return new SnapshotTriggerOutOfMemory(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        }
+    }
+
+    /**
+     * Returns true if the snapshot was written with the given configuration fingerprint, and the source file still has the size and checksum recorded in
+     * the snapshot
+     *
+     * @param source
+     * @param fingerprint
+     *            the fingerprint of the builder configuration
+     * @return
+     * @throws IOException
+     */
+    boolean isCurrent(Path source, long fingerprint) throws IOException {
+        if (fingerprint != configFingerprint || Files.size(source) != sourceSize)
+            return false;
+        return FileState.of(source).checksum == sourceChecksum;
+    }
+
+    /**
+     * Writes a snapshot of the properties. The file is written next to the target and then moved into place, so a snapshot that is mapped by another
+     * process is never seen half written.
+     *
+     * @param props
+     * @param target
+     * @param source
+     *            the state of the file the properties were loaded from
+     * @param fingerprint
+     *            the fingerprint of the builder configuration the properties were loaded with
+     * @throws IOException
+     */
+    static void write(Map<String, List<String>> props, Path target, FileState source, long fingerprint) throws IOException {
+        // assign ids to the distinct Strings, keys first
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        List<byte[]> encoded = new ArrayList<byte[]>();
+        int keyCount = props.size();
+        int[] keys = new int[keyCount];
+        int[] hashes = new int[keyCount];
+        int[] offsets = new int[keyCount + 1];
+        int valueCount = 0;
+        int k = 0;
+        for (String key : props.keySet()) {
+            if (key == null)
+                throw new NullPointerException("Null keys cannot be written to a snapshot");
+            hashes[k] = key.hashCode();
+            keys[k++] = id(key, ids, encoded);
+        }
+        for (List<String> values : props.values())
+            valueCount += (values != null) ? values.size() : 0;
+        int[] values = new int[valueCount];
+        k = 0;
+        int v = 0;
+        for (List<String> list : props.values()) {
+            offsets[k++] = v;
+            if (list != null)
+                for (String value : list)
+                    values[v++] = (value == null) ? NULL_ID : id(value, ids, encoded);
+        }
+        offsets[k] = v;
+
+        int capacity = Integer.highestOneBit(Math.max(2, keyCount) * 2 - 1) << 1;
+        int[] table = new int[capacity];
+        for (int i = 0; i < keyCount; i++) {
+            int slot = ImmutableTriggerOutOfMemory.spread(hashes[i]) & (capacity - 1);
+            while (table[slot] != 0)
+                slot = (slot + 1) & (capacity - 1);
+            table[slot] = i + 1;
+        }
+        long stringDataLength = 0;
+        for (byte[] bytes : encoded)
+            stringDataLength += bytes.length;
+        long total = HEADER_SIZE + 4L * (encoded.size() + 1 + 3 * keyCount + 1 + valueCount + capacity) + stringDataLength;
+        if (total > Integer.MAX_VALUE)
+            throw new IOException("The properties are too large for a snapshot");
+
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.size);
+                out.writeLong(source.checksum);
+                out.writeLong(fingerprint);
+                out.writeInt(encoded.size());
+                out.writeInt(keyCount);
+                out.writeInt(valueCount);
+                out.writeInt(capacity);
+                out.writeInt((int) stringDataLength);
+                int position = 0;
+                for (byte[] bytes : encoded) {
+                    out.writeInt(position);
+                    position += bytes.length;
+                }
+                out.writeInt(position);
+                writeInts(out, keys);
+                writeInts(out, hashes);
+                writeInts(out, offsets);
+                writeInts(out, values);
+                writeInts(out, table);
+                for (byte[] bytes : encoded)
+                    out.write(bytes);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int id(String s, Map<String, Integer> ids, List<byte[]> encoded) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = encoded.size();
+            ids.put(s, id);
+            encoded.add(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        for (int i : ints)
+            out.writeInt(i);
+    }
+
+    /**
+     * Returns the String with the given id, decoding it on first access. Strings are immutable, so racing decodes are harmless
+     */
+    private String string(int id) {
+        if (id == NULL_ID)
+            return null;
+        String s = strings[id];
+        if (s == null) {
+            int start = buffer.getInt(stringOffsets + 4 * id);
+            int length = buffer.getInt(stringOffsets + 4 * (id + 1)) - start;
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = buffer.get(stringData + start + i);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    private String keyAt(int index) {
+        return string(buffer.getInt(keyIds + 4 * index));
+    }
+
+    private int valueOffset(int index) {
+        return buffer.getInt(valueOffsets + 4 * index);
+    }
+
+    private String valueAt(int position) {
+        return string(buffer.getInt(valueIds + 4 * position));
+    }
+
+    /**
+     * Returns the index of the key, or -1 if it is not present
+     */
+    private int indexOf(Object key) {
+        if (!(key instanceof String))
+            return -1;
+        int hash = key.hashCode();
+        int slot = ImmutableTriggerOutOfMemory.spread(hash) & mask;
+        int entry;
+        while ((entry = buffer.getInt(table + 4 * slot)) != 0) {
+            int index = entry - 1;
+            if (buffer.getInt(keyHashes + 4 * index) == hash && keyAt(index).equals(key))
+                return index;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private List<String> valuesAt(int index) {
+        int from = valueOffset(index);
+        int to = valueOffset(index + 1);
+        if (to - from == 1)
+            return Collections.singletonList(valueAt(from));
+        return (to == from) ? Collections.<String> emptyList() : new Slice(from, to);
+    }
+
+    @Override
+    public List<String> get(Object key) {
+        int index = indexOf(key);
+        return (index == -1) ? null : valuesAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public int size() {
+        return keyCount;
+    }
+
+    /**
+     * Returns the first value of the key without creating a view of its values
+     */
+    @Override
+    public String getFirstValue(String key) {
+        int index = indexOf(key);
+        if (index == -1)
+            return null;
+        int from = valueOffset(index);
+        return (from == valueOffset(index + 1)) ? null : valueAt(from);
+    }
+
+    /**
+     * Returns a mutable copy of this snapshot
+     *
+     * @return
+     */
+    public TriggerOutOfMemory thaw() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        for (int i = 0; i < keyCount; i++) {
+            int from = valueOffset(i);
+            int to = valueOffset(i + 1);
+            List<String> list = new ArrayList<String>(to - from);
+            for (int j = from; j < to; j++)
+                list.add(valueAt(j));
+            props.put(keyAt(i), list);
+        }
+        return props;
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<String>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Map.Entry<String, List<String>>> iterator() {
+                    return new Iterator<Map.Entry<String, List<String>>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keyCount;
+                        }
+
+                        @Override
+                        public Map.Entry<String, List<String>> next() {
+                            if (next >= keyCount)
+                                throw new NoSuchElementException();
+                            int index = next++;
+                            return new AbstractMap.SimpleImmutableEntry<String, List<String>>(keyAt(index), valuesAt(index));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keyCount;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * An unmodifiable view of a range of the value slices
+     */
+    private final class Slice extends AbstractList<String> implements RandomAccess {
+        private final int from;
+        private final int to;
+
+        Slice(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= to - from)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            return valueAt(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
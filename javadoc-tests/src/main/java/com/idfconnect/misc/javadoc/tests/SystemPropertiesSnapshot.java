@@ -0,0 +1,157 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the System properties under each prefix, shared by all builds in the JVM, so that building many instances does not split the System
+ * properties under their prefix again for each build.
+ * <p>
+ * The System properties are only read, never replaced. The comma-split values under a prefix are cached together with the raw values they were split
+ * from, and each lookup compares the live String entries under the prefix with those raw values, so any change to them is seen by the next build,
+ * whether it was made through {@link System#setProperty(String, String)}, through the views of the properties or through an earlier reference to them.
+ * The check walks the keys of the live properties once and allocates no Strings; what the cache saves is the splitting and copying of the values.
+ * Changes outside a prefix never discard the values cached for it.
+ * </p>
+ * <p>
+ * Like the properties loaded without a snapshot, only the entries of the {@link Properties} themselves are read, not their defaults.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+final class SystemPropertiesSnapshot {
+    private static final Logger                                 logger       = LoggerFactory.getLogger(SystemPropertiesSnapshot.class);
+    /** The most prefixes whose values are cached, so a caller cycling through prefixes cannot grow a snapshot without bound */
+    private static final int                                    MAX_PREFIXES = 256;
+    private static volatile SystemPropertiesSnapshot            current;
+
+    private final Properties                                    source;
+    private final ConcurrentHashMap<String, PrefixedProperties> byPrefix     = new ConcurrentHashMap<String, PrefixedProperties>();
+
+    /**
+     * The String properties under one prefix: their raw values keyed by full name, and the split values keyed by the rest of the name
+     */
+    private static final class PrefixedProperties {
+        private final Map<String, String>       raw;
+        private final Map<String, List<String>> values;
+
+        PrefixedProperties(Map<String, String> raw, Map<String, List<String>> values) {
+            this.raw = raw;
+            this.values = values;
+        }
+
+        /**
+         * Returns true if the String entries of the properties under the prefix are exactly the raw entries. Entries that are not Strings are ignored, as
+         * they are when the values are split
+         */
+        boolean matches(Properties live, String prefix) {
+            int count = 0;
+            try {
+                for (Map.Entry<Object, Object> entry : live.entrySet()) {
+                    Object key = entry.getKey();
+                    if (!(key instanceof String) || !((String) key).startsWith(prefix))
+                        continue;
+                    Object value = entry.getValue();
+                    if (!(value instanceof String))
+                        continue;
+                    if (!value.equals(raw.get(key)))
+                        return false;
+                    count++;
+                }
+            } catch (ConcurrentModificationException e) {
+                // changed while being compared
+                return false;
+            }
+            return count == raw.size();
+        }
+    }
+
+    private SystemPropertiesSnapshot(Properties source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns the snapshot of the current System properties object, creating a new one if the properties were replaced through
+     * {@link System#setProperties(Properties)}
+     *
+     * @return
+     */
+    static SystemPropertiesSnapshot current() {
+        Properties live = System.getProperties();
+        SystemPropertiesSnapshot snapshot = current;
+        if (snapshot != null && snapshot.source == live)
+            return snapshot;
+        snapshot = new SystemPropertiesSnapshot(live);
+        current = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Discards the cached values, so that the next call to {@link #current()} splits the System properties again. Changes are seen without this call;
+     * it only releases the cache
+     */
+    static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * Returns the System properties whose names start with the prefix, keyed by the rest of the name, with their values split on commas. A value that
+     * splits into no values is mapped to an empty list. The returned map and lists are shared and unmodifiable
+     *
+     * @param prefix
+     * @return
+     */
+    Map<String, List<String>> withPrefix(String prefix) {
+        PrefixedProperties cached = byPrefix.get(prefix);
+        if (cached != null && cached.matches(source, prefix))
+            return cached.values;
+        PrefixedProperties split = split(prefix);
+        if (cached != null) {
+            logger.debug("System properties under {} changed, splitting them again", prefix);
+            byPrefix.replace(prefix, cached, split);
+        } else if (byPrefix.size() < MAX_PREFIXES) {
+            byPrefix.putIfAbsent(prefix, split);
+        }
+        return split.values;
+    }
+
+    private PrefixedProperties split(String prefix) {
+        Map<String, String> raw = new HashMap<String, String>();
+        // Properties.forEach holds the lock of the properties, so the copy is consistent
+        source.forEach((k, v) -> {
+            if (k instanceof String && v instanceof String && ((String) k).startsWith(prefix))
+                raw.put((String) k, (String) v);
+        });
+        Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+        raw.keySet().stream().sorted().forEach(name -> {
+            List<String> list = new ArrayList<String>(1);
+            DelimiterSplitter.COMMA.split(raw.get(name), list);
+            values.put(name.substring(prefix.length()), Collections.unmodifiableList(list));
+        });
+        return new PrefixedProperties(raw, Collections.unmodifiableMap(values));
+    }
+
+    /**
+     * Returns a mutable copy of values taken from a snapshot, deduplicated through the pool if there is one
+     *
+     * @param values
+     * @param pool
+     * @return
+     */
+    static List<String> copy(List<String> values, InternPool pool) {
+        List<String> copy = new ArrayList<String>(values.size());
+        for (String value : values)
+            copy.add(InternPool.intern(pool, value));
+        return copy;
+    }
+}
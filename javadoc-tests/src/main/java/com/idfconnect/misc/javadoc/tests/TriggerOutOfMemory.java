@@ -2,14 +2,34 @@ package com.idfconnect.misc.javadoc.tests;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,20 +37,44 @@ import org.slf4j.LoggerFactory;
 import com.idfconnect.ssorest.common.collections.CollectionProviderException;
 import com.idfconnect.ssorest.common.utils.StringUtil;
 
-public class TriggerOutOfMemory extends HashMap<String, List<String>> implements Cloneable {
+/**
+ * A map of multi-valued properties, built from properties files, System properties and defaults with a {@link Builder}.
+ * <p>
+ * This is a {@link HashMap} with a node and a value list per key, so {@link #clone()} and every build that starts from defaults take time and heap in
+ * proportion to the whole map, however few keys the copy goes on to change. Where many copies are derived from one large map, freeze it once with
+ * {@link #freeze()} and derive each copy with {@link ImmutableTriggerOutOfMemory#overlay()}, or build them with
+ * {@link Builder#buildOverlay(String, ImmutableTriggerOutOfMemory)}: an overlay is created and cloned in constant time and takes heap in proportion to its
+ * own changes only.
+ * </p>
+ */
+public class TriggerOutOfMemory extends HashMap<String, List<String>> implements MultiValuedLookup, Cloneable {
     private static final long   serialVersionUID = 8376962213401379925L;
     private static Logger       logger           = LoggerFactory.getLogger(TriggerOutOfMemory.class);
-    private static final String YES              = "yes";
     private static final String DOT              = ".";
-    private static final String COMMA            = ",";
+
+    /** Values parsed by the typed getters, keyed by property name; created on first use */
+    private transient volatile ConcurrentHashMap<String, TypedValue> typedCache;
+    /** The sorted keys used by the prefix views and by builds from defaults; created on first use, then kept up to date by the methods that add keys */
+    private transient volatile TreeSet<String>                       keyIndex;
 
     public static class Builder {
         String                     prefix                                = null;
         String                     delimiter                             = null;
+        DelimiterSplitter          splitter                              = null;
         boolean                    useQuotedValues                       = false;
         boolean                    useSystemPropertiesAsDefaults         = false;
         boolean                    loadSystemProperties                  = false;
+        boolean                    memoryMapped                          = false;
+        boolean                    lazyValues                            = false;
+        int                        parallelism                           = 1;
+        InternPool                 internPool                            = null;
         TriggerOutOfMemory         defaults                              = null;
+        LoadMetrics.Listener       metricsListener                       = null;
+        int                        maxLineLength                         = 0;
+        int                        maxValuesPerKey                       = 0;
+        int                        maxKeys                               = 0;
+        long                       maxRetainedBytes                      = 0;
+        private LazyValues.Source  lazySource;
 
         private Builder() {
         }
@@ -51,24 +95,33 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         }
 
         /**
-         * Sets default values
+         * Sets default values. The value lists of the defaults are shared with the results copy-on-write rather than copied, so writing to the results
+         * never changes the defaults. The sorted key index of the defaults is built here, once, so that builds with a prefix only visit the defaults under
+         * it, and builds running at the same time never build it themselves. To derive many results from one large set of defaults without a map entry per
+         * default in each, see {@link #buildOverlay(String, ImmutableTriggerOutOfMemory)}
          * 
          * @param defaults
          * @return
          */
         public Builder defaults(TriggerOutOfMemory defaults) {
             this.defaults = defaults;
+            if (defaults != null)
+                defaults.keyIndex();
             return this;
         }
 
         /**
-         * Sets a delimiter for parsing multi-values. Note that for System property values, comma is used regardless of this value
+         * Sets a delimiter for parsing multi-values. Note that for System property values, comma is used regardless of this value. The delimiter is a
+         * regular expression as with {@link String#split(String)}; it is compiled once here, and delimiters without meta characters are matched literally
          * 
          * @param delimiter
          * @return
+         * @throws java.util.regex.PatternSyntaxException
+         *             if the delimiter is not a valid regular expression
          */
         public Builder delimiter(String delimiter) {
             this.delimiter = delimiter;
+            this.splitter = (delimiter != null) ? DelimiterSplitter.compile(delimiter) : null;
             return this;
         }
 
@@ -97,6 +150,249 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
             return this;
         }
 
+        /**
+         * Set to memory-map the file when building from a file path. The mapped bytes are scanned directly and Strings are only created for the resulting keys
+         * and values. The file is expected to be UTF-8 encoded, as with the Reader based loader, but malformed UTF-8 is replaced with U+FFFD rather than
+         * failing the build
+         * 
+         * @return
+         * @since 3.1.4
+         */
+        public Builder memoryMapped() {
+            this.memoryMapped = true;
+            return this;
+        }
+
+        /**
+         * Set to defer the quote stripping and delimiter split of the values read from a Reader or file until each key is first accessed. The raw value of
+         * each line is kept as a String until then, so the split values and their lists are only created for the keys actually used; the raw values
+         * themselves still take memory in proportion to the input. This has no effect without a delimiter, with a regular expression delimiter, or with
+         * {@link #maxValuesPerKey(int)}: a value that splits into no values at all must leave its key absent, so that lower precedence defaults apply, and
+         * only a literal delimiter can be checked for that while loading.
+         *
+         * @return
+         * @since 3.1.4
+         */
+        public Builder lazyValues() {
+            this.lazyValues = true;
+            return this;
+        }
+
+        /**
+         * Returns true if the loads of this builder keep the raw values in {@link LazyValues} rather than splitting them
+         */
+        boolean splitsLazily() {
+            return lazyValues && splitter != null && splitter.literal() != null && maxValuesPerKey == 0;
+        }
+
+        /**
+         * Returns the settings shared by the lazy values of the loads of this builder, created again only when the delimiter, quoting or pool changed
+         */
+        LazyValues.Source lazySource() {
+            LazyValues.Source source = lazySource;
+            if (source == null || !source.matches(splitter, useQuotedValues, internPool))
+                lazySource = source = new LazyValues.Source(splitter, useQuotedValues, internPool);
+            return source;
+        }
+
+        /**
+         * Returns a checksum of everything besides the source file that decides the loaded entries: the prefix, delimiter and quoting, the System property
+         * settings, and the defaults and System properties that apply. The limits, parallelism, memory mapping, lazy values and deduplication are left
+         * out, as they do not change the entries. This takes time in proportion to the defaults, so it is computed once per build
+         *
+         * @return
+         */
+        long fingerprint() {
+            CRC32 crc = new CRC32();
+            update(crc, prefix);
+            update(crc, delimiter);
+            crc.update(useQuotedValues ? 1 : 0);
+            crc.update(useSystemPropertiesAsDefaults ? 1 : 0);
+            crc.update(loadSystemProperties ? 1 : 0);
+            if (defaults != null) {
+                // each entry is checksummed on its own and the checksums are added up, so the fingerprint does not depend on the iteration order of the
+                // defaults, and they need not be copied and sorted
+                CRC32 entryCrc = new CRC32();
+                boolean prefixed = StringUtil.isNotBlank(prefix);
+                int count = 0;
+                long sum = 0;
+                for (Map.Entry<String, List<String>> entry : defaults.entrySet()) {
+                    if (entry.getKey() != null && (!prefixed || entry.getKey().startsWith(prefix))) {
+                        entryCrc.reset();
+                        update(entryCrc, entry.getKey(), entry.getValue());
+                        sum += entryCrc.getValue();
+                        count++;
+                    }
+                }
+                update(crc, count);
+                update(crc, (int) (sum >>> 32));
+                update(crc, (int) sum);
+            }
+            if ((useSystemPropertiesAsDefaults || loadSystemProperties) && StringUtil.isNotBlank(prefix))
+                update(crc, SystemPropertiesSnapshot.current().withPrefix(prefix));
+            return crc.getValue();
+        }
+
+        private static void update(CRC32 crc, Map<String, List<String>> entries) {
+            update(crc, entries.size());
+            for (Map.Entry<String, List<String>> entry : entries.entrySet())
+                update(crc, entry.getKey(), entry.getValue());
+        }
+
+        private static void update(CRC32 crc, String key, List<String> values) {
+            update(crc, key);
+            update(crc, (values != null) ? values.size() : -1);
+            if (values != null)
+                for (String value : values)
+                    update(crc, value);
+        }
+
+        /**
+         * Adds the length and UTF-8 bytes of the String, so adjacent Strings cannot run into each other; null has a length of -1
+         */
+        private static void update(CRC32 crc, String s) {
+            if (s == null) {
+                update(crc, -1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            update(crc, bytes.length);
+            crc.update(bytes, 0, bytes.length);
+        }
+
+        private static void update(CRC32 crc, int i) {
+            crc.update(i >>> 24);
+            crc.update(i >>> 16);
+            crc.update(i >>> 8);
+            crc.update(i);
+        }
+
+        /**
+         * Sets the number of threads used to parse the raw properties. When greater than 1, the input is split at line boundaries and the chunks are parsed
+         * in parallel, then merged in input order so the results are the same as a sequential parse. Files are memory-mapped in this mode, see
+         * {@link #memoryMapped()}
+         * 
+         * @param parallelism
+         * @return
+         * @since 3.1.4
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1)
+                throw new IllegalArgumentException("Parallelism must be at least 1");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Deduplicates the keys and values while loading, using the JVM-wide {@link InternPool#shared()} pool
+         * 
+         * @return
+         * @since 3.1.4
+         */
+        public Builder deduplicate() {
+            return deduplicate(InternPool.shared());
+        }
+
+        /**
+         * Deduplicates the keys and values while loading, using the given pool. A pool can be shared by many builds
+         * 
+         * @param pool
+         * @return
+         * @since 3.1.4
+         */
+        public Builder deduplicate(InternPool pool) {
+            this.internPool = pool;
+            return this;
+        }
+
+        /**
+         * Sets the maximum length of a line read from a Reader or file, in characters, or in bytes for memory-mapped files. A longer line fails the build
+         * before it is buffered in full
+         * 
+         * @param maxLineLength
+         * @return
+         * @since 3.1.4
+         */
+        public Builder maxLineLength(int maxLineLength) {
+            if (maxLineLength < 1)
+                throw new IllegalArgumentException("Maximum line length must be at least 1");
+            this.maxLineLength = maxLineLength;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of values a loaded key may have, after the delimiter split and across repeated lines. A key with more values fails the
+         * build as soon as they are added. As the values have to be counted while loading, {@link #lazyValues()} has no effect with this limit
+         * 
+         * @param maxValuesPerKey
+         * @return
+         * @since 3.1.4
+         */
+        public Builder maxValuesPerKey(int maxValuesPerKey) {
+            if (maxValuesPerKey < 1)
+                throw new IllegalArgumentException("Maximum values per key must be at least 1");
+            this.maxValuesPerKey = maxValuesPerKey;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of keys that may be loaded. Keys added afterwards by defaults and system properties do not count
+         * 
+         * @param maxKeys
+         * @return
+         * @since 3.1.4
+         */
+        public Builder maxKeys(int maxKeys) {
+            if (maxKeys < 1)
+                throw new IllegalArgumentException("Maximum keys must be at least 1");
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Sets the maximum estimated heap size of the loaded keys and values. The build fails as soon as the estimate is exceeded; with a parallelism above
+         * one, the parts loaded at the same time count against this maximum together. A file is also checked before it is read: the build fails right away
+         * if the file is larger than this maximum, as its keys and values would take at least that much heap once loaded
+         * 
+         * @param maxRetainedBytes
+         * @return
+         * @since 3.1.4
+         */
+        public Builder maxRetainedBytes(long maxRetainedBytes) {
+            if (maxRetainedBytes < 1)
+                throw new IllegalArgumentException("Maximum retained bytes must be at least 1");
+            this.maxRetainedBytes = maxRetainedBytes;
+            return this;
+        }
+
+        /**
+         * Sets a listener that receives the {@link LoadMetrics} of every build from now on. Without a listener, no statistics are collected
+         * 
+         * @param listener
+         *            the listener, or null to stop collecting statistics
+         * @return
+         * @since 3.1.4
+         */
+        public Builder metrics(LoadMetrics.Listener listener) {
+            this.metricsListener = listener;
+            return this;
+        }
+
+        /**
+         * Returns a new statistics collector if a listener is set, otherwise null
+         */
+        LoadMetrics newMetrics() {
+            return (metricsListener != null) ? new LoadMetrics() : null;
+        }
+
+        void report(LoadMetrics metrics) {
+            try {
+                metricsListener.loaded(metrics);
+            } catch (RuntimeException e) {
+                logger.warn("Load metrics listener {} failed", metricsListener, e);
+            }
+        }
+
         /**
          * Built the {@link MultiValuedProperties} by reading the raw properties from the provided Reader
          */
@@ -111,6 +407,163 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
             return initializeFromFilepath(filePath, this);
         }
 
+        /**
+         * Builds from the contents of a file already read into memory, with the same results as {@link #build(String)} on the file. Used where the bytes
+         * that are parsed must be the ones that were checksummed; the contents are parsed on the calling thread whatever the parallelism
+         *
+         * @param contents
+         *            the UTF-8 contents, from the position to the limit, which are left unchanged
+         * @return
+         * @throws CollectionProviderException
+         */
+        TriggerOutOfMemory build(ByteBuffer contents) throws CollectionProviderException {
+            return initializeFromContents(contents, this);
+        }
+
+        /**
+         * Builds the properties of a file as overrides on top of a shared base, which takes the place of the defaults of this builder: the base is not
+         * copied, and the result holds only the loaded entries and the system properties, so its heap is in proportion to them rather than to the base. The
+         * precedence is as with {@link #build(String)}, with the base as the defaults, and its keys must be given as they appear in the results, that is
+         * without the prefix.
+         * 
+         * @param filePath
+         * @param base
+         *            the shared base, for example one {@link TriggerOutOfMemory#freeze() frozen} map that many builds derive from
+         * @return
+         * @throws CollectionProviderException
+         * @since 3.1.4
+         */
+        public OverlayTriggerOutOfMemory buildOverlay(String filePath, ImmutableTriggerOutOfMemory base) throws CollectionProviderException {
+            if (base == null)
+                throw new CollectionProviderException("No base specified");
+            return initializeOverlay(filePath, base, this);
+        }
+
+        /**
+         * Returns a writer using the delimiter and quoting of this builder, so that the text it writes is read back into the same map by this builder when it
+         * has no prefix, defaults or system properties
+         * 
+         * @return
+         * @throws IllegalArgumentException
+         *             if the delimiter is a regular expression, which values cannot be joined with
+         * @since 3.1.4
+         */
+        public PropertiesWriter writer() {
+            PropertiesWriter writer = new PropertiesWriter().delimiter(delimiter);
+            return useQuotedValues ? writer.quotedValues() : writer;
+        }
+
+        /**
+         * Same as {@link #buildAsync(String, Executor)}, parsing on the common {@link ForkJoinPool}
+         * 
+         * @param filePath
+         * @return
+         * @since 3.1.4
+         */
+        public CompletableFuture<TriggerOutOfMemory> buildAsync(String filePath) {
+            return buildAsync(filePath, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Builds the {@link MultiValuedProperties} from a file without blocking the caller. The file is read through an asynchronous channel and each buffer
+         * is parsed on the executor as it arrives, so no thread waits on the I/O; the results are the same as those of {@link #build(String)}, and
+         * malformed UTF-8 fails the build as it does there. With {@link #parallelism(int)} or {@link #memoryMapped()}, the file is instead loaded as with
+         * {@link #build(String)}, on the executor.
+         * <p>
+         * Cancelling the future stops the load. Any failure completes the future exceptionally with a {@link CollectionProviderException}. This builder must
+         * not be changed until the future is complete.
+         * </p>
+         * 
+         * @param filePath
+         * @param executor
+         *            the executor the file is parsed on
+         * @return the future results
+         * @since 3.1.4
+         */
+        public CompletableFuture<TriggerOutOfMemory> buildAsync(String filePath, Executor executor) {
+            if (executor == null)
+                throw new NullPointerException("executor");
+            if (filePath == null)
+                return AsyncPropertiesLoader.failed(new CollectionProviderException("No file path specified"));
+            if (parallelism > 1 || memoryMapped)
+                return AsyncPropertiesLoader.supply(() -> build(filePath), executor);
+            return AsyncPropertiesLoader.load(FileSystems.getDefault().getPath(filePath), this, executor);
+        }
+
+        /**
+         * Same as {@link #buildAsync(BufferedReader, Executor)}, reading on the common {@link ForkJoinPool}
+         * 
+         * @param reader
+         * @return
+         * @since 3.1.4
+         */
+        public CompletableFuture<TriggerOutOfMemory> buildAsync(BufferedReader reader) {
+            return buildAsync(reader, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Builds the {@link MultiValuedProperties} from a Reader without blocking the caller. A Reader can only be read by blocking, so the whole build runs
+         * on the executor, as {@link #build(BufferedReader)}.
+         * <p>
+         * Cancelling the future before the build has started skips it. Any failure completes the future exceptionally with a
+         * {@link CollectionProviderException}. This builder must not be changed until the future is complete.
+         * </p>
+         * 
+         * @param reader
+         * @param executor
+         *            the executor the reader is read on
+         * @return the future results
+         * @since 3.1.4
+         */
+        public CompletableFuture<TriggerOutOfMemory> buildAsync(BufferedReader reader, Executor executor) {
+            if (executor == null)
+                throw new NullPointerException("executor");
+            return AsyncPropertiesLoader.supply(() -> build(reader), executor);
+        }
+
+        /**
+         * Builds the {@link MultiValuedProperties} from several layered files, such as base, region, host and override files. All layers are read and parsed
+         * concurrently, each as with {@link #build(String)}, and merged once in order: a key takes its values from the last layer that has it. The defaults
+         * and system properties of this builder are then applied once to the merged entries.
+         * <p>
+         * Without a prefix, the result is the same as chaining the layers through {@link #defaults(TriggerOutOfMemory)}, where each layer is built with the
+         * previous one as its defaults, without copying each intermediate result. The limits of this builder apply to the merged entries, and the statistics
+         * reported to a metrics listener cover all layers.
+         * </p>
+         * <p>
+         * The layers are parsed on the common {@link ForkJoinPool}, see {@link #build(List, Executor)}.
+         * </p>
+         * 
+         * @param layers
+         *            the files, from lowest to highest precedence
+         * @return
+         * @throws CollectionProviderException
+         *             if a layer cannot be read
+         * @since 3.1.4
+         */
+        public TriggerOutOfMemory build(List<Path> layers) throws CollectionProviderException {
+            return initializeFromLayers(layers, this, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Same as {@link #build(List)}, parsing the layers on the given executor, which may be shared by any number of builds. The first layer that fails
+         * fails the build at once: the layers that have not started yet are cancelled and skipped, and those still being parsed are not waited for
+         * 
+         * @param layers
+         *            the files, from lowest to highest precedence
+         * @param executor
+         *            the executor the layers are parsed on
+         * @return
+         * @throws CollectionProviderException
+         *             if a layer cannot be read
+         * @since 3.1.4
+         */
+        public TriggerOutOfMemory build(List<Path> layers, Executor executor) throws CollectionProviderException {
+            if (executor == null)
+                throw new NullPointerException("executor");
+            return initializeFromLayers(layers, this, executor);
+        }
+
         /**
          * Builds an empty {@link MultiValuedProperties}
          * 
@@ -141,25 +594,36 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
          * @throws CollectionProviderException
          */
         public TriggerOutOfMemory build(Properties rawprops) throws CollectionProviderException {
+            // the raw entries go straight into the results, defaults are filled in afterwards
+            LoadMetrics metrics = newMetrics();
+            LoadLimits limits = LoadLimits.of(this);
+            long start = (metrics != null) ? System.nanoTime() : 0;
             TriggerOutOfMemory rawmvp = new TriggerOutOfMemory();
             Logger logger = LoggerFactory.getLogger(TriggerOutOfMemory.class);
             String prefix = (this.prefix != null) ? this.prefix : "";
-            rawprops.forEach((k, v) -> {
-                if (((String) k).startsWith(prefix)) {
-                    String nextname = ((String) k).substring(prefix.length());
-                    if (StringUtil.isNotBlank(this.delimiter)) {
-                        String[] values = ((String) v).split(delimiter);
-                        for (String nextvalue : values) {
-                            logger.trace("Adding {}={}", nextname, nextvalue);
-                            rawmvp.add(nextname, nextvalue);
+            try {
+                rawprops.forEach((k, v) -> {
+                    if (((String) k).startsWith(prefix)) {
+                        if (metrics != null)
+                            metrics.lines++;
+                        String nextname = InternPool.intern(internPool, ((String) k).substring(prefix.length()));
+                        int before = (limits != null) ? LoadLimits.valuesOf(nextname, rawmvp) : 0;
+                        if (StringUtil.isNotBlank(this.delimiter)) {
+                            splitter.splitInto((String) v, nextname, rawmvp, internPool, limits);
+                        } else {
+                            logger.trace("Adding {}={}", nextname, v);
+                            rawmvp.add(nextname, InternPool.intern(internPool, (String) v));
                         }
-                    } else {
-                        logger.trace("Adding {}={}", nextname, v);
-                        rawmvp.add(nextname, (String) v);
+                        if (limits != null)
+                            limits.added(nextname, before, ((String) v).length(), rawmvp);
                     }
-                }
-            });
-            return initializeCore(rawmvp, this);
+                });
+            } catch (LoadLimits.LimitExceededException e) {
+                throw e.toCollectionProviderException();
+            }
+            if (metrics != null)
+                metrics.parseNanos = System.nanoTime() - start;
+            return completeCore(rawmvp, this, metrics);
         }
 
         /**
@@ -172,6 +636,55 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         public TriggerOutOfMemory build(TriggerOutOfMemory rawprops) throws CollectionProviderException {
             return initializeCore(rawprops, this);
         }
+
+        /**
+         * Returns the properties from a binary snapshot of the given file, written by {@link TriggerOutOfMemory#writeSnapshot(String, String)}. The snapshot
+         * is memory-mapped and served without parsing, as long as the size and checksum of the source file still match the snapshot, and the snapshot was
+         * written with the same configuration. Otherwise, or if the snapshot is unreadable or corrupt, the file is parsed with this builder, as with
+         * {@link #build(String)}, and the snapshot is rewritten for the next start.
+         * <p>
+         * The configuration covers the prefix, delimiter, quoting, System property settings, and the contents of the defaults and of the System properties
+         * that apply, so any change to them rebuilds the snapshot.
+         * </p>
+         * 
+         * @param snapshotPath
+         * @param sourcePath
+         * @return a {@link SnapshotTriggerOutOfMemory} if the snapshot is current, otherwise a {@link TriggerOutOfMemory}
+         * @throws CollectionProviderException
+         *             if the source file cannot be read
+         * @since 3.1.4
+         */
+        public MultiValuedLookup buildFromSnapshot(String snapshotPath, String sourcePath) throws CollectionProviderException {
+            if (snapshotPath == null || sourcePath == null)
+                throw new CollectionProviderException("No file path specified");
+            Path snapshot = FileSystems.getDefault().getPath(snapshotPath);
+            Path source = FileSystems.getDefault().getPath(sourcePath);
+            long fingerprint = fingerprint();
+            if (Files.exists(snapshot)) {
+                try {
+                    SnapshotTriggerOutOfMemory mapped = SnapshotTriggerOutOfMemory.open(snapshot);
+                    if (mapped.isCurrent(source, fingerprint))
+                        return mapped;
+                    logger.debug("Snapshot {} is out of date, parsing {}", snapshot, source);
+                } catch (IOException | CollectionProviderException e) {
+                    logger.warn("Ignoring unreadable snapshot {}: {}", snapshot, e.toString());
+                }
+            }
+            FileState state;
+            try {
+                // the checksum is taken before parsing, so a file that changes meanwhile only leaves an out of date snapshot
+                state = FileState.of(source);
+            } catch (IOException ioe) {
+                throw new CollectionProviderException(ioe);
+            }
+            TriggerOutOfMemory props = build(sourcePath);
+            try {
+                SnapshotTriggerOutOfMemory.write(props, snapshot, state, fingerprint);
+            } catch (IOException ioe) {
+                logger.warn("Failed to write snapshot {}: {}", snapshot, ioe.toString());
+            }
+            return props;
+        }
     }
 
     /**
@@ -184,6 +697,16 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         return new Builder();
     }
 
+    /**
+     * Discards the System property values cached for builds. Builds share the values split from the System properties under each prefix and check them
+     * against the live System properties, so every change is seen without this call; it only releases the cached values
+     *
+     * @since 3.1.4
+     */
+    public static void refreshSystemProperties() {
+        SystemPropertiesSnapshot.invalidate();
+    }
+
     public TriggerOutOfMemory() {
     }
 
@@ -236,167 +759,473 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         if (filepath == null)
             throw new CollectionProviderException("No file path specified");
         Path path = FileSystems.getDefault().getPath(filepath);
-        BufferedReader reader = null;
-        TriggerOutOfMemory props = null;
+        LoadMetrics metrics = builder.newMetrics();
+        LoadLimits limits = LoadLimits.of(builder);
+        if (limits != null)
+            limits.checkFiles(Collections.singletonList(path));
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        loadFile(path, builder, props, metrics, limits);
+        return completeCore(props, builder, metrics);
+    }
 
+    /**
+     * Parses file contents held in memory with the memory-mapped parser, which works on any buffer, then completes them as with a file
+     *
+     * @param contents
+     * @param builder
+     * @return
+     * @throws CollectionProviderException
+     */
+    private static TriggerOutOfMemory initializeFromContents(ByteBuffer contents, Builder builder) throws CollectionProviderException {
+        LoadMetrics metrics = builder.newMetrics();
+        LoadLimits limits = LoadLimits.of(builder);
+        if (limits != null)
+            limits.checkSize("Contents", contents.remaining());
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        long mark = (metrics != null) ? System.nanoTime() : 0;
         try {
-            reader = Files.newBufferedReader(path);
-            props = initializeFromReader(reader, builder);
-            reader.close();
-            return props;
-        } catch (IOException ioe) {
-            throw new CollectionProviderException(ioe);
-        } finally {
-            if (reader != null)
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                }
+            new MappedPropertiesLoader(builder, metrics, limits).parseLines(contents.duplicate(), contents.position(), contents.limit(), true, props);
+        } catch (LoadLimits.LimitExceededException e) {
+            throw e.toCollectionProviderException();
         }
-    }
-
-    private void loadProperties(String prefix, Properties props) {
-        Logger logger = LoggerFactory.getLogger(TriggerOutOfMemory.class);
-        props.forEach((k, v) -> {
-            if (((String) k).startsWith(prefix)) {
-                String nextname = ((String) k).substring(prefix.length());
-                String[] values = ((String) v).split(COMMA);
-                if (containsKey(nextname)) {
-                    List<String> old = remove(nextname);
-                    logger.trace("Removing existing entry {}={}", nextname, old);
-                }
-                for (String nextvalue : values) {
-                    logger.trace("Adding {}={}", nextname, nextvalue);
-                    add(nextname, nextvalue);
-                }
-            }
-        });
+        if (metrics != null) {
+            metrics.parseNanos += System.nanoTime() - mark;
+            metrics.bytesRead += contents.remaining();
+        }
+        return completeCore(props, builder, metrics);
     }
 
     /**
-     * This is the method that finally performs all of the initialization logic
+     * Loads a file as overrides on top of the base, applying the system properties but not the defaults of the builder
      * 
-     * @param reader
+     * @param filepath
+     * @param base
      * @param builder
      * @return
      * @throws CollectionProviderException
      */
-    private static TriggerOutOfMemory initializeFromReader(BufferedReader reader, Builder builder) throws CollectionProviderException {
-        TriggerOutOfMemory raw = loadFromReader(reader, builder.delimiter, builder.useQuotedValues);
-        return initializeCore(raw, builder);
+    private static OverlayTriggerOutOfMemory initializeOverlay(String filepath, ImmutableTriggerOutOfMemory base, Builder builder)
+            throws CollectionProviderException {
+        if (filepath == null)
+            throw new CollectionProviderException("No file path specified");
+        Path path = FileSystems.getDefault().getPath(filepath);
+        LoadMetrics metrics = builder.newMetrics();
+        LoadLimits limits = LoadLimits.of(builder);
+        if (limits != null)
+            limits.checkFiles(Collections.singletonList(path));
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        loadFile(path, builder, props, metrics, limits);
+        // the keys that system properties cleared out must hide the base, as they would have hidden the defaults
+        Set<String> hidden = new HashSet<String>();
+        completeCore(props, builder, null, hidden, metrics);
+        return new OverlayTriggerOutOfMemory(base, props, hidden);
     }
 
     /**
-     * This is the method that finally performs all of the initialization logic
+     * Loads the raw properties of a file into the target with the loader selected by the builder, without applying defaults or system properties
      * 
-     * @param reader
+     * @param path
      * @param builder
-     * @return
+     * @param target
+     * @param metrics
+     *            the statistics to collect, or null
+     * @param limits
+     *            the limits to enforce, or null
      * @throws CollectionProviderException
      */
-    private static TriggerOutOfMemory initializeCore(TriggerOutOfMemory rawprops, Builder builder) throws CollectionProviderException {
-        // Instantiate our results object
-        TriggerOutOfMemory props = new TriggerOutOfMemory();
-
-        // First, load defaults if provided
-        if (builder.defaults != null) {
-            if (StringUtil.isBlank(builder.prefix))
-                props.putAll(builder.defaults);
-            else {
-                builder.defaults.forEach((k, v) -> {
-                    if (k.startsWith(builder.prefix)) {
-                        props.put(k.substring(builder.prefix.length()), v);
-                    }
-                });
+    private static void loadFile(Path path, Builder builder, TriggerOutOfMemory target, LoadMetrics metrics, LoadLimits limits)
+            throws CollectionProviderException {
+        if (builder.parallelism > 1 || builder.memoryMapped) {
+            try {
+                if (builder.parallelism > 1)
+                    ParallelPropertiesLoader.loadFile(path, builder, target, metrics, limits);
+                else
+                    new MappedPropertiesLoader(builder, metrics, limits).loadInto(path, target);
+            } catch (LoadLimits.LimitExceededException e) {
+                throw e.toCollectionProviderException();
             }
+            return;
         }
 
-        // Next, load system defaults if specified and we have a prefix
-        if (builder.useSystemPropertiesAsDefaults && StringUtil.isNotBlank(builder.prefix)) {
-            Properties sysprops = System.getProperties();
-            props.loadProperties(builder.prefix, sysprops);
-        }
-
-        // Now we load the temp properties - this allows us to clear out a default if present
-        rawprops.forEach((k, v) -> {
-            List<String> old = props.put(k, v);
-            if (old != null)
-                logger.trace("Replacing old value {}={}", k, old);
-        });
+        BufferedReader reader = null;
+        LoadMetrics.CountingInputStream counter = null;
 
-        // Apply system property values if specified and we have a prefix
-        // NOTE: these are *not* defaults, in this case they override the loaded values
-        // NOTE: the delimiter here is always comma
-        if (builder.loadSystemProperties && StringUtil.isNotBlank(builder.prefix)) {
-            Properties sysprops = System.getProperties();
-            props.loadProperties(builder.prefix, sysprops);
+        try {
+            if (metrics == null) {
+                reader = Files.newBufferedReader(path);
+            } else {
+                // the same strict UTF-8 decoding as Files.newBufferedReader, over a stream that counts the bytes
+                counter = new LoadMetrics.CountingInputStream(Files.newInputStream(path));
+                reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8.newDecoder()));
+            }
+            loadReader(reader, builder, target, metrics, limits);
+            reader.close();
+            if (counter != null)
+                metrics.bytesRead += counter.count;
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        } finally {
+            if (reader != null)
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
         }
-
-        return props;
     }
 
     /**
-     * This is the method that finally performs all of the initialization logic
+     * Loads every layer on its own thread and merges them once, in order: the entries of a layer replace those of the same keys in the layers before it.
+     * The merged entries are then completed as the loaded properties of a single build
      * 
-     * @param reader
+     * @param layers
+     *            the files, from lowest to highest precedence
      * @param builder
      * @return
      * @throws CollectionProviderException
      */
-    private static TriggerOutOfMemory loadFromReader(BufferedReader reader, String delimiter, boolean useQuotedValues) throws CollectionProviderException {
-        // Now we go through the reader and build a temp MVP object
-        TriggerOutOfMemory temploaded = new TriggerOutOfMemory();
-        String line = null;
-        try {
-            // Start by iterating through each line
-            while ((line = reader.readLine()) != null) {
-                // ignore blank lines
-                if (line.trim().length() == 0) {
-                    continue;
-                }
-
-                // ignore comments
-                if (line.charAt(0) == '#' || line.charAt(0) == '!')
-                    continue;
+    private static TriggerOutOfMemory initializeFromLayers(List<Path> layers, Builder builder, Executor executor) throws CollectionProviderException {
+        if (layers == null || layers.contains(null))
+            throw new CollectionProviderException("No file path specified");
+        LoadMetrics metrics = builder.newMetrics();
+        LoadLimits limits = LoadLimits.of(builder);
+        if (limits != null)
+            limits.checkFiles(layers);
 
-                // ignore lines with no = sign
-                int posOfEq = line.indexOf('=');
-                if (posOfEq == -1 || posOfEq == (line.length() - 1)) {
-                    logger.warn("missing '=', ignored line {}", line);
-                    continue;
+        int count = layers.size();
+        List<CompletableFuture<TriggerOutOfMemory>> tasks = new ArrayList<CompletableFuture<TriggerOutOfMemory>>(count);
+        List<LoadMetrics> layerMetrics = new ArrayList<LoadMetrics>(count);
+        for (Path path : layers) {
+            LoadMetrics partMetrics = (metrics != null) ? new LoadMetrics() : null;
+            LoadLimits partLimits = (limits != null) ? limits.part() : null;
+            layerMetrics.add(partMetrics);
+            tasks.add(AsyncPropertiesLoader.supply(() -> {
+                TriggerOutOfMemory layer = new TriggerOutOfMemory();
+                try {
+                    loadFile(path, builder, layer, partMetrics, partLimits);
+                } catch (LoadLimits.LimitExceededException e) {
+                    throw e.toCollectionProviderException();
                 }
+                return layer;
+            }, executor));
+        }
+        List<TriggerOutOfMemory> loaded = join(tasks);
 
-                // trim property names
-                String name = line.substring(0, posOfEq).trim();
-                String value = line.substring(posOfEq + 1).trim();
-
-                // handle quoted values
-                if (useQuotedValues) {
-                    // Assumes quotes around values - if quotes are missing, we skip
-                    int posOfFirstQuote = value.indexOf('\"');
-                    if (posOfFirstQuote == -1 || posOfFirstQuote == (value.length() - 1)) {
-                        logger.warn("missing '\"' around values, ignored line {}", line);
-                        continue;
-                    }
-                    int posOfNextQuote = value.indexOf('\"', posOfFirstQuote + 1);
-                    if (posOfNextQuote == -1) {
-                        logger.warn("missing '\"' around values, ignored line {}", line);
-                        continue;
-                    }
-                    value = value.substring(posOfFirstQuote + 1, posOfNextQuote);
-                }
+        // the lowest layer is usually the largest, so the others are merged into it
+        TriggerOutOfMemory props = (count == 0) ? new TriggerOutOfMemory() : loaded.get(0);
+        if (metrics != null) {
+            long held = 0;
+            for (TriggerOutOfMemory layer : loaded)
+                held += layer.size();
+            metrics.peak((int) Math.min(held, Integer.MAX_VALUE));
+        }
+        for (int i = 1; i < count; i++)
+            props.putAll(loaded.get(i));
+        try {
+            for (int i = 0; i < count; i++)
+                if (metrics != null)
+                    metrics.add(layerMetrics.get(i));
+            if (limits != null)
+                limits.merged(props);
+        } catch (LoadLimits.LimitExceededException e) {
+            throw e.toCollectionProviderException();
+        }
+        return completeCore(props, builder, metrics);
+    }
 
-                // if we have a delimiter, apply it to the value
-                if (delimiter != null) {
-                    String[] values = value.split(delimiter);
-                    for (String nextvalue : values) {
-                        logger.trace("Adding {}={}", name, nextvalue);
-                        temploaded.add(name, nextvalue);
-                    }
-                } else {
-                    logger.trace("Adding {}={}", name, value);
-                    temploaded.add(name, value);
+    /**
+     * Waits for all layers, or for the first to fail. A failure cancels the other layers, so those that have not started are skipped, and is rethrown
+     * without waiting for the layers still being parsed
+     */
+    private static List<TriggerOutOfMemory> join(List<CompletableFuture<TriggerOutOfMemory>> tasks) throws CollectionProviderException {
+        CompletableFuture<?>[] all = tasks.toArray(new CompletableFuture<?>[tasks.size()]);
+        for (CompletableFuture<TriggerOutOfMemory> task : tasks)
+            task.whenComplete((layer, t) -> {
+                if (t != null)
+                    for (CompletableFuture<?> other : all)
+                        other.cancel(false);
+            });
+        try {
+            CompletableFuture.allOf(all).get();
+        } catch (InterruptedException ie) {
+            for (CompletableFuture<?> task : all)
+                task.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CollectionProviderException(ie);
+        } catch (ExecutionException | CancellationException e) {
+            // the layer that failed is found below, as the exception may be that of a layer cancelled by the failure
+        }
+        List<TriggerOutOfMemory> loaded = new ArrayList<TriggerOutOfMemory>(tasks.size());
+        for (CompletableFuture<TriggerOutOfMemory> task : tasks) {
+            if (!task.isCancelled() && task.isCompletedExceptionally())
+                rethrow(task);
+        }
+        for (CompletableFuture<TriggerOutOfMemory> task : tasks)
+            loaded.add(task.join());
+        return loaded;
+    }
+
+    /**
+     * Rethrows the exception a failed layer completed with
+     */
+    private static void rethrow(CompletableFuture<TriggerOutOfMemory> task) throws CollectionProviderException {
+        try {
+            task.join();
+        } catch (CompletionException ce) {
+            Throwable cause = ce.getCause();
+            if (cause instanceof CollectionProviderException)
+                throw (CollectionProviderException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new CollectionProviderException(cause);
+        }
+    }
+
+    /**
+     * Loads the prefixed properties as defaults: keys that are already present are left alone. Keys whose value splits into no values at all are recorded in
+     * cleared, as they hide any lower precedence default
+     * 
+     * @param prefix
+     * @param props
+     * @param pool
+     *            the optional pool to deduplicate keys and values
+     * @param cleared
+     */
+    private void loadPropertyDefaults(Map<String, List<String>> sysprops, InternPool pool, Set<String> cleared) {
+        sysprops.forEach((nextname, v) -> {
+            if (containsKey(nextname)) {
+                logger.trace("Keeping loaded entry {}={}", nextname, get(nextname));
+                return;
+            }
+            if (v.isEmpty())
+                cleared.add(nextname);
+            else
+                put(InternPool.intern(pool, nextname), SystemPropertiesSnapshot.copy(v, pool));
+        });
+    }
+
+    /**
+     * Loads the prefixed properties over the existing ones. Keys whose value splits into no values at all are removed and recorded in cleared
+     * 
+     * @param sysprops
+     * @param pool
+     *            the optional pool to deduplicate keys and values
+     * @param cleared
+     */
+    private void loadProperties(Map<String, List<String>> sysprops, InternPool pool, Set<String> cleared) {
+        sysprops.forEach((nextname, v) -> {
+            if (containsKey(nextname)) {
+                List<String> old = remove(nextname);
+                logger.trace("Removing existing entry {}={}", nextname, old);
+            }
+            if (v.isEmpty())
+                cleared.add(nextname);
+            else
+                put(InternPool.intern(pool, nextname), SystemPropertiesSnapshot.copy(v, pool));
+        });
+    }
+
+    /**
+     * This is the method that finally performs all of the initialization logic
+     * 
+     * @param reader
+     * @param builder
+     * @return
+     * @throws CollectionProviderException
+     */
+    private static TriggerOutOfMemory initializeFromReader(BufferedReader reader, Builder builder) throws CollectionProviderException {
+        LoadMetrics metrics = builder.newMetrics();
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        if (metrics == null) {
+            loadReader(reader, builder, props, null, LoadLimits.of(builder));
+        } else {
+            // the characters are counted as they come out of the reader, line terminators included
+            LoadMetrics.CountingReader counter = new LoadMetrics.CountingReader(reader);
+            loadReader(new BufferedReader(counter), builder, props, metrics, LoadLimits.of(builder));
+            metrics.bytesRead += counter.count;
+        }
+        return completeCore(props, builder, metrics);
+    }
+
+    /**
+     * Loads the raw properties read from the reader into the target, without applying defaults or system properties
+     * 
+     * @param reader
+     * @param builder
+     * @param target
+     * @param metrics
+     *            the statistics to collect, or null
+     * @param limits
+     *            the limits to enforce, or null
+     * @throws CollectionProviderException
+     */
+    private static void loadReader(BufferedReader reader, Builder builder, TriggerOutOfMemory target, LoadMetrics metrics, LoadLimits limits)
+            throws CollectionProviderException {
+        // a long line is caught while it is read, rather than after it has been buffered
+        if (limits != null && limits.limitsLineLength())
+            reader = new BoundedLineReader(reader, limits.maxLineLength());
+        try {
+            if (builder.parallelism > 1)
+                ParallelPropertiesLoader.loadReader(reader, builder, target, metrics, limits);
+            else
+                loadFromReader(reader, builder, target, metrics, limits);
+        } catch (LoadLimits.LimitExceededException e) {
+            throw e.toCollectionProviderException();
+        }
+    }
+
+    /**
+     * Builds the results from an already loaded set of raw properties, which are copied and then completed with the defaults and system properties
+     * 
+     * @param rawprops
+     * @param builder
+     * @return
+     * @throws CollectionProviderException
+     */
+    private static TriggerOutOfMemory initializeCore(TriggerOutOfMemory rawprops, Builder builder) throws CollectionProviderException {
+        // Instantiate our results object
+        LoadMetrics metrics = builder.newMetrics();
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        rawprops.forEach((k, v) -> props.put(k, v));
+        if (metrics != null) {
+            metrics.lines = rawprops.size();
+            metrics.parseNanos = System.nanoTime() - start;
+        }
+        return completeCore(props, builder, metrics);
+    }
+
+    /**
+     * This is the method that finally performs all of the initialization logic. The loaded properties are streamed straight into the results first; the
+     * lower precedence sources are then only applied to keys that are still absent, so no temporary copy of the loaded properties is needed. The precedence
+     * is, from highest to lowest: system properties (if loaded), loaded properties, system properties (if used as defaults), defaults
+     * 
+     * @param props
+     *            the results, already holding the loaded properties
+     * @param builder
+     * @return
+     * @throws CollectionProviderException
+     */
+    static TriggerOutOfMemory completeCore(TriggerOutOfMemory props, Builder builder) throws CollectionProviderException {
+        return completeCore(props, builder, null);
+    }
+
+    /**
+     * Same as {@link #completeCore(TriggerOutOfMemory, Builder)}, timing the phases and reporting the statistics of the build if metrics are collected
+     * 
+     * @param props
+     *            the results, already holding the loaded properties
+     * @param builder
+     * @param metrics
+     *            the statistics of the load so far, or null
+     * @return
+     * @throws CollectionProviderException
+     */
+    static TriggerOutOfMemory completeCore(TriggerOutOfMemory props, Builder builder, LoadMetrics metrics) throws CollectionProviderException {
+        return completeCore(props, builder, builder.defaults, new HashSet<String>(), metrics);
+    }
+
+    /**
+     * Same as {@link #completeCore(TriggerOutOfMemory, Builder, LoadMetrics)}, with the given defaults. The defaults are shared with the results rather
+     * than copied: each value list is wrapped in a copy-on-write list, so writing to the results never changes the defaults
+     * 
+     * @param props
+     *            the results, already holding the loaded properties
+     * @param builder
+     * @param defaults
+     *            the defaults, or null
+     * @param cleared
+     *            receives the keys that system properties cleared out, which hide any defaults
+     * @param metrics
+     *            the statistics of the load so far, or null
+     * @return
+     * @throws CollectionProviderException
+     */
+    private static TriggerOutOfMemory completeCore(TriggerOutOfMemory props, Builder builder, TriggerOutOfMemory defaults, Set<String> cleared,
+            LoadMetrics metrics) throws CollectionProviderException {
+        long mark = 0;
+        if (metrics != null) {
+            metrics.peak(props.size());
+            mark = System.nanoTime();
+        }
+
+        // System defaults that split into no values clear out a default, as they would have when applied on top of it
+        // The system properties under the prefix are split once in the shared snapshot, which only splits them again after they change
+        Map<String, List<String>> sysprops = null;
+        if ((builder.useSystemPropertiesAsDefaults || builder.loadSystemProperties) && StringUtil.isNotBlank(builder.prefix))
+            sysprops = SystemPropertiesSnapshot.current().withPrefix(builder.prefix);
+
+        // Load system defaults if specified and we have a prefix, without replacing the loaded properties
+        if (builder.useSystemPropertiesAsDefaults && sysprops != null)
+            props.loadPropertyDefaults(sysprops, builder.internPool, cleared);
+
+        // Next, fill in defaults if provided - the loaded properties and system defaults take precedence
+        if (defaults != null) {
+            BiConsumer<String, List<String>> fill = (name, v) -> {
+                if (cleared.contains(name))
+                    return;
+                if (props.containsKey(name))
+                    logger.trace("Keeping loaded value over default {}={}", name, v);
+                else
+                    props.putIfAbsent(name, CopyOnWriteValues.of(v));
+            };
+            if (StringUtil.isBlank(builder.prefix))
+                defaults.forEach(fill);
+            else
+                defaults.scanWithPrefix(builder.prefix, fill);
+        }
+        if (metrics != null) {
+            long now = System.nanoTime();
+            metrics.defaultsNanos = now - mark;
+            mark = now;
+        }
+
+        // Apply system property values if specified and we have a prefix
+        // NOTE: these are *not* defaults, in this case they override the loaded values
+        // NOTE: the delimiter here is always comma
+        if (builder.loadSystemProperties && sysprops != null)
+            props.loadProperties(sysprops, builder.internPool, cleared);
+
+        if (metrics != null) {
+            metrics.systemPropertiesNanos = System.nanoTime() - mark;
+            metrics.count(props);
+            builder.report(metrics);
+        }
+        return props;
+    }
+
+    /**
+     * This is the method that finally performs all of the initialization logic
+     * 
+     * @param reader
+     * @param builder
+     * @param metrics
+     *            the statistics to collect, or null
+     * @param limits
+     *            the limits to enforce, or null
+     * @return
+     * @throws CollectionProviderException
+     */
+    private static TriggerOutOfMemory loadFromReader(BufferedReader reader, Builder builder, TriggerOutOfMemory temploaded, LoadMetrics metrics,
+            LoadLimits limits) throws CollectionProviderException {
+        // Now we go through the reader and add each entry to the target MVP object
+        String line = null;
+        try {
+            // Start by iterating through each line; the timed loop is kept apart so that the plain one stays as tight as possible
+            if (metrics == null) {
+                while ((line = reader.readLine()) != null)
+                    parseLine(line, builder, temploaded, null, limits);
+            } else {
+                long mark = System.nanoTime();
+                while ((line = reader.readLine()) != null) {
+                    long read = System.nanoTime();
+                    metrics.readNanos += read - mark;
+                    parseLine(line, builder, temploaded, metrics, limits);
+                    mark = System.nanoTime();
+                    metrics.parseNanos += mark - read;
                 }
+                metrics.readNanos += System.nanoTime() - mark;
             }
         } catch (IOException ioe) {
             throw new CollectionProviderException(ioe);
@@ -405,6 +1234,288 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         return temploaded;
     }
 
+    /**
+     * Parses a single line read from a Reader and adds the resulting values to the target
+     * 
+     * @param line
+     * @param builder
+     *            the builder holding the delimiter, quoting and deduplication settings
+     * @param temploaded
+     * @param metrics
+     *            the statistics to count the line in, or null
+     * @param limits
+     *            the limits to enforce, or null
+     */
+    static void parseLine(String line, Builder builder, TriggerOutOfMemory temploaded, LoadMetrics metrics, LoadLimits limits) {
+        if (metrics != null)
+            metrics.lines++;
+
+        // ignore blank lines
+        if (line.trim().length() == 0) {
+            if (metrics != null)
+                metrics.skip(LoadMetrics.SkipReason.BLANK);
+            return;
+        }
+
+        // ignore comments
+        if (line.charAt(0) == '#' || line.charAt(0) == '!') {
+            if (metrics != null)
+                metrics.skip(LoadMetrics.SkipReason.COMMENT);
+            return;
+        }
+
+        // ignore lines with no = sign
+        int posOfEq = line.indexOf('=');
+        if (posOfEq == -1 || posOfEq == (line.length() - 1)) {
+            logger.warn("missing '=', ignored line {}", line);
+            if (metrics != null)
+                metrics.skip(LoadMetrics.SkipReason.MISSING_EQUALS);
+            return;
+        }
+
+        // trim property names
+        String name = line.substring(0, posOfEq).trim();
+        String value = line.substring(posOfEq + 1).trim();
+
+        // handle quoted values; in lazy mode they are only validated here and stripped on first access
+        boolean lazy = builder.splitsLazily();
+        if (builder.useQuotedValues) {
+            // Assumes quotes around values - if quotes are missing, we skip
+            int posOfFirstQuote = value.indexOf('\"');
+            if (posOfFirstQuote == -1 || posOfFirstQuote == (value.length() - 1)) {
+                logger.warn("missing '\"' around values, ignored line {}", line);
+                if (metrics != null)
+                    metrics.skip(LoadMetrics.SkipReason.MISSING_QUOTES);
+                return;
+            }
+            int posOfNextQuote = value.indexOf('\"', posOfFirstQuote + 1);
+            if (posOfNextQuote == -1) {
+                logger.warn("missing '\"' around values, ignored line {}", line);
+                if (metrics != null)
+                    metrics.skip(LoadMetrics.SkipReason.MISSING_QUOTES);
+                return;
+            }
+            if (!lazy)
+                value = value.substring(posOfFirstQuote + 1, posOfNextQuote);
+        }
+
+        // if we have a delimiter, apply it to the value
+        name = InternPool.intern(builder.internPool, name);
+        int before = (limits != null) ? LoadLimits.valuesOf(name, temploaded) : 0;
+        if (lazy) {
+            LazyValues.add(name, value, builder.lazySource(), temploaded);
+        } else if (builder.splitter != null) {
+            builder.splitter.splitInto(value, name, temploaded, builder.internPool, limits);
+        } else {
+            logger.trace("Adding {}={}", name, value);
+            temploaded.add(name, InternPool.intern(builder.internPool, value));
+        }
+        if (limits != null)
+            limits.added(name, before, value.length(), temploaded);
+    }
+
+    /**
+     * Returns a writer of multi-valued properties, writing each value on its own line. Use {@link Builder#writer()} for a writer with the delimiter and
+     * quoting of a builder
+     *
+     * @return a {@link PropertiesWriter} object.
+     * @since 3.1.4
+     */
+    public static PropertiesWriter writer() {
+        return new PropertiesWriter();
+    }
+
+    /**
+     * Writes the current entries to a file in UTF-8, each value on its own line, so that {@link Builder#build(String)} reads them back
+     *
+     * @param filePath
+     * @throws CollectionProviderException
+     *             if an entry cannot be written so that it reads back the same, or the file cannot be written
+     * @since 3.1.4
+     */
+    public void store(String filePath) throws CollectionProviderException {
+        writer().write(this, filePath);
+    }
+
+    /**
+     * Returns a compact, read-only snapshot of the current entries. Later changes to this map are not reflected in the snapshot
+     *
+     * @return a {@link ImmutableTriggerOutOfMemory} object.
+     * @since 3.1.4
+     */
+    public ImmutableTriggerOutOfMemory freeze() {
+        return ImmutableTriggerOutOfMemory.copyOf(this);
+    }
+
+    /**
+     * Returns a read-only projection of the current entries that keeps int, long, double and boolean values in primitive arrays, so they are read without
+     * parsing or boxing. Later changes to this map are not reflected in the projection
+     *
+     * @return a {@link TypedTriggerOutOfMemory} object.
+     * @since 3.1.4
+     */
+    public TypedTriggerOutOfMemory toTyped() {
+        return TypedTriggerOutOfMemory.copyOf(this);
+    }
+
+    /**
+     * Writes a binary snapshot of the current entries, which {@link Builder#buildFromSnapshot(String, String)} serves straight from a memory mapping. The
+     * size and checksum of the source file are recorded, so the snapshot is ignored once the source changes. The snapshot is only served to a builder
+     * with the default configuration; use {@link #writeSnapshot(String, String, Builder)} for entries loaded with another one
+     *
+     * @param snapshotPath
+     *            the snapshot file to write
+     * @param sourcePath
+     *            the properties file these entries were loaded from
+     * @throws CollectionProviderException
+     *             if the source cannot be read or the snapshot cannot be written
+     * @since 3.1.4
+     */
+    public void writeSnapshot(String snapshotPath, String sourcePath) throws CollectionProviderException {
+        writeSnapshot(snapshotPath, sourcePath, builder());
+    }
+
+    /**
+     * Writes a binary snapshot of the current entries, recording the configuration of the builder they were loaded with, so the snapshot is only served
+     * to a builder with the same configuration
+     *
+     * @param snapshotPath
+     *            the snapshot file to write
+     * @param sourcePath
+     *            the properties file these entries were loaded from
+     * @param builder
+     *            the builder these entries were loaded with
+     * @throws CollectionProviderException
+     *             if the source cannot be read or the snapshot cannot be written
+     * @since 3.1.4
+     */
+    public void writeSnapshot(String snapshotPath, String sourcePath, Builder builder) throws CollectionProviderException {
+        if (snapshotPath == null || sourcePath == null)
+            throw new CollectionProviderException("No file path specified");
+        if (builder == null)
+            throw new CollectionProviderException("No builder specified");
+        try {
+            FileState state = FileState.of(FileSystems.getDefault().getPath(sourcePath));
+            SnapshotTriggerOutOfMemory.write(this, FileSystems.getDefault().getPath(snapshotPath), state, builder.fingerprint());
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        }
+    }
+
+    /**
+     * Returns a thread-safe copy of the current entries, for sharing between threads
+     *
+     * @return a {@link ConcurrentTriggerOutOfMemory} object.
+     * @since 3.1.4
+     */
+    public ConcurrentTriggerOutOfMemory toConcurrent() {
+        return new ConcurrentTriggerOutOfMemory(this);
+    }
+
+    /**
+     * Returns a live, read-only view of the entries whose keys start with the prefix, with the prefix stripped from the keys. Nothing is copied; the view
+     * is backed by a sorted index of the keys, which is built on the first call and then maintained as keys are added, so later calls take O(log n +
+     * matches)
+     *
+     * @param prefix
+     *            the prefix, which is matched as is
+     * @return a {@link PrefixView} object.
+     * @since 3.1.4
+     */
+    public PrefixView subView(String prefix) {
+        if (prefix == null)
+            throw new NullPointerException("prefix");
+        return new PrefixView(this, prefix);
+    }
+
+    /**
+     * Returns the sorted key index, building it if needed. Null keys are not indexed. The index may still hold keys that were removed through the views of
+     * the map or its iterators, so callers check each key against the map; once it holds more such keys than the map holds keys, it is rebuilt
+     */
+    NavigableSet<String> keyIndex() {
+        TreeSet<String> index = keyIndex;
+        if (index == null || isStale(index)) {
+            index = new TreeSet<String>();
+            for (String key : keySet())
+                if (key != null)
+                    index.add(key);
+            keyIndex = index;
+        }
+        return index;
+    }
+
+    private boolean isStale(TreeSet<String> index) {
+        // the slack keeps a small map from rebuilding its index on every change
+        return index.size() > 2 * size() + 16;
+    }
+
+    /**
+     * Calls the action with the prefix-stripped key and the values of every entry whose key starts with the prefix, in key order
+     */
+    void forEachWithPrefix(String prefix, BiConsumer<String, List<String>> action) {
+        forEachWithPrefix(keyIndex(), prefix, action);
+    }
+
+    private void forEachWithPrefix(NavigableSet<String> index, String prefix, BiConsumer<String, List<String>> action) {
+        for (String key : index.tailSet(prefix)) {
+            if (!key.startsWith(prefix))
+                break;
+            List<String> values = get(key);
+            if (values != null || containsKey(key))
+                action.accept(key.substring(prefix.length()), values);
+        }
+    }
+
+    /**
+     * Calls the action like {@link #forEachWithPrefix(String, BiConsumer)}, but never builds or rebuilds the key index: the index is used as it is if there
+     * is one, as it is for defaults, which {@link Builder#defaults(TriggerOutOfMemory)} indexes; otherwise all the entries are scanned. Used on maps shared
+     * between builds, which are only read and may be read by several threads at once
+     */
+    void scanWithPrefix(String prefix, BiConsumer<String, List<String>> action) {
+        TreeSet<String> index = keyIndex;
+        if (index != null) {
+            forEachWithPrefix(index, prefix, action);
+            return;
+        }
+        for (Map.Entry<String, List<String>> entry : entrySet()) {
+            String key = entry.getKey();
+            if (key != null && key.startsWith(prefix))
+                action.accept(key.substring(prefix.length()), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds a key to the index, if there is one, before it is added to the map. An index holding more removed keys than the map holds keys is rebuilt first,
+     * so a map whose keys keep changing does not grow its index without bound
+     */
+    private void index(String key) {
+        TreeSet<String> index = keyIndex;
+        if (index == null || key == null)
+            return;
+        if (isStale(index))
+            index = (TreeSet<String>) keyIndex();
+        index.add(key);
+    }
+
+    /**
+     * Removes a key from the index, if there is one, after it may have been removed from the map
+     */
+    private void unindexIfAbsent(String key) {
+        TreeSet<String> index = keyIndex;
+        if (index != null && key != null && !containsKey(key))
+            index.remove(key);
+    }
+
+    /**
+     * Returns the estimated heap size of the map structure: the table, its nodes and the value lists. The key and value Strings are not included
+     *
+     * @return the estimated size in bytes
+     * @since 3.1.4
+     */
+    public long estimatedSize() {
+        return MemoryEstimator.hashMapStructure(this);
+    }
+
     /**
      * Method getFirstValue.
      *
@@ -438,7 +1549,7 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
     }
 
     /**
-     * Method getFirstValueAsInt.
+     * Method getFirstValueAsInt. The parsed value is cached until the key is changed
      *
      * @param key
      *            String
@@ -451,7 +1562,7 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         List<String> values = get(key);
         if ((values == null) || (values.size() == 0))
             throw new NumberFormatException("Value for key " + key + " is null or blank");
-        return Integer.parseInt(values.get(0));
+        return intValue(key, values.get(0));
     }
 
     /**
@@ -470,7 +1581,158 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         List<String> values = get(key);
         if ((values == null) || (values.size() == 0))
             return defaultValue;
-        return Integer.parseInt(values.get(0));
+        return intValue(key, values.get(0));
+    }
+
+    /**
+     * Method getFirstValueAsLong. The parsed value is cached until the key is changed
+     *
+     * @param key
+     *            String
+     * @return long
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a long
+     * @since 3.1.4
+     */
+    public long getFirstValueAsLong(String key) throws NumberFormatException {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return longValue(key, values.get(0));
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a long.
+     * @return long
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a long
+     * @since 3.1.4
+     */
+    public long getFirstValueAsLong(String key, long defaultValue) throws NumberFormatException {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            return defaultValue;
+        return longValue(key, values.get(0));
+    }
+
+    /**
+     * Method getFirstValueAsDouble. The parsed value is cached until the key is changed
+     *
+     * @param key
+     *            String
+     * @return double
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a double
+     * @since 3.1.4
+     */
+    public double getFirstValueAsDouble(String key) throws NumberFormatException {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return doubleValue(key, values.get(0));
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a double.
+     * @return double
+     * @throws java.lang.NumberFormatException
+     *             if the value is not a double
+     * @since 3.1.4
+     */
+    public double getFirstValueAsDouble(String key, double defaultValue) throws NumberFormatException {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            return defaultValue;
+        return doubleValue(key, values.get(0));
+    }
+
+    /**
+     * Method getFirstValueAsDuration. The value is either an ISO-8601 duration such as PT30S, or a number of milliseconds. The parsed value is cached until
+     * the key is changed
+     *
+     * @param key
+     *            String
+     * @return a {@link java.time.Duration} object.
+     * @throws java.lang.NumberFormatException
+     *             if there is no value
+     * @throws java.time.format.DateTimeParseException
+     *             if the value is not a duration
+     * @since 3.1.4
+     */
+    public Duration getFirstValueAsDuration(String key) throws NumberFormatException {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return durationValue(key, values.get(0));
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            a {@link java.time.Duration} object.
+     * @return a {@link java.time.Duration} object.
+     * @throws java.time.format.DateTimeParseException
+     *             if the value is not a duration
+     * @since 3.1.4
+     */
+    public Duration getFirstValueAsDuration(String key, Duration defaultValue) {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            return defaultValue;
+        return durationValue(key, values.get(0));
+    }
+
+    /**
+     * Method getFirstValueAsEnum. The value must match the name of a constant exactly. The constant is cached until the key is changed
+     *
+     * @param key
+     *            String
+     * @param type
+     *            the enum type
+     * @return the enum constant
+     * @throws java.lang.NumberFormatException
+     *             if there is no value
+     * @throws java.lang.IllegalArgumentException
+     *             if the value is not a constant of the enum type
+     * @since 3.1.4
+     */
+    public <E extends Enum<E>> E getFirstValueAsEnum(String key, Class<E> type) throws NumberFormatException {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return enumValue(key, values.get(0), type);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     *            String
+     * @param defaultValue
+     *            the default enum constant, which also determines the enum type
+     * @return the enum constant
+     * @throws java.lang.IllegalArgumentException
+     *             if the value is not a constant of the enum type
+     * @since 3.1.4
+     */
+    public <E extends Enum<E>> E getFirstValueAsEnum(String key, E defaultValue) {
+        List<String> values = get(key);
+        if ((values == null) || (values.size() == 0))
+            return defaultValue;
+        return enumValue(key, values.get(0), defaultValue.getDeclaringClass());
     }
 
     /**
@@ -487,7 +1749,10 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         List<String> values = get(key);
         if ((values == null) || (values.size() == 0))
             throw new NumberFormatException("Value for key " + key + " is null or blank");
-        return Boolean.valueOf(values.get(0));
+        TypedValue typed = cachedValue(key, values.get(0), TypedValue.Kind.BOOLEAN);
+        if (typed == null)
+            typed = cacheValue(key, new TypedValue(values.get(0), TypedValue.Kind.BOOLEAN, Boolean.valueOf(values.get(0)) ? 1 : 0, null));
+        return typed.bits != 0;
     }
 
     /**
@@ -504,7 +1769,96 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         List<String> values = get(key);
         if ((values == null) || (values.size() == 0))
             return defaultValue;
-        return (Boolean.valueOf(values.get(0)) || YES.equalsIgnoreCase(values.get(0)));
+        TypedValue typed = cachedValue(key, values.get(0), TypedValue.Kind.LENIENT_BOOLEAN);
+        if (typed == null) {
+            boolean parsed = BooleanValues.isTrue(values.get(0));
+            typed = cacheValue(key, new TypedValue(values.get(0), TypedValue.Kind.LENIENT_BOOLEAN, parsed ? 1 : 0, null));
+        }
+        return typed.bits != 0;
+    }
+
+    private int intValue(String key, String value) {
+        TypedValue typed = cachedValue(key, value, TypedValue.Kind.INT);
+        if (typed == null)
+            typed = cacheValue(key, new TypedValue(value, TypedValue.Kind.INT, Integer.parseInt(value), null));
+        return (int) typed.bits;
+    }
+
+    private long longValue(String key, String value) {
+        TypedValue typed = cachedValue(key, value, TypedValue.Kind.LONG);
+        if (typed == null)
+            typed = cacheValue(key, new TypedValue(value, TypedValue.Kind.LONG, Long.parseLong(value), null));
+        return typed.bits;
+    }
+
+    private double doubleValue(String key, String value) {
+        TypedValue typed = cachedValue(key, value, TypedValue.Kind.DOUBLE);
+        if (typed == null)
+            typed = cacheValue(key, new TypedValue(value, TypedValue.Kind.DOUBLE, Double.doubleToRawLongBits(Double.parseDouble(value)), null));
+        return Double.longBitsToDouble(typed.bits);
+    }
+
+    private Duration durationValue(String key, String value) {
+        TypedValue typed = cachedValue(key, value, TypedValue.Kind.DURATION);
+        if (typed == null)
+            typed = cacheValue(key, new TypedValue(value, TypedValue.Kind.DURATION, 0, Durations.parse(value)));
+        return (Duration) typed.object;
+    }
+
+    private <E extends Enum<E>> E enumValue(String key, String value, Class<E> type) {
+        TypedValue typed = cachedValue(key, value, type);
+        if (typed == null)
+            typed = cacheValue(key, new TypedValue(value, type, 0, Enum.valueOf(type, value)));
+        return type.cast(typed.object);
+    }
+
+    /**
+     * Returns the cached value of the given kind if it was parsed from this very String instance, otherwise null
+     */
+    private TypedValue cachedValue(String key, String value, Object kind) {
+        ConcurrentHashMap<String, TypedValue> cache = typedCache;
+        if (cache == null || key == null)
+            return null;
+        TypedValue typed = cache.get(key);
+        return (typed != null && typed.source == value && typed.kind == kind) ? typed : null;
+    }
+
+    private TypedValue cacheValue(String key, TypedValue typed) {
+        if (key == null || typed.source == null)
+            return typed;
+        ConcurrentHashMap<String, TypedValue> cache = typedCache;
+        if (cache == null)
+            typedCache = cache = new ConcurrentHashMap<String, TypedValue>();
+        cache.put(key, typed);
+        return typed;
+    }
+
+    private void invalidate(Object key) {
+        ConcurrentHashMap<String, TypedValue> cache = typedCache;
+        if (cache != null && key != null)
+            cache.remove(key);
+    }
+
+    /**
+     * A value parsed from the first value of a key. A cached value is only used while the key's first value is still the same String instance, so it can
+     * never be stale, even if the value list is changed directly. Instances are immutable, so they can be shared by concurrent readers.
+     */
+    private static final class TypedValue {
+        enum Kind {
+            INT, LONG, DOUBLE, BOOLEAN, LENIENT_BOOLEAN, DURATION
+        }
+
+        final String source;
+        final Object kind;
+        final long   bits;
+        final Object object;
+
+        TypedValue(String source, Object kind, long bits, Object object) {
+            this.source = source;
+            this.kind = kind;
+            this.bits = bits;
+            this.object = object;
+        }
     }
 
     /**
@@ -526,6 +1880,95 @@ public class TriggerOutOfMemory extends HashMap<String, List<String>> implements
         return existingValues.add(value);
     }
 
+    @Override
+    public List<String> put(String key, List<String> value) {
+        invalidate(key);
+        index(key);
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends List<String>> m) {
+        if (typedCache != null)
+            m.keySet().forEach(this::invalidate);
+        if (keyIndex != null)
+            m.keySet().forEach(this::index);
+        super.putAll(m);
+    }
+
+    @Override
+    public List<String> putIfAbsent(String key, List<String> value) {
+        index(key);
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public List<String> computeIfAbsent(String key, Function<? super String, ? extends List<String>> mappingFunction) {
+        index(key);
+        List<String> values = super.computeIfAbsent(key, mappingFunction);
+        if (values == null)
+            unindexIfAbsent(key);
+        return values;
+    }
+
+    @Override
+    public List<String> compute(String key, BiFunction<? super String, ? super List<String>, ? extends List<String>> remappingFunction) {
+        index(key);
+        List<String> values = super.compute(key, remappingFunction);
+        if (values == null)
+            unindexIfAbsent(key);
+        return values;
+    }
+
+    @Override
+    public List<String> computeIfPresent(String key, BiFunction<? super String, ? super List<String>, ? extends List<String>> remappingFunction) {
+        List<String> values = super.computeIfPresent(key, remappingFunction);
+        if (values == null)
+            unindexIfAbsent(key);
+        return values;
+    }
+
+    @Override
+    public List<String> merge(String key, List<String> value, BiFunction<? super List<String>, ? super List<String>, ? extends List<String>> remappingFunction) {
+        index(key);
+        List<String> values = super.merge(key, value, remappingFunction);
+        if (values == null)
+            unindexIfAbsent(key);
+        return values;
+    }
+
+    @Override
+    public List<String> remove(Object key) {
+        invalidate(key);
+        TreeSet<String> index = keyIndex;
+        if (index != null && key instanceof String)
+            index.remove(key);
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        typedCache = null;
+        keyIndex = null;
+        super.clear();
+    }
+
+    /**
+     * Returns a copy of this map, which takes time in proportion to its size as with any {@link HashMap}. Cloning only reads this map, so maps shared
+     * read-only between threads can be cloned concurrently: this map and its lists are left untouched. The clone holds a copy-on-write list over each
+     * list of this map, so the first write through the clone copies the values and changing the clone never changes this map. The lists of this map are
+     * not copy-on-write: changes made to them in place are seen by the clone until it writes that key itself. For constant time copies of a large map,
+     * freeze it once and derive each copy with {@link ImmutableTriggerOutOfMemory#overlay()}
+     */
+    @Override
+    public Object clone() {
+        TriggerOutOfMemory clone = (TriggerOutOfMemory) super.clone();
+        clone.typedCache = null;
+        clone.keyIndex = null;
+        clone.replaceAll((key, values) -> CopyOnWriteValues.of(values));
+        return clone;
+    }
+
     /**
      * Puts a single value, replacing any/all existing values
      *
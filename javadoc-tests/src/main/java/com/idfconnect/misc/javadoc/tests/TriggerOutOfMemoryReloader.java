@@ -0,0 +1,280 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Holds a {@link TriggerOutOfMemory} built from a file and keeps it up to date as the file changes.
+ * <p>
+ * Changes are detected either by polling ({@link #startPolling(long, TimeUnit)}) or with a {@link WatchService} ({@link #startWatching()}), only one of
+ * which can be started. A file whose size and modification time are unchanged is not read at all, and a file whose checksum is unchanged is not
+ * re-parsed. The checksum is streamed through a small buffer that is reused by every check, so a file that is only touched is never held in memory. A
+ * file whose contents changed is read into the heap once and parsed from those bytes on the calling thread, whatever the parallelism and memory mapping
+ * of the builder: the file is expected to be edited in place, and a mapping of a file truncated while it is parsed fails with an {@link InternalError}.
+ * The recorded state is taken from the parsed bytes, so it always matches the published map, and a file is limited to 2GB. As modification times have
+ * a granularity, a file modified within two seconds of a check is checksummed again by the next check even if its size and modification time are
+ * unchanged. The new map is built on the reload thread and published with an atomic reference swap, so readers of {@link #get()} always see either the
+ * previous or the new map in full. Listeners are notified with the set of keys whose values changed. A failed check, whatever it throws, is logged and
+ * the background thread keeps checking.
+ * </p>
+ * <p>
+ * The published maps must be treated as read-only.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public class TriggerOutOfMemoryReloader implements Closeable {
+    private static final Logger                       logger    = LoggerFactory.getLogger(TriggerOutOfMemoryReloader.class);
+
+    private final TriggerOutOfMemory.Builder          builder;
+    private final Path                                path;
+    private final AtomicReference<TriggerOutOfMemory> current   = new AtomicReference<TriggerOutOfMemory>();
+    private final List<Listener>                      listeners = new CopyOnWriteArrayList<Listener>();
+    private final ScheduledExecutorService            executor;
+    private final AtomicBoolean                       started   = new AtomicBoolean();
+    /** The buffer the checksums are computed through, only used while holding the lock of this reloader */
+    private final ByteBuffer                          scratch   = ByteBuffer.allocate(FileState.CHECKSUM_BUFFER);
+    private volatile FileState                        state;
+    private volatile WatchService                     watchService;
+
+    /**
+     * Notified after a new map has been published
+     */
+    public interface Listener {
+        /**
+         * @param previous
+         *            the previously published map
+         * @param current
+         *            the newly published map
+         * @param changedKeys
+         *            the keys that were added, removed or whose values changed
+         */
+        void reloaded(TriggerOutOfMemory previous, TriggerOutOfMemory current, Set<String> changedKeys);
+    }
+
+    /**
+     * Creates the reloader and performs the initial load on the calling thread
+     *
+     * @param builder
+     *            the builder used for every (re)load; it must not be changed afterwards
+     * @param filePath
+     * @throws CollectionProviderException
+     *             if the initial load fails
+     */
+    public TriggerOutOfMemoryReloader(TriggerOutOfMemory.Builder builder, String filePath) throws CollectionProviderException {
+        if (filePath == null)
+            throw new CollectionProviderException("No file path specified");
+        this.builder = builder;
+        this.path = FileSystems.getDefault().getPath(filePath);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TriggerOutOfMemoryReloader-" + path.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            current.set(load());
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        }
+    }
+
+    /**
+     * Returns the most recently published map
+     *
+     * @return
+     */
+    public TriggerOutOfMemory get() {
+        return current.get();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Checks the file for changes at a fixed rate on a background thread
+     *
+     * @param period
+     * @param unit
+     * @throws IllegalStateException
+     *             if polling or watching was already started
+     */
+    public void startPolling(long period, TimeUnit unit) {
+        start();
+        executor.scheduleWithFixedDelay(this::reloadQuietly, period, period, unit);
+    }
+
+    /**
+     * Watches the directory of the file and checks it for changes whenever the directory reports an event for it. The watch blocks the background thread
+     * for as long as the reloader is open
+     *
+     * @throws CollectionProviderException
+     *             if the watch service cannot be created
+     * @throws IllegalStateException
+     *             if polling or watching was already started
+     */
+    public void startWatching() throws CollectionProviderException {
+        start();
+        Path directory = path.toAbsolutePath().getParent();
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ioe) {
+            started.set(false);
+            throw new CollectionProviderException(ioe);
+        }
+        executor.execute(this::watch);
+    }
+
+    /**
+     * Claims the single background thread, which a watch would block and a poll could then never run on
+     */
+    private void start() {
+        if (!started.compareAndSet(false, true))
+            throw new IllegalStateException("Already polling or watching " + path);
+    }
+
+    private void watch() {
+        Path name = path.getFileName();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents())
+                    relevant |= (event.kind() == StandardWatchEventKinds.OVERFLOW) || name.equals(event.context());
+                key.reset();
+                if (relevant)
+                    reloadQuietly();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Stopped watching {}", path);
+        }
+    }
+
+    /**
+     * Checks the file and, if its contents changed, rebuilds and publishes the map. This may be called directly, although it is normally called by the
+     * background thread
+     *
+     * @return true if a new map was published
+     * @throws CollectionProviderException
+     *             if the file cannot be read or parsed; the previous map stays published
+     */
+    public synchronized boolean reload() throws CollectionProviderException {
+        try {
+            FileState previousState = state;
+            if (previousState.isUnchanged(path))
+                return false;
+            FileState touchedState = FileState.of(path, scratch);
+            if (touchedState.hasSameContents(previousState)) {
+                logger.debug("{} was touched but its contents are unchanged", path);
+                state = touchedState;
+                return false;
+            }
+            TriggerOutOfMemory rebuilt = load();
+            TriggerOutOfMemory previous = current.getAndSet(rebuilt);
+            notifyListeners(previous, rebuilt);
+            return true;
+        } catch (IOException ioe) {
+            throw new CollectionProviderException(ioe);
+        }
+    }
+
+    /**
+     * Reads the file into the heap and builds it from those bytes, recording their state. The modification time is taken before reading, so a write that
+     * lands during the read is seen again by the next check
+     */
+    private TriggerOutOfMemory load() throws IOException, CollectionProviderException {
+        long takenAt = System.currentTimeMillis();
+        long lastModified = FileState.lastModified(path);
+        ByteBuffer contents = FileState.read(path);
+        TriggerOutOfMemory loaded = builder.build(contents);
+        state = FileState.of(contents, lastModified, takenAt);
+        return loaded;
+    }
+
+    /**
+     * Runs a check on the background thread. Nothing it throws may escape, as an exception thrown by a scheduled task cancels all its later runs
+     */
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (CollectionProviderException | RuntimeException e) {
+            logger.warn("Failed to reload {}, keeping the previous properties", path, e);
+        } catch (Throwable t) {
+            logger.error("Failed to reload {}, keeping the previous properties", path, t);
+        }
+    }
+
+    private void notifyListeners(TriggerOutOfMemory previous, TriggerOutOfMemory rebuilt) {
+        if (listeners.isEmpty())
+            return;
+        Set<String> changedKeys = Collections.unmodifiableSet(changedKeys(previous, rebuilt));
+        for (Listener listener : listeners) {
+            try {
+                listener.reloaded(previous, rebuilt, changedKeys);
+            } catch (RuntimeException e) {
+                logger.warn("Reload listener {} failed", listener, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys that were added, removed or whose values differ between the two maps
+     *
+     * @param previous
+     * @param current
+     * @return
+     */
+    static Set<String> changedKeys(TriggerOutOfMemory previous, TriggerOutOfMemory current) {
+        Set<String> changed = new HashSet<String>();
+        previous.forEach((k, v) -> {
+            if (!Objects.equals(v, current.get(k)))
+                changed.add(k);
+        });
+        current.keySet().forEach(k -> {
+            if (!previous.containsKey(k))
+                changed.add(k);
+        });
+        return changed;
+    }
+
+    /**
+     * Stops the background thread and the watch service, if any
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        if (watchService != null)
+            watchService.close();
+    }
+}
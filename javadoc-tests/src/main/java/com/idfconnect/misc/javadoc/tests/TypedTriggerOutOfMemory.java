@@ -0,0 +1,624 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A read-only projection of a {@link TriggerOutOfMemory} that keeps numeric and boolean values unboxed, created with
+ * {@link TriggerOutOfMemory#toTyped()}.
+ * <p>
+ * Each key is stored in one of five columns, chosen from all of its values: int, long, double, boolean or String. A value only goes into a primitive
+ * column if it is written exactly as the column would print it (for example "42", "-7", "1.5" or "true", but not "042", "+1", "1.50" or "TRUE"), so the
+ * Strings returned by {@link #get(Object)} are always equal to the loaded ones. A key whose values do not all fit the same primitive column keeps them as
+ * Strings; int and long values are combined in the long column.
+ * </p>
+ * <p>
+ * The keys are indexed by an open-addressed hash table holding their hash codes, and each key addresses a slice of its column.
+ * {@link #getInt(String)} and the other primitive getters read straight from the column without parsing or boxing. They also accept keys held in other
+ * columns, which are then parsed as {@link #getFirstValueAsInt(String)} and the like would. The Strings of values in primitive columns are created on
+ * access.
+ * </p>
+ *
+ * @since 3.1.4
+ */
+public final class TypedTriggerOutOfMemory extends AbstractMap<String, List<String>> implements MultiValuedLookup {
+    private static final byte                    INT     = 0;
+    private static final byte                    LONG    = 1;
+    private static final byte                    DOUBLE  = 2;
+    private static final byte                    BOOLEAN = 3;
+    private static final byte                    STRING  = 4;
+
+    private final String[]                       keys;
+    private final byte[]                         kinds;
+    private final int[]                          starts;
+    private final int[]                          counts;
+    private final int[]                          ints;
+    private final long[]                         longs;
+    private final double[]                       doubles;
+    private final boolean[]                      booleans;
+    private final String[]                       strings;
+    private final int[]                          table;
+    private final int                            shift;
+    private Set<Map.Entry<String, List<String>>> entrySet;
+
+    private TypedTriggerOutOfMemory(Map<String, List<String>> props) {
+        int size = props.size();
+        keys = new String[size];
+        kinds = new byte[size];
+        starts = new int[size];
+        counts = new int[size];
+
+        // the column of each key is chosen first, so every column can be allocated at its exact size
+        int[] columnSizes = new int[STRING + 1];
+        int i = 0;
+        for (Map.Entry<String, List<String>> entry : props.entrySet()) {
+            if (entry.getKey() == null)
+                throw new NullPointerException("Null keys cannot be typed");
+            List<String> values = entry.getValue();
+            byte kind = STRING;
+            int count = (values != null) ? values.size() : 0;
+            if (count > 0) {
+                kind = kindOf(values.get(0));
+                for (int j = 1; j < count && kind != STRING; j++)
+                    kind = combine(kind, kindOf(values.get(j)));
+            }
+            keys[i] = entry.getKey();
+            kinds[i] = kind;
+            counts[i] = count;
+            starts[i] = columnSizes[kind];
+            columnSizes[kind] += count;
+            i++;
+        }
+        ints = new int[columnSizes[INT]];
+        longs = new long[columnSizes[LONG]];
+        doubles = new double[columnSizes[DOUBLE]];
+        booleans = new boolean[columnSizes[BOOLEAN]];
+        strings = new String[columnSizes[STRING]];
+
+        i = 0;
+        for (List<String> values : props.values()) {
+            for (int j = 0, at = starts[i]; j < counts[i]; j++, at++) {
+                String value = values.get(j);
+                switch (kinds[i]) {
+                case INT:
+                    ints[at] = Integer.parseInt(value);
+                    break;
+                case LONG:
+                    longs[at] = Long.parseLong(value);
+                    break;
+                case DOUBLE:
+                    doubles[at] = Double.parseDouble(value);
+                    break;
+                case BOOLEAN:
+                    booleans[at] = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    strings[at] = value;
+                }
+            }
+            i++;
+        }
+
+        // size the table for a load factor of at most 0.5; each slot holds the hash and the index of a key, so a probe only reads the key on a hash match
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        table = new int[2 * capacity];
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        for (i = 0; i < size; i++) {
+            int hash = keys[i].hashCode();
+            int slot = slotOf(hash);
+            while (table[2 * slot + 1] != 0)
+                slot = (slot + 1) & (capacity - 1);
+            table[2 * slot] = hash;
+            table[2 * slot + 1] = i + 1;
+        }
+    }
+
+    /**
+     * Returns the home slot of a hash. The multiplicative hash spreads keys that only differ in their last characters, whose String hashes are
+     * consecutive, across the table instead of into one run of slots
+     */
+    private int slotOf(int hash) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Creates a typed projection of the given properties. Null keys are not supported
+     *
+     * @param props
+     * @return
+     */
+    static TypedTriggerOutOfMemory copyOf(Map<String, List<String>> props) {
+        return new TypedTriggerOutOfMemory(props);
+    }
+
+    /**
+     * Returns the column a single value fits in, which is a primitive column only if the value prints back exactly as it was written
+     */
+    private static byte kindOf(String value) {
+        if (value == null || value.isEmpty())
+            return STRING;
+        if (isCanonicalInteger(value)) {
+            try {
+                long parsed = Long.parseLong(value);
+                return (parsed == (int) parsed) ? INT : LONG;
+            } catch (NumberFormatException e) {
+                // beyond the range of a long
+                return STRING;
+            }
+        }
+        if ("true".equals(value) || "false".equals(value))
+            return BOOLEAN;
+        char first = value.charAt(0);
+        if ((first >= '0' && first <= '9') || first == '-' || first == 'N' || first == 'I') {
+            try {
+                return Double.toString(Double.parseDouble(value)).equals(value) ? DOUBLE : STRING;
+            } catch (NumberFormatException e) {
+                return STRING;
+            }
+        }
+        return STRING;
+    }
+
+    /**
+     * Returns true if the value is an optional minus sign and up to 19 digits, without leading zeros or a negative zero
+     */
+    private static boolean isCanonicalInteger(String value) {
+        int length = value.length();
+        int start = (value.charAt(0) == '-') ? 1 : 0;
+        if (length == start || length - start > 19)
+            return false;
+        if (value.charAt(start) == '0' && (length - start > 1 || start == 1))
+            return false;
+        for (int i = start; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch < '0' || ch > '9')
+                return false;
+        }
+        return true;
+    }
+
+    private static byte combine(byte kind, byte other) {
+        if (kind == other)
+            return kind;
+        if ((kind == INT && other == LONG) || (kind == LONG && other == INT))
+            return LONG;
+        return STRING;
+    }
+
+    /**
+     * Returns the index of the key, or -1 if it is not present
+     */
+    private int indexOf(Object key) {
+        if (!(key instanceof String))
+            return -1;
+        int hash = key.hashCode();
+        int mask = (table.length >>> 1) - 1;
+        int slot = slotOf(hash);
+        int entry;
+        while ((entry = table[2 * slot + 1]) != 0) {
+            if (table[2 * slot] == hash && keys[entry - 1].equals(key))
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the key if it has a first value, otherwise throws the same exception as {@link #getFirstValueAsInt(String)}
+     */
+    private int indexOfValue(String key) {
+        int index = indexOf(key);
+        if (index == -1 || counts[index] == 0 || (kinds[index] == STRING && strings[starts[index]] == null))
+            throw new NumberFormatException("Value for key " + key + " is null or blank");
+        return index;
+    }
+
+    /**
+     * Returns true if the key has a non-null first value
+     */
+    private boolean hasValue(int index) {
+        return index != -1 && counts[index] > 0 && (kinds[index] != STRING || strings[starts[index]] != null);
+    }
+
+    /**
+     * Returns the value of the key at the position as a String
+     */
+    private String valueAt(int index, int position) {
+        int at = starts[index] + position;
+        switch (kinds[index]) {
+        case INT:
+            return Integer.toString(ints[at]);
+        case LONG:
+            return Long.toString(longs[at]);
+        case DOUBLE:
+            return Double.toString(doubles[at]);
+        case BOOLEAN:
+            return Boolean.toString(booleans[at]);
+        default:
+            return strings[at];
+        }
+    }
+
+    private List<String> valuesAt(int index) {
+        int count = counts[index];
+        if (count == 1)
+            return Collections.singletonList(valueAt(index, 0));
+        return (count == 0) ? Collections.<String> emptyList() : new Column(index);
+    }
+
+    @Override
+    public List<String> get(Object key) {
+        int index = indexOf(key);
+        return (index == -1) ? null : valuesAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public String getFirstValue(String key) {
+        int index = indexOf(key);
+        return (index == -1 || counts[index] == 0) ? null : valueAt(index, 0);
+    }
+
+    /**
+     * Returns the first value of the key as an int. Values in the int column are read without parsing
+     *
+     * @param key
+     * @return
+     * @throws NumberFormatException
+     *             if there is no value, or it is not an integer
+     */
+    public int getInt(String key) throws NumberFormatException {
+        int index = indexOfValue(key);
+        return (kinds[index] == INT) ? ints[starts[index]] : Integer.parseInt(valueAt(index, 0));
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     * @throws NumberFormatException
+     *             if the value is not an integer
+     */
+    public int getInt(String key, int defaultValue) throws NumberFormatException {
+        return hasValue(indexOf(key)) ? getInt(key) : defaultValue;
+    }
+
+    /**
+     * Returns all values of the key as ints, in a new array
+     *
+     * @param key
+     * @return the values, or null if the key is not present
+     * @throws NumberFormatException
+     *             if a value is not an integer
+     */
+    public int[] getIntValues(String key) throws NumberFormatException {
+        int index = indexOf(key);
+        if (index == -1)
+            return null;
+        if (kinds[index] == INT)
+            return Arrays.copyOfRange(ints, starts[index], starts[index] + counts[index]);
+        int[] values = new int[counts[index]];
+        for (int i = 0; i < values.length; i++)
+            values[i] = Integer.parseInt(valueAt(index, i));
+        return values;
+    }
+
+    /**
+     * Returns the first value of the key as a long. Values in the int and long columns are read without parsing
+     *
+     * @param key
+     * @return
+     * @throws NumberFormatException
+     *             if there is no value, or it is not a long
+     */
+    public long getLong(String key) throws NumberFormatException {
+        int index = indexOfValue(key);
+        switch (kinds[index]) {
+        case INT:
+            return ints[starts[index]];
+        case LONG:
+            return longs[starts[index]];
+        default:
+            return Long.parseLong(valueAt(index, 0));
+        }
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     * @throws NumberFormatException
+     *             if the value is not a long
+     */
+    public long getLong(String key, long defaultValue) throws NumberFormatException {
+        return hasValue(indexOf(key)) ? getLong(key) : defaultValue;
+    }
+
+    /**
+     * Returns all values of the key as longs, in a new array
+     *
+     * @param key
+     * @return the values, or null if the key is not present
+     * @throws NumberFormatException
+     *             if a value is not a long
+     */
+    public long[] getLongValues(String key) throws NumberFormatException {
+        int index = indexOf(key);
+        if (index == -1)
+            return null;
+        if (kinds[index] == LONG)
+            return Arrays.copyOfRange(longs, starts[index], starts[index] + counts[index]);
+        long[] values = new long[counts[index]];
+        for (int i = 0; i < values.length; i++)
+            values[i] = (kinds[index] == INT) ? ints[starts[index] + i] : Long.parseLong(valueAt(index, i));
+        return values;
+    }
+
+    /**
+     * Returns the first value of the key as a double. Values in the numeric columns are read without parsing
+     *
+     * @param key
+     * @return
+     * @throws NumberFormatException
+     *             if there is no value, or it is not a double
+     */
+    public double getDouble(String key) throws NumberFormatException {
+        int index = indexOfValue(key);
+        return doubleAt(index, 0);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     * @throws NumberFormatException
+     *             if the value is not a double
+     */
+    public double getDouble(String key, double defaultValue) throws NumberFormatException {
+        return hasValue(indexOf(key)) ? getDouble(key) : defaultValue;
+    }
+
+    /**
+     * Returns all values of the key as doubles, in a new array
+     *
+     * @param key
+     * @return the values, or null if the key is not present
+     * @throws NumberFormatException
+     *             if a value is not a double
+     */
+    public double[] getDoubleValues(String key) throws NumberFormatException {
+        int index = indexOf(key);
+        if (index == -1)
+            return null;
+        if (kinds[index] == DOUBLE)
+            return Arrays.copyOfRange(doubles, starts[index], starts[index] + counts[index]);
+        double[] values = new double[counts[index]];
+        for (int i = 0; i < values.length; i++)
+            values[i] = doubleAt(index, i);
+        return values;
+    }
+
+    private double doubleAt(int index, int position) {
+        int at = starts[index] + position;
+        switch (kinds[index]) {
+        case INT:
+            return ints[at];
+        case LONG:
+            // the conversion rounds to the nearest double, as parsing the decimal String would
+            return longs[at];
+        case DOUBLE:
+            return doubles[at];
+        default:
+            return Double.parseDouble(valueAt(index, position));
+        }
+    }
+
+    /**
+     * Returns the first value of the key as a boolean, which is true only for "true" in any case. Values in the boolean column are read without parsing
+     *
+     * @param key
+     * @return
+     * @throws NumberFormatException
+     *             if there is no value
+     */
+    public boolean getBoolean(String key) throws NumberFormatException {
+        int index = indexOfValue(key);
+        return booleanAt(index, 0);
+    }
+
+    /**
+     * NOTE: this method returns the defaultValue if there is no stored value. Like {@link #getFirstValueAsBoolean(String, boolean)}, "yes" in any case is
+     * also true
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        int index = indexOf(key);
+        if (!hasValue(index))
+            return defaultValue;
+        if (kinds[index] != STRING)
+            return booleanAt(index, 0);
+        return BooleanValues.isTrue(strings[starts[index]]);
+    }
+
+    /**
+     * Returns all values of the key as booleans, in a new array. Each value is true only if it is "true" in any case
+     *
+     * @param key
+     * @return the values, or null if the key is not present
+     */
+    public boolean[] getBooleanValues(String key) {
+        int index = indexOf(key);
+        if (index == -1)
+            return null;
+        if (kinds[index] == BOOLEAN)
+            return Arrays.copyOfRange(booleans, starts[index], starts[index] + counts[index]);
+        boolean[] values = new boolean[counts[index]];
+        for (int i = 0; i < values.length; i++)
+            values[i] = booleanAt(index, i);
+        return values;
+    }
+
+    private boolean booleanAt(int index, int position) {
+        switch (kinds[index]) {
+        case BOOLEAN:
+            return booleans[starts[index] + position];
+        case STRING:
+            return Boolean.parseBoolean(strings[starts[index] + position]);
+        default:
+            // numbers are never "true"
+            return false;
+        }
+    }
+
+    @Override
+    public int getFirstValueAsInt(String key) throws NumberFormatException {
+        return getInt(key);
+    }
+
+    @Override
+    public int getFirstValueAsInt(String key, int defaultValue) throws NumberFormatException {
+        return getInt(key, defaultValue);
+    }
+
+    @Override
+    public long getFirstValueAsLong(String key) throws NumberFormatException {
+        return getLong(key);
+    }
+
+    @Override
+    public long getFirstValueAsLong(String key, long defaultValue) throws NumberFormatException {
+        return getLong(key, defaultValue);
+    }
+
+    @Override
+    public double getFirstValueAsDouble(String key) throws NumberFormatException {
+        return getDouble(key);
+    }
+
+    @Override
+    public double getFirstValueAsDouble(String key, double defaultValue) throws NumberFormatException {
+        return getDouble(key, defaultValue);
+    }
+
+    @Override
+    public boolean getFirstValueAsBoolean(String key) throws NumberFormatException {
+        return getBoolean(key);
+    }
+
+    @Override
+    public boolean getFirstValueAsBoolean(String key, boolean defaultValue) {
+        return getBoolean(key, defaultValue);
+    }
+
+    /**
+     * Returns the estimated heap size of this projection, excluding the keys and the values kept as Strings, which it shares with its source
+     *
+     * @return
+     */
+    public long estimatedSize() {
+        return MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 14 * MemoryEstimator.REFERENCE) + MemoryEstimator.referenceArray(keys.length)
+                + MemoryEstimator.byteArray(kinds.length) + MemoryEstimator.intArray(starts.length) + MemoryEstimator.intArray(counts.length)
+                + MemoryEstimator.intArray(ints.length) + MemoryEstimator.longArray(longs.length) + MemoryEstimator.longArray(doubles.length)
+                + MemoryEstimator.byteArray(booleans.length) + MemoryEstimator.referenceArray(strings.length) + MemoryEstimator.intArray(table.length);
+    }
+
+    /**
+     * Reports the estimated heap footprint of this projection compared with a {@link TriggerOutOfMemory} holding the same entries
+     *
+     * @return
+     */
+    public String footprintReport() {
+        long mutable = MemoryEstimator.hashMapStructure(this) + MemoryEstimator.strings(this);
+        long typed = estimatedSize();
+        for (String key : keys)
+            typed += MemoryEstimator.string(key);
+        for (String value : strings)
+            typed += MemoryEstimator.string(value);
+        int primitive = ints.length + longs.length + doubles.length + booleans.length;
+        return String.format("keys=%d values=%d primitive=%d; mutable=%d bytes, typed=%d bytes (%.1f%% saved)", keys.length, primitive + strings.length,
+                primitive, mutable, typed, (mutable == 0) ? 0.0 : 100.0 * (mutable - typed) / mutable);
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<String>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Map.Entry<String, List<String>>> iterator() {
+                    return new Iterator<Map.Entry<String, List<String>>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, List<String>> next() {
+                            if (next >= keys.length)
+                                throw new NoSuchElementException();
+                            int index = next++;
+                            return new AbstractMap.SimpleImmutableEntry<String, List<String>>(keys[index], valuesAt(index));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * An unmodifiable view of the values of a key, printing values of primitive columns as they are accessed
+     */
+    private final class Column extends AbstractList<String> implements RandomAccess {
+        private final int index;
+
+        Column(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String get(int position) {
+            if (position < 0 || position >= counts[index])
+                throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + counts[index]);
+            return valueAt(index, position);
+        }
+
+        @Override
+        public int size() {
+            return counts[index];
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Checks that the asynchronous loader splits lines across its read buffers exactly as the blocking loaders do, and that it can be cancelled
+ */
+public class AsyncPropertiesLoaderTest {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void assertMatchesBlocking(byte[] contents) throws Exception {
+        Path path = Files.write(folder.newFile().toPath(), contents);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            TriggerOutOfMemory expected = builder.build(path.toString());
+            assertEquals(expected, builder.buildAsync(path.toString()).get(10, TimeUnit.SECONDS));
+            assertEquals(expected, builder.memoryMapped().build(path.toString()));
+        }
+    }
+
+    /**
+     * Returns the lines padded with a first line of the length that puts the given text at the given offset, if the text is at its end
+     */
+    private static byte[] placed(int offset, String end, String rest) {
+        StringBuilder sb = new StringBuilder("pad=");
+        int length = offset - TestInputs.utf8(end).length + 1;
+        while (TestInputs.utf8(sb.toString()).length < length)
+            sb.append('p');
+        return TestInputs.utf8(sb.append(end).append(rest).toString());
+    }
+
+    @Test
+    public void linesAcrossBuffers() throws Exception {
+        assertMatchesBlocking(TestInputs.utf8(TestInputs.lines(20000, 5)));
+    }
+
+    @Test
+    public void crlfSplitBetweenBuffers() throws Exception {
+        byte[] contents = placed(BUFFER_SIZE - 1, "\r", "\nnext=1\r\nlast=2");
+        assertEquals('\r', contents[BUFFER_SIZE - 1]);
+        assertEquals('\n', contents[BUFFER_SIZE]);
+        assertMatchesBlocking(contents);
+        Path path = Files.write(folder.newFile().toPath(), contents);
+        TriggerOutOfMemory props = TriggerOutOfMemory.builder().buildAsync(path.toString()).get(10, TimeUnit.SECONDS);
+        assertEquals("1", props.getFirstValue("next"));
+        assertNull(props.get(""));
+    }
+
+    @Test
+    public void lineEndsAtBufferBoundaries() throws Exception {
+        // a terminator as the last byte of a buffer, and as the first byte of the next one
+        assertMatchesBlocking(placed(BUFFER_SIZE - 1, "\n", "next=1\n"));
+        assertMatchesBlocking(placed(BUFFER_SIZE, "\n", "next=1\n"));
+        assertMatchesBlocking(placed(BUFFER_SIZE - 1, "\r", "next=1\r"));
+        // a line longer than a whole buffer
+        StringBuilder sb = new StringBuilder("long=");
+        for (int i = 0; i < 3 * BUFFER_SIZE / 4; i++)
+            sb.append("v").append(i % 10).append(',');
+        assertMatchesBlocking(TestInputs.utf8(sb.append("\nnext=1\n").toString()));
+    }
+
+    @Test
+    public void multiByteCharacterSplitBetweenBuffers() throws Exception {
+        // the three bytes of U+4E2D straddle the end of the first buffer
+        byte[] contents = placed(BUFFER_SIZE, "=\u4e2d", "\nnext=\u00e9\n");
+        assertEquals((byte) 0xe4, contents[BUFFER_SIZE - 2]);
+        assertMatchesBlocking(contents);
+    }
+
+    @Test
+    public void malformedBytesFailAsWithTheReader() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(TestInputs.utf8("a=x"));
+        out.write(new byte[] { (byte) 0xc3, '(', (byte) 0xff });
+        out.write(TestInputs.utf8("\nb=y\n"));
+        Path path = Files.write(folder.newFile().toPath(), out.toByteArray());
+        try {
+            TriggerOutOfMemory.builder().build(path.toString());
+            fail("Expected the Reader based build to fail");
+        } catch (CollectionProviderException e) {
+            // expected
+        }
+        try {
+            TriggerOutOfMemory.builder().buildAsync(path.toString()).get(10, TimeUnit.SECONDS);
+            fail("Expected the asynchronous build to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CollectionProviderException);
+        }
+        // the memory-mapped loader replaces the malformed bytes instead
+        assertEquals("x\ufffd(\ufffd", TriggerOutOfMemory.builder().memoryMapped().build(path.toString()).getFirstValue("a"));
+    }
+
+    @Test
+    public void missingFileFails() throws Exception {
+        String missing = folder.getRoot().toPath().resolve("missing").toString();
+        try {
+            TriggerOutOfMemory.builder().buildAsync(missing).get(10, TimeUnit.SECONDS);
+            fail("Expected the build to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CollectionProviderException);
+        }
+    }
+
+    @Test
+    public void cancelStopsTheLoad() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), TestInputs.lines(40000, 6));
+        BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<Runnable>();
+        Executor executor = tasks::add;
+        CompletableFuture<TriggerOutOfMemory> result = TriggerOutOfMemory.builder().buildAsync(path.toString(), executor);
+
+        // run the parse of the first buffer, which issues the next read, then cancel while that read is pending or queued
+        tasks.poll(10, TimeUnit.SECONDS).run();
+        assertTrue(result.cancel(true));
+        Runnable next;
+        while ((next = tasks.poll(500, TimeUnit.MILLISECONDS)) != null)
+            next.run();
+        assertTrue(result.isCancelled());
+        try {
+            result.get();
+            fail("Expected the build to be cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        assertNull(tasks.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
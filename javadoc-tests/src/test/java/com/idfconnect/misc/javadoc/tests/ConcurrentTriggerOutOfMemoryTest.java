@@ -0,0 +1,133 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks that every way of storing a list in the map stores a copy-on-write list of its own, and that adding values is atomic
+ */
+public class ConcurrentTriggerOutOfMemoryTest {
+    private static void assertOwnCopy(ConcurrentTriggerOutOfMemory props, String key, List<String> given) {
+        List<String> values = props.get(key);
+        assertTrue(key, values instanceof CopyOnWriteArrayList);
+        assertTrue(key, values != given);
+        given.add("later");
+        assertEquals(key, Arrays.asList("x"), values);
+    }
+
+    private static List<String> list() {
+        return new ArrayList<String>(Arrays.asList("x"));
+    }
+
+    @Test
+    public void everyInsertedListIsCopied() {
+        ConcurrentTriggerOutOfMemory props = new ConcurrentTriggerOutOfMemory();
+        List<String> given = list();
+        props.put("put", given);
+        assertOwnCopy(props, "put", given);
+
+        given = list();
+        props.putIfAbsent("putIfAbsent", given);
+        assertOwnCopy(props, "putIfAbsent", given);
+
+        List<String> absent = list();
+        props.computeIfAbsent("computeIfAbsent", k -> absent);
+        assertOwnCopy(props, "computeIfAbsent", absent);
+
+        List<String> computed = list();
+        props.compute("compute", (k, v) -> computed);
+        assertOwnCopy(props, "compute", computed);
+
+        props.put("computeIfPresent", list());
+        List<String> present = list();
+        props.computeIfPresent("computeIfPresent", (k, v) -> present);
+        assertOwnCopy(props, "computeIfPresent", present);
+
+        given = list();
+        props.merge("merge", given, (a, b) -> a);
+        assertOwnCopy(props, "merge", given);
+        List<String> merged = list();
+        props.merge("merge", list(), (a, b) -> merged);
+        assertOwnCopy(props, "merge", merged);
+
+        props.put("replace", Arrays.asList("old"));
+        given = list();
+        props.replace("replace", given);
+        assertOwnCopy(props, "replace", given);
+        given = list();
+        assertTrue(props.replace("replace", Arrays.asList("x"), given));
+        assertOwnCopy(props, "replace", given);
+
+        List<List<String>> replacements = new ArrayList<List<String>>();
+        props.replaceAll((k, v) -> {
+            List<String> replacement = list();
+            replacements.add(replacement);
+            return replacement;
+        });
+        for (Map.Entry<String, List<String>> entry : props.entrySet()) {
+            assertTrue(entry.getValue() instanceof CopyOnWriteArrayList);
+            for (List<String> replacement : replacements)
+                assertTrue(entry.getKey(), entry.getValue() != replacement);
+        }
+    }
+
+    @Test
+    public void existingListsAreKept() {
+        ConcurrentTriggerOutOfMemory props = new ConcurrentTriggerOutOfMemory();
+        props.add("key", "a");
+        List<String> values = props.get("key");
+        props.compute("key", (k, v) -> {
+            v.add("b");
+            return v;
+        });
+        props.computeIfPresent("key", (k, v) -> v);
+        assertTrue(values == props.get("key"));
+        assertEquals(Arrays.asList("a", "b"), props.get("key"));
+        props.computeIfPresent("key", (k, v) -> null);
+        assertTrue(props.isEmpty());
+    }
+
+    @Test
+    public void concurrentAddsAreAllKept() throws Exception {
+        ConcurrentTriggerOutOfMemory props = new ConcurrentTriggerOutOfMemory();
+        int threads = 4;
+        int adds = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < adds; i++)
+                        props.add("key" + (i % 10), thread + ":" + i);
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        int total = 0;
+        for (List<String> values : props.values())
+            total += values.size();
+        assertEquals(threads * adds, total);
+    }
+}
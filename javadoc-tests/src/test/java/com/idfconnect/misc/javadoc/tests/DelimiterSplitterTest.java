@@ -0,0 +1,56 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that the splitter gives the same results as {@link String#split(String)}, for the delimiters matched literally and for regular expressions
+ */
+public class DelimiterSplitterTest {
+    private static final String[] DELIMITERS = { ",", ";;", "\\|", "\\.", "|", ".", "\\s*,\\s*", "[,;]", "a*", "(?=b)", "", "\\$", "$", "^", "x+?" };
+    private static final String[] VALUES     = { "", "a", ",", ",,", "a,b", "a,,b", "a,b,,", ",a,b", ";;a;;;;b;;", "a|b||", "a.b..c.", " a , b ,c ",
+            "a;b,c;", "aaa", "abab", "bab", "a$b$", "$$", "xxaxx", "\u00e9,\u4e2d,", "   " };
+
+    private static List<String> split(String delimiter, String value) {
+        List<String> values = new ArrayList<String>();
+        int count = DelimiterSplitter.compile(delimiter).split(value, values);
+        assertEquals(values.size(), count);
+        return values;
+    }
+
+    @Test
+    public void matchesStringSplit() {
+        for (String delimiter : DELIMITERS)
+            for (String value : VALUES)
+                assertEquals("\"" + value + "\" split on \"" + delimiter + "\"", Arrays.asList(value.split(delimiter)), split(delimiter, value));
+    }
+
+    @Test
+    public void literalDelimitersSkipTheRegexEngine() {
+        assertEquals(",", DelimiterSplitter.compile(",").literal());
+        assertEquals(";;", DelimiterSplitter.compile(";;").literal());
+        assertEquals("|", DelimiterSplitter.compile("\\|").literal());
+        assertEquals(".", DelimiterSplitter.compile("\\.").literal());
+        assertNull(DelimiterSplitter.compile("|").literal());
+        assertNull(DelimiterSplitter.compile(".").literal());
+        assertNull(DelimiterSplitter.compile("").literal());
+        assertNull(DelimiterSplitter.compile("\\s").literal());
+    }
+
+    @Test
+    public void valuesAreAppended() {
+        TriggerOutOfMemory target = new TriggerOutOfMemory();
+        DelimiterSplitter splitter = DelimiterSplitter.compile(",");
+        assertEquals(0, splitter.splitInto(",,", "key", target, null));
+        assertNull(target.get("key"));
+        assertEquals(2, splitter.splitInto("a,b,", "key", target, null));
+        assertEquals(4, splitter.splitInto(",c,,d", "key", target, null));
+        assertEquals(Arrays.asList("a", "b", "", "c", "", "d"), target.get("key"));
+    }
+}
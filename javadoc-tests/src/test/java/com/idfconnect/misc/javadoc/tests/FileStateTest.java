@@ -0,0 +1,69 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the streamed checksum of a file, and when a file may be trusted to be unchanged from its size and modification time
+ */
+public class FileStateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamedChecksumMatchesTheContents() throws Exception {
+        Random random = new Random(7);
+        ByteBuffer buffer = ByteBuffer.allocate(FileState.CHECKSUM_BUFFER);
+        int[] sizes = { 0, 1, FileState.CHECKSUM_BUFFER - 1, FileState.CHECKSUM_BUFFER, FileState.CHECKSUM_BUFFER + 1, 3 * FileState.CHECKSUM_BUFFER + 17 };
+        for (int size : sizes) {
+            byte[] contents = new byte[size];
+            random.nextBytes(contents);
+            Path path = Files.write(folder.newFile().toPath(), contents);
+            CRC32 crc = new CRC32();
+            crc.update(contents, 0, size);
+
+            FileState state = FileState.of(path, buffer);
+            assertEquals("size " + size, size, state.size);
+            assertEquals("size " + size, crc.getValue(), state.checksum);
+            assertTrue(state.hasSameContents(FileState.of(path)));
+            assertTrue(state.hasSameContents(FileState.of(FileState.read(path), state.lastModified, state.takenAt)));
+        }
+    }
+
+    @Test
+    public void oldModificationTimeIsTrusted() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), "a=1\n");
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        FileState state = FileState.of(path);
+        assertTrue(state.isUnchanged(path));
+        TestInputs.write(path, "a=12\n");
+        assertFalse(state.isUnchanged(path));
+    }
+
+    /**
+     * A rewrite with the same size that keeps the modification time, as on a file system with a coarse clock, is still found by the checksum
+     */
+    @Test
+    public void recentModificationTimeIsNotTrusted() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), "a=1\n");
+        FileTime modified = Files.getLastModifiedTime(path);
+        FileState state = FileState.of(path);
+        TestInputs.write(path, "a=2\n");
+        Files.setLastModifiedTime(path, modified);
+
+        assertFalse(state.isUnchanged(path));
+        assertFalse(state.hasSameContents(FileState.of(path)));
+    }
+}
@@ -0,0 +1,150 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that patching the map after an edit gives the same results as a full rebuild of the edited file
+ */
+public class IncrementalTriggerOutOfMemoryLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long           modified = System.currentTimeMillis();
+
+    @Test
+    public void patchMatchesFullRebuild() throws Exception {
+        Random random = new Random(1);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            List<String> lines = new ArrayList<String>();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 300; i++) {
+                sb.setLength(0);
+                TestInputs.line(sb, random, i);
+                lines.add(sb.toString());
+            }
+            Path path = write(folder.newFile().toPath(), lines);
+            IncrementalTriggerOutOfMemoryLoader loader = new IncrementalTriggerOutOfMemoryLoader(builder, path.toString());
+            assertEquals(builder.build(path.toString()), loader.get());
+
+            for (int edit = 0; edit < 200; edit++) {
+                edit(lines, random, edit);
+                write(path, lines);
+                TriggerOutOfMemory previous = (TriggerOutOfMemory) loader.get().clone();
+                Set<String> changed = loader.reload();
+                TriggerOutOfMemory expected = builder.build(path.toString());
+                assertEquals("edit " + edit, expected, loader.get());
+                assertEquals("edit " + edit, TriggerOutOfMemoryReloader.changedKeys(previous, expected), changed);
+            }
+        }
+    }
+
+    @Test
+    public void unchangedContentsAreNotPatched() throws Exception {
+        List<String> lines = new ArrayList<String>(Arrays.asList("a=1\r\n", "b=2\n"));
+        Path path = write(folder.newFile().toPath(), lines);
+        IncrementalTriggerOutOfMemoryLoader loader = new IncrementalTriggerOutOfMemoryLoader(TriggerOutOfMemory.builder(), path.toString());
+        write(path, lines);
+        assertTrue(loader.reload().isEmpty());
+    }
+
+    @Test
+    public void patchedMapDoesNotWriteThroughToDefaults() throws Exception {
+        TriggerOutOfMemory defaults = new TriggerOutOfMemory();
+        defaults.put("d", new ArrayList<String>(Arrays.asList("default")));
+        defaults.put("a", new ArrayList<String>(Arrays.asList("hidden")));
+        List<String> lines = new ArrayList<String>(Arrays.asList("a=1\n", "b=2\n"));
+        Path path = write(folder.newFile().toPath(), lines);
+        IncrementalTriggerOutOfMemoryLoader loader = new IncrementalTriggerOutOfMemoryLoader(TriggerOutOfMemory.builder().defaults(defaults),
+                path.toString());
+
+        // removing the key from the file brings back the default through a patch
+        lines.remove(0);
+        write(path, lines);
+        loader.reload();
+        loader.get().get("a").add("changed");
+        loader.get().get("d").add("changed");
+        assertEquals(Arrays.asList("hidden"), defaults.get("a"));
+        assertEquals(Arrays.asList("default"), defaults.get("d"));
+    }
+
+    /**
+     * A change to the System properties under the prefix reloads the file in full, into the same map
+     */
+    @Test
+    public void systemPropertyChangeReloadsInFull() throws Exception {
+        String property = "incrementaltest.b";
+        List<String> lines = new ArrayList<String>(Arrays.asList("incrementaltest.a=1\n", "incrementaltest.b=2\n", "other=3\n"));
+        Path path = write(folder.newFile().toPath(), lines);
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().prefix("incrementaltest.").loadSystemProperties();
+        IncrementalTriggerOutOfMemoryLoader loader = new IncrementalTriggerOutOfMemoryLoader(builder, path.toString());
+        TriggerOutOfMemory map = loader.get();
+        try {
+            System.setProperty(property, "override");
+            lines.set(0, "incrementaltest.a=4\n");
+            write(path, lines);
+            TriggerOutOfMemory previous = (TriggerOutOfMemory) map.clone();
+            Set<String> changed = loader.reload();
+            TriggerOutOfMemory expected = builder.build(path.toString());
+            assertTrue(map == loader.get());
+            assertEquals(expected, map);
+            assertEquals(TriggerOutOfMemoryReloader.changedKeys(previous, expected), changed);
+            assertEquals(2, changed.size());
+        } finally {
+            System.clearProperty(property);
+        }
+    }
+
+    private static void edit(List<String> lines, Random random, int i) {
+        StringBuilder sb = new StringBuilder();
+        TestInputs.line(sb, random, 1000 + i);
+        int index = lines.isEmpty() ? 0 : random.nextInt(lines.size());
+        switch (random.nextInt(5)) {
+        case 0:
+            lines.add(index, sb.toString());
+            break;
+        case 1:
+            if (!lines.isEmpty())
+                lines.remove(index);
+            break;
+        case 2:
+            // the same line with the other terminator
+            if (!lines.isEmpty()) {
+                String line = lines.get(index);
+                lines.set(index, line.endsWith("\r\n") ? line.substring(0, line.length() - 2) + "\n" : line.substring(0, line.length() - 1) + "\r\n");
+            }
+            break;
+        default:
+            if (lines.isEmpty())
+                lines.add(sb.toString());
+            else
+                lines.set(index, sb.toString());
+        }
+    }
+
+    /**
+     * Writes the lines and moves the modification time forward, so every write is seen as a change however coarse the file system clock is
+     */
+    private Path write(Path path, List<String> lines) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines)
+            sb.append(line);
+        TestInputs.write(path, sb.toString());
+        modified += 2000;
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+        return path;
+    }
+}
@@ -0,0 +1,77 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that builds with a pool share one instance of each repeated key and value, and that the pool never holds more than its maximum
+ */
+public class InternPoolTest {
+    private static final String TEXT = "host=server1\nbackup=server1\nroles=admin,user\nadmins=admin\nflag=true\nother=true\n";
+
+    @Rule
+    public TemporaryFolder      folder = new TemporaryFolder();
+
+    private static String keyOf(TriggerOutOfMemory props, String key) {
+        for (String k : props.keySet())
+            if (k.equals(key))
+                return k;
+        throw new AssertionError(key);
+    }
+
+    @Test
+    public void repeatedValuesShareOneInstance() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), TEXT);
+        List<TriggerOutOfMemory.Builder> builders = Arrays.asList(TriggerOutOfMemory.builder(), TriggerOutOfMemory.builder().memoryMapped(),
+                TriggerOutOfMemory.builder().parallelism(2));
+        for (TriggerOutOfMemory.Builder builder : builders) {
+            InternPool pool = new InternPool(100);
+            builder.delimiter(",").deduplicate(pool);
+            TriggerOutOfMemory first = builder.build(path.toString());
+            assertSame(first.getFirstValue("host"), first.getFirstValue("backup"));
+            assertSame(first.getFirstValue("flag"), first.getFirstValue("other"));
+            assertSame(first.get("roles").get(0), first.getFirstValue("admins"));
+
+            TriggerOutOfMemory second = builder.build(path.toString());
+            assertSame(first.getFirstValue("host"), second.getFirstValue("host"));
+            assertSame(keyOf(first, "roles"), keyOf(second, "roles"));
+            assertTrue(pool.getHitCount() > 0);
+        }
+
+        // without a pool, each line creates its own Strings
+        TriggerOutOfMemory plain = TriggerOutOfMemory.builder().build(path.toString());
+        assertNotSame(plain.getFirstValue("host"), plain.getFirstValue("backup"));
+    }
+
+    @Test
+    public void poolStaysBounded() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            text.append("key").append(i).append("=value").append(i).append('\n');
+        Path path = TestInputs.write(folder.newFile().toPath(), text.toString());
+        InternPool pool = new InternPool(10);
+        TriggerOutOfMemory props = TriggerOutOfMemory.builder().deduplicate(pool).build(path.toString());
+        assertEquals(10, pool.size());
+        assertEquals(500, props.size());
+        assertEquals("value499", props.getFirstValue("key499"));
+        assertEquals(TriggerOutOfMemory.builder().build(path.toString()), props);
+
+        // pooled Strings are still found once the pool is full
+        String pooled = pool.intern(new String("key0"));
+        assertSame(pooled, pool.intern(new String("key0")));
+        assertEquals(10, pool.size());
+        pool.clear();
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.getHitCount());
+    }
+}
@@ -0,0 +1,122 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Checks that loading layered files at once gives the same results as chaining the layers through {@link TriggerOutOfMemory.Builder#defaults}
+ */
+public class LayeredLoadTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Path> layers(int count) throws Exception {
+        List<Path> layers = new ArrayList<Path>();
+        for (int i = 0; i < count; i++)
+            layers.add(TestInputs.write(folder.newFile().toPath(), TestInputs.lines(3000 / (i + 1), 10 + i)));
+        return layers;
+    }
+
+    /**
+     * Builds each layer with the previous result as its defaults, starting from the given defaults
+     */
+    private static TriggerOutOfMemory chained(int config, List<Path> layers, TriggerOutOfMemory defaults) throws Exception {
+        TriggerOutOfMemory props = defaults;
+        for (Path layer : layers) {
+            TriggerOutOfMemory.Builder builder = TestInputs.builders()[config];
+            if (props != null)
+                builder.defaults(props);
+            props = builder.build(layer.toString());
+        }
+        return props;
+    }
+
+    @Test
+    public void matchesChainedDefaults() throws Exception {
+        List<Path> layers = layers(4);
+        for (int config = 0; config < TestInputs.builders().length; config++) {
+            TriggerOutOfMemory expected = chained(config, layers, null);
+            assertEquals("builder " + config, expected, TestInputs.builders()[config].build(layers));
+            assertEquals("builder " + config, expected, TestInputs.builders()[config].parallelism(2).build(layers));
+        }
+    }
+
+    @Test
+    public void defaultsApplyBelowTheFirstLayer() throws Exception {
+        List<Path> layers = layers(3);
+        TriggerOutOfMemory defaults = new TriggerOutOfMemory();
+        defaults.add("key1", "default");
+        defaults.add("onlydefault", "d");
+        for (int config = 0; config < TestInputs.builders().length; config++) {
+            TriggerOutOfMemory expected = chained(config, layers, defaults);
+            TriggerOutOfMemory layered = TestInputs.builders()[config].defaults(defaults).build(layers);
+            assertEquals("builder " + config, expected, layered);
+            assertEquals(Arrays.asList("d"), layered.get("onlydefault"));
+        }
+    }
+
+    @Test
+    public void singleAndNoLayers() throws Exception {
+        List<Path> layers = layers(1);
+        for (int config = 0; config < TestInputs.builders().length; config++) {
+            assertEquals(TestInputs.builders()[config].build(layers.get(0).toString()), TestInputs.builders()[config].build(layers));
+            assertEquals(TestInputs.builders()[config].build(), TestInputs.builders()[config].build(new ArrayList<Path>()));
+        }
+    }
+
+    @Test
+    public void layersRunOnTheGivenExecutor() throws Exception {
+        List<Path> layers = layers(3);
+        AtomicInteger executed = new AtomicInteger();
+        Executor counting = task -> {
+            executed.incrementAndGet();
+            task.run();
+        };
+        for (int config = 0; config < TestInputs.builders().length; config++)
+            assertEquals("builder " + config, TestInputs.builders()[config].build(layers), TestInputs.builders()[config].build(layers, counting));
+        assertEquals(3 * TestInputs.builders().length, executed.get());
+    }
+
+    /**
+     * A failed layer fails the build at once, without waiting for the layers that have not finished, which are cancelled
+     */
+    @Test(timeout = 10000)
+    public void firstFailureCancelsTheOtherLayers() throws Exception {
+        List<Path> layers = layers(2);
+        Path missing = folder.getRoot().toPath().resolve("missing.properties");
+        layers.add(missing);
+        List<Runnable> queued = new ArrayList<Runnable>();
+        // the missing layer runs at once, the others are held back and would block the build if it waited for them
+        Executor holding = task -> {
+            if (queued.size() < 2)
+                queued.add(task);
+            else
+                task.run();
+        };
+        try {
+            TriggerOutOfMemory.builder().build(layers, holding);
+            fail("The missing layer must fail the build");
+        } catch (CollectionProviderException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof NoSuchFileException);
+        }
+        assertEquals(2, queued.size());
+        // the cancelled layers are skipped once they get to run
+        for (Runnable task : queued)
+            task.run();
+    }
+}
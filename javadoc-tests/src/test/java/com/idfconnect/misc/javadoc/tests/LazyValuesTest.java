@@ -0,0 +1,68 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks that lazily split values give the same results as an eager load, including delimiters that are regular expressions
+ */
+public class LazyValuesTest {
+    private static TriggerOutOfMemory.Builder[] builders() {
+        return new TriggerOutOfMemory.Builder[] { TriggerOutOfMemory.builder().delimiter(","), TriggerOutOfMemory.builder().delimiter(",").quotedValues(),
+                TriggerOutOfMemory.builder().delimiter("\\s*,\\s*"), TriggerOutOfMemory.builder().delimiter("[,;]").quotedValues() };
+    }
+
+    private static TriggerOutOfMemory build(TriggerOutOfMemory.Builder builder, String text) throws Exception {
+        return builder.build(new BufferedReader(new StringReader(text)));
+    }
+
+    @Test
+    public void lazyMatchesEager() throws Exception {
+        String text = TestInputs.lines(3000, 4);
+        for (TriggerOutOfMemory.Builder builder : builders()) {
+            TriggerOutOfMemory expected = build(builder, text);
+            assertEquals(builder.toString(), expected, build(builder.lazyValues(), text));
+        }
+    }
+
+    /**
+     * A value made of delimiters only splits into no values, so the key is left to the defaults
+     */
+    @Test
+    public void onlyDelimitersLeaveTheDefaults() throws Exception {
+        TriggerOutOfMemory defaults = TriggerOutOfMemory.getSingleEntryMap("a", "default");
+        String text = "a = ,,,\nb = \",;,\"\nb = ,\nc = x,,\n";
+        for (TriggerOutOfMemory.Builder builder : builders()) {
+            TriggerOutOfMemory expected = build(builder.defaults(defaults), text);
+            TriggerOutOfMemory lazy = build(builder.lazyValues(), text);
+            assertEquals(Arrays.asList("default"), lazy.get("a"));
+            assertEquals(expected, lazy);
+        }
+        assertFalse(build(TriggerOutOfMemory.builder().delimiter("[,;]").lazyValues(), "b = ,;,").containsKey("b"));
+    }
+
+    @Test
+    public void lazyMapsSerializeAsTheirValues() throws Exception {
+        String text = TestInputs.lines(500, 5);
+        for (TriggerOutOfMemory.Builder builder : builders()) {
+            TriggerOutOfMemory expected = build(builder, text);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(build(builder.lazyValues(), text));
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                assertEquals(expected, in.readObject());
+            }
+        }
+    }
+}
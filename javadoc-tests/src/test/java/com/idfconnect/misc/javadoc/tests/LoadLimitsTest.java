@@ -0,0 +1,121 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Checks that the load limits fail a build as soon as they are exceeded, whichever loader is used
+ */
+public class LoadLimitsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String manyValues(int count) {
+        StringBuilder sb = new StringBuilder("many=");
+        for (int i = 0; i < count; i++)
+            sb.append(i).append(',');
+        return sb.append("\n").toString();
+    }
+
+    @Test
+    public void valuesAreCountedWhileSplitting() {
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().delimiter(",").maxValuesPerKey(3);
+        for (String delimiter : new String[] { ",", "[,;]" }) {
+            TriggerOutOfMemory target = new TriggerOutOfMemory();
+            target.add("key", "existing");
+            try {
+                DelimiterSplitter.compile(delimiter).splitInto("a,b,c,d,e,f", "key", target, null, LoadLimits.of(builder));
+                fail("Expected the values of the key to exceed the limit");
+            } catch (LoadLimits.LimitExceededException e) {
+                // the split stops at the first value over the limit
+                assertEquals(Arrays.asList("existing", "a", "b", "c"), target.get("key"));
+            }
+        }
+    }
+
+    @Test
+    public void everyLoaderEnforcesValuesPerKey() throws Exception {
+        String text = "a=1\n" + manyValues(1000) + "b=2\n";
+        Path path = TestInputs.write(folder.newFile().toPath(), text);
+        Properties properties = new Properties();
+        properties.setProperty("many", manyValues(1000).substring(5).trim());
+        for (int parallelism = 1; parallelism <= 2; parallelism++) {
+            TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().delimiter(",").maxValuesPerKey(100).parallelism(parallelism);
+            assertFails(() -> builder.build(new BufferedReader(new StringReader(text))));
+            assertFails(() -> builder.build(path.toString()));
+            assertFails(() -> builder.memoryMapped().build(path.toString()));
+            assertFails(() -> builder.build(properties));
+        }
+    }
+
+    @Test
+    public void valuesOfRepeatedKeysAreCountedAcrossChunks() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++)
+            sb.append("repeated=v").append(i).append('\n');
+        String text = sb.toString();
+        Path path = TestInputs.write(folder.newFile().toPath(), text);
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().maxValuesPerKey(39999).parallelism(4);
+        assertFails(() -> builder.build(new BufferedReader(new StringReader(text))));
+        assertFails(() -> builder.build(path.toString()));
+        assertEquals(40000, builder.maxValuesPerKey(40000).build(path.toString()).get("repeated").size());
+    }
+
+    @Test
+    public void partsShareTheRetainedBytes() {
+        long entry = MemoryEstimator.entry("a") + MemoryEstimator.values(1, 1);
+        LoadLimits limits = LoadLimits.of(TriggerOutOfMemory.builder().maxRetainedBytes(entry * 3 / 2));
+        LoadLimits first = limits.part();
+        LoadLimits second = limits.part();
+
+        TriggerOutOfMemory firstMap = new TriggerOutOfMemory();
+        firstMap.add("a", "1");
+        first.added("a", -1, 1, firstMap);
+        TriggerOutOfMemory secondMap = new TriggerOutOfMemory();
+        secondMap.add("b", "2");
+        try {
+            // each part alone is within the maximum, but not both together
+            second.added("b", -1, 1, secondMap);
+            fail("Expected the parts to exceed the maximum retained bytes together");
+        } catch (LoadLimits.LimitExceededException e) {
+            assertFalse(e.getMessage().isEmpty());
+        }
+    }
+
+    @Test
+    public void keysAreCheckedOnTheMergedResults() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++)
+            sb.append("key").append(i).append("=v\n");
+        String text = sb.toString();
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().maxKeys(30000).parallelism(3);
+        assertFails(() -> builder.build(new BufferedReader(new StringReader(text))));
+        assertEquals(40000, builder.maxKeys(40000).build(new BufferedReader(new StringReader(text))).size());
+    }
+
+    private interface Build {
+        TriggerOutOfMemory run() throws CollectionProviderException;
+    }
+
+    private static void assertFails(Build build) {
+        try {
+            build.run();
+            fail("Expected the build to exceed a limit");
+        } catch (CollectionProviderException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the line, skip, byte and entry counts reported to the metrics listener, whichever way the input is loaded
+ */
+public class LoadMetricsTest {
+    private static final String PREFIX = "metricstest.";
+    private static final String TEXT   = "# comment\n" + "a=1,2\n" + "\n" + "   \n" + "noequals\n" + "b=\n" + "db.url=x\n" + "! bang\n" + "c = \"q\"\n";
+
+    @Rule
+    public TemporaryFolder      folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(PREFIX + "c");
+    }
+
+    private static TriggerOutOfMemory.Builder builder(List<LoadMetrics> reported) {
+        return TriggerOutOfMemory.builder().delimiter(",").prefix(PREFIX).loadSystemProperties().metrics(reported::add);
+    }
+
+    private static void assertCounts(String name, LoadMetrics metrics, long bytes) {
+        assertEquals(name, 9, metrics.getLines());
+        assertEquals(name, 2, metrics.getSkippedLines(LoadMetrics.SkipReason.BLANK));
+        assertEquals(name, 2, metrics.getSkippedLines(LoadMetrics.SkipReason.COMMENT));
+        assertEquals(name, 2, metrics.getSkippedLines(LoadMetrics.SkipReason.MISSING_EQUALS));
+        assertEquals(name, 0, metrics.getSkippedLines(LoadMetrics.SkipReason.MISSING_QUOTES));
+        assertEquals(name, 6, metrics.getSkippedLines());
+        assertEquals(name, bytes, metrics.getBytesRead());
+        // a, db.url and c, whose value is replaced by the two values of the system property
+        assertEquals(name, 3, metrics.getKeys());
+        assertEquals(name, 5, metrics.getValues());
+        assertTrue(name, metrics.getParseTime().toNanos() >= 0);
+    }
+
+    @Test
+    public void fileLoadsReportEveryLine() throws Exception {
+        System.setProperty(PREFIX + "c", "s1,s2");
+        Path path = TestInputs.write(folder.newFile().toPath(), TEXT);
+        List<LoadMetrics> reported = new ArrayList<LoadMetrics>();
+        TriggerOutOfMemory expected = builder(reported).build(path.toString());
+        assertEquals(Arrays.asList("s1", "s2"), expected.get("c"));
+        assertEquals(1, reported.size());
+        assertCounts("reader", reported.get(0), TEXT.length());
+
+        Map<String, TriggerOutOfMemory.Builder> builders = new HashMap<String, TriggerOutOfMemory.Builder>();
+        builders.put("mapped", builder(reported).memoryMapped());
+        builders.put("parallel", builder(reported).parallelism(2));
+        for (Map.Entry<String, TriggerOutOfMemory.Builder> entry : builders.entrySet()) {
+            reported.clear();
+            assertEquals(entry.getKey(), expected, entry.getValue().build(path.toString()));
+            assertEquals(entry.getKey(), 1, reported.size());
+            assertCounts(entry.getKey(), reported.get(0), TEXT.length());
+        }
+
+        reported.clear();
+        assertEquals(expected, builder(reported).build(new BufferedReader(new StringReader(TEXT))));
+        assertCounts("BufferedReader", reported.get(0), TEXT.length());
+    }
+
+    /**
+     * Properties outside the prefix are not lines of the build
+     */
+    @Test
+    public void mapLoadsOnlyCountPrefixedEntries() throws Exception {
+        Map<String, String> raw = new HashMap<String, String>();
+        raw.put(PREFIX + "x", "1,2");
+        raw.put(PREFIX + "y", "3");
+        raw.put("other.z", "4");
+        List<LoadMetrics> reported = new ArrayList<LoadMetrics>();
+        TriggerOutOfMemory built = builder(reported).build(raw);
+        assertEquals(2, built.size());
+        LoadMetrics metrics = reported.get(0);
+        assertEquals(2, metrics.getLines());
+        assertEquals(0, metrics.getSkippedLines());
+        assertEquals(2, metrics.getKeys());
+        assertEquals(3, metrics.getValues());
+    }
+}
@@ -0,0 +1,100 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Measures the bytes allocated by the lookups that are documented not to create Strings, and checks that every lookup reads "yes" the same way
+ */
+public class LookupAllocationTest {
+    private static final int LOOKUPS = 200000;
+
+    /** A lookup run many times, returning something so the JIT cannot drop the call */
+    private interface Lookup {
+        int run();
+    }
+
+    private static TriggerOutOfMemory map() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        for (int i = 0; i < 100; i++)
+            props.put("key" + i, Arrays.asList("value" + i));
+        props.put("port", Arrays.asList("8080"));
+        props.put("enabled", Arrays.asList("YES"));
+        return props;
+    }
+
+    private static double bytesPerLookup(Lookup lookup) {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        int sink = 0;
+        // warm up so that the measured loop runs compiled code
+        for (int i = 0; i < LOOKUPS; i++)
+            sink += lookup.run();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < LOOKUPS; i++)
+            sink += lookup.run();
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+        assertTrue(sink != 0);
+        return (double) allocated / LOOKUPS;
+    }
+
+    private static void assertNoAllocation(String name, Lookup lookup) {
+        double bytes = bytesPerLookup(lookup);
+        // a single String or boxed value would take at least 16 bytes per lookup
+        assertTrue(name + " allocated " + bytes + " bytes per lookup", bytes < 1);
+    }
+
+    @Test
+    public void immutableLookupsDoNotAllocate() {
+        ImmutableTriggerOutOfMemory frozen = map().freeze();
+        StringBuilder chars = new StringBuilder("key42");
+        byte[] bytes = "[key42]".getBytes(StandardCharsets.US_ASCII);
+        byte[] enabled = "enabled".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("value42", frozen.getFirstValue(chars));
+        assertEquals("value42", frozen.getFirstValue(bytes, 1, 5));
+        assertNoAllocation("getFirstValue(CharSequence)", () -> frozen.getFirstValue(chars).length());
+        assertNoAllocation("getFirstValue(byte[])", () -> frozen.getFirstValue(bytes, 1, 5).length());
+        assertNoAllocation("getFirstValueAsBoolean(byte[])", () -> frozen.getFirstValueAsBoolean(enabled, 0, enabled.length, false) ? 1 : 2);
+    }
+
+    @Test
+    public void typedLookupsDoNotAllocate() {
+        TypedTriggerOutOfMemory typed = map().toTyped();
+        assertEquals(8080, typed.getInt("port"));
+        assertNoAllocation("getInt", () -> typed.getInt("port"));
+        assertNoAllocation("getBoolean", () -> typed.getBoolean("enabled", false) ? 1 : 2);
+        assertNoAllocation("getFirstValue", () -> typed.getFirstValue("key42").length());
+    }
+
+    @Test
+    public void everyLookupReadsBooleansAlike() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        String[] values = { "true", "TRUE", "yes", "Yes", "false", "no", "1", "on" };
+        for (int i = 0; i < values.length; i++)
+            props.put("key" + i, Arrays.asList(values[i]));
+        ImmutableTriggerOutOfMemory frozen = props.freeze();
+        TypedTriggerOutOfMemory typed = props.toTyped();
+        for (int i = 0; i < values.length; i++) {
+            String key = "key" + i;
+            boolean expected = (i < 4);
+            assertEquals(values[i], expected, props.getFirstValueAsBoolean(key, !expected));
+            assertEquals(values[i], expected, frozen.getFirstValueAsBoolean(key, !expected));
+            assertEquals(values[i], expected, frozen.getFirstValueAsBoolean(new StringBuilder(key), !expected));
+            assertEquals(values[i], expected, typed.getBoolean(key, !expected));
+            assertEquals(values[i], expected, typed.getFirstValueAsBoolean(key, !expected));
+        }
+        assertEquals(true, frozen.getFirstValueAsBoolean("missing", true));
+        assertEquals(false, typed.getBoolean("missing", false));
+    }
+}
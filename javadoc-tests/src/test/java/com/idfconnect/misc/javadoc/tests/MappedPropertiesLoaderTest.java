@@ -0,0 +1,70 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the memory-mapped loader gives the same results as the Reader based loader
+ */
+public class MappedPropertiesLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mappedFileMatchesReader() throws Exception {
+        String text = TestInputs.lines(5000, 1) + "last=unterminated,\u00e9";
+        Path path = TestInputs.write(folder.newFile().toPath(), text);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            TriggerOutOfMemory expected = builder.build(new BufferedReader(new StringReader(text)));
+            assertEquals(expected, builder.memoryMapped().build(path.toString()));
+        }
+    }
+
+    @Test
+    public void lazyMappedFileMatchesReader() throws Exception {
+        String text = TestInputs.lines(2000, 2);
+        Path path = TestInputs.write(folder.newFile().toPath(), text);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            TriggerOutOfMemory expected = builder.build(new BufferedReader(new StringReader(text)));
+            assertEquals(expected, builder.memoryMapped().lazyValues().build(path.toString()));
+        }
+    }
+
+    /**
+     * Ends the first window at every offset of the input, as happens when a file is mapped in several windows, including between the \r and \n of a line
+     * terminator and inside a multi-byte character
+     */
+    @Test
+    public void windowBoundaryAtEveryOffset() throws Exception {
+        String text = "a=1\r\nb = \"x,y\",z\r\n\r\n# c\r\nb=\u00e9\u4e2d\nnoequals\r\na=2\r\n\r\nlast=3";
+        byte[] bytes = TestInputs.utf8(text);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            TriggerOutOfMemory expected = builder.build(new BufferedReader(new StringReader(text)));
+            for (int split = 0; split <= bytes.length; split++) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                TriggerOutOfMemory props = new TriggerOutOfMemory();
+                MappedPropertiesLoader loader = new MappedPropertiesLoader(builder);
+                int consumed = loader.parseLines(buffer, 0, split, false, props);
+                loader.parseLines(buffer, consumed, bytes.length, true, props);
+                assertEquals("split at " + split, expected, props);
+            }
+        }
+    }
+
+    @Test
+    public void crlfAndLfGiveTheSameResults() throws Exception {
+        String lf = TestInputs.lines(1000, 3).replace("\r\n", "\n");
+        String crlf = lf.replace("\n", "\r\n");
+        Path path = TestInputs.write(folder.newFile().toPath(), crlf);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders())
+            assertEquals(builder.build(new BufferedReader(new StringReader(lf))), builder.memoryMapped().build(path.toString()));
+    }
+}
@@ -0,0 +1,154 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Checks that overlays never see each other's changes however their lists were obtained, and that clones of a {@link TriggerOutOfMemory} never change
+ * their source
+ */
+public class OverlayTriggerOutOfMemoryTest {
+    private static TriggerOutOfMemory map() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        props.add("a", "1");
+        props.add("b", "2");
+        props.add("b", "3");
+        props.add("c", "4");
+        return props;
+    }
+
+    private static OverlayTriggerOutOfMemory overlay() {
+        OverlayTriggerOutOfMemory overlay = map().freeze().overlay();
+        overlay.add("d", "5");
+        return overlay;
+    }
+
+    @Test
+    public void baseValuesAreCopiedOnWrite() {
+        ImmutableTriggerOutOfMemory base = map().freeze();
+        OverlayTriggerOutOfMemory overlay = base.overlay();
+        List<String> first = overlay.get("b");
+        List<String> second = overlay.get("b");
+        first.add("x");
+        second.add("y");
+        assertEquals(Arrays.asList("2", "3", "x", "y"), overlay.get("b"));
+        assertEquals(Arrays.asList("2", "3"), base.get("b"));
+        assertEquals(1, overlay.overrideCount());
+    }
+
+    @Test
+    public void listsOfReplacedEntriesAreDetached() {
+        OverlayTriggerOutOfMemory overlay = map().freeze().overlay();
+        List<String> replaced = overlay.get("a");
+        List<String> removed = overlay.get("c");
+        overlay.put("a", new ArrayList<String>(Arrays.asList("new")));
+        overlay.remove("c");
+        replaced.add("x");
+        removed.add("y");
+        assertEquals(Arrays.asList("new"), overlay.get("a"));
+        assertNull(overlay.get("c"));
+        assertEquals(Arrays.asList("1", "x"), replaced);
+        assertEquals(2, overlay.size());
+    }
+
+    @Test
+    public void overlayClonesAreIndependent() {
+        OverlayTriggerOutOfMemory overlay = overlay();
+        List<String> before = overlay.get("d");
+        List<String> baseBefore = overlay.get("a");
+        OverlayTriggerOutOfMemory clone = overlay.clone();
+
+        before.add("x");
+        baseBefore.add("y");
+        assertEquals(Arrays.asList("5", "x"), overlay.get("d"));
+        assertEquals(Arrays.asList("1", "y"), overlay.get("a"));
+        assertEquals(Arrays.asList("5"), clone.get("d"));
+        assertEquals(Arrays.asList("1"), clone.get("a"));
+
+        clone.get("d").add("z");
+        clone.remove("b");
+        assertEquals(Arrays.asList("5", "x"), overlay.get("d"));
+        assertEquals(Arrays.asList("2", "3"), overlay.get("b"));
+
+        OverlayTriggerOutOfMemory second = clone.clone();
+        second.get("d").clear();
+        clone.get("d").add("w");
+        assertEquals(Arrays.asList("5", "z", "w"), clone.get("d"));
+        assertTrue(second.get("d").isEmpty());
+        assertEquals(Arrays.asList("5", "x"), overlay.get("d"));
+    }
+
+    @Test
+    public void iteratorRemovesEntries() {
+        OverlayTriggerOutOfMemory overlay = overlay();
+        OverlayTriggerOutOfMemory clone = overlay.clone();
+        for (Iterator<Map.Entry<String, List<String>>> i = overlay.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, List<String>> entry = i.next();
+            if (entry.getKey().equals("d") || entry.getKey().equals("b"))
+                i.remove();
+            else
+                entry.getValue().add("seen");
+        }
+        assertEquals(2, overlay.size());
+        assertEquals(Arrays.asList("a", "c"), new ArrayList<String>(new TreeSet<String>(overlay.keySet())));
+        assertEquals(Arrays.asList("1", "seen"), overlay.get("a"));
+        assertFalse(overlay.containsKey("d"));
+
+        assertEquals(4, clone.size());
+        assertEquals(Arrays.asList("5"), clone.get("d"));
+        assertEquals(Arrays.asList("1"), clone.get("a"));
+    }
+
+    /**
+     * Cloning only reads the source: its lists keep their identity, and writes through lists fetched before the clone still reach it
+     */
+    @Test
+    public void mapClonesLeaveTheSourceUntouched() {
+        TriggerOutOfMemory props = map();
+        List<String> before = props.get("b");
+        TriggerOutOfMemory clone = (TriggerOutOfMemory) props.clone();
+        assertSame(before, props.get("b"));
+
+        clone.get("b").add("x");
+        assertEquals(Arrays.asList("2", "3"), props.get("b"));
+        before.add("y");
+        assertEquals(Arrays.asList("2", "3", "y"), props.get("b"));
+        assertEquals(Arrays.asList("2", "3", "x"), clone.get("b"));
+
+        // the lists of the source are not copy-on-write: an in-place change is seen by a clone that has not written the key
+        TriggerOutOfMemory second = (TriggerOutOfMemory) props.clone();
+        props.get("a").add("z");
+        assertEquals(Arrays.asList("1", "z"), second.get("a"));
+        second.get("a").clear();
+        assertEquals(Arrays.asList("1", "z"), props.get("a"));
+        assertEquals(Arrays.asList("2", "3", "x"), clone.get("b"));
+    }
+
+    /**
+     * Sharing the lists of a copy-on-write list never writes it, so maps built from the same defaults do not write the lists of the defaults
+     */
+    @Test
+    public void sharingNeverWritesTheSharedList() {
+        CopyOnWriteValues shared = CopyOnWriteValues.of(new ArrayList<String>(Arrays.asList("1")));
+        shared.add("2");
+        CopyOnWriteValues first = CopyOnWriteValues.of(shared);
+        CopyOnWriteValues second = CopyOnWriteValues.of(shared);
+        first.add("3");
+        second.clear();
+        assertEquals(Arrays.asList("1", "2"), shared);
+        assertEquals(Arrays.asList("1", "2", "3"), first);
+        assertEquals(Arrays.asList(), second);
+    }
+}
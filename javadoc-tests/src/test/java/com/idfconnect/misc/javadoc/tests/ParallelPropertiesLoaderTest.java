@@ -0,0 +1,79 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that parallel parsing gives the same results as a sequential parse, including the order of the values of keys repeated across chunks
+ */
+public class ParallelPropertiesLoaderTest {
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fileChunksMatchSequential() throws Exception {
+        // more than 4 chunks of the minimum chunk size
+        String text = TestInputs.lines(80000, 1);
+        Path path = TestInputs.write(folder.newFile().toPath(), text);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            TriggerOutOfMemory expected = builder.build(path.toString());
+            assertEquals(expected, builder.parallelism(4).build(path.toString()));
+        }
+    }
+
+    @Test
+    public void readerBatchesMatchSequential() throws Exception {
+        // more than two batches of lines
+        String text = TestInputs.lines(40000, 2);
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            TriggerOutOfMemory expected = builder.build(new BufferedReader(new StringReader(text)));
+            assertEquals(expected, builder.parallelism(3).build(new BufferedReader(new StringReader(text))));
+        }
+    }
+
+    /**
+     * With two threads and input of two to three minimum chunks, the file is split in two at the line boundary after its middle. The input is padded so
+     * the middle falls on the \r of a \r\n terminator, between the \r and the \n, and on the start of a line
+     */
+    @Test
+    public void chunkBoundaryAtLineTerminator() throws Exception {
+        String lines = TestInputs.lines(33000, 3);
+        for (int boundary = 0; boundary < 3; boundary++) {
+            String text = padded(lines, boundary);
+            assertTrue(TestInputs.utf8(text).length >= 2 * MIN_CHUNK_SIZE && TestInputs.utf8(text).length < 3 * MIN_CHUNK_SIZE);
+            Path path = TestInputs.write(folder.newFile().toPath(), text);
+            for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+                TriggerOutOfMemory expected = builder.build(new BufferedReader(new StringReader(text)));
+                assertEquals("boundary " + boundary, expected, builder.parallelism(2).build(path.toString()));
+            }
+        }
+    }
+
+    /**
+     * Pads the first line until the middle byte of the text is a \r before a \n, the \n after a \r, or the first byte of a line. Every line ends with
+     * \r\n here
+     */
+    private static String padded(String lines, int boundary) {
+        String crlf = lines.replace("\r\n", "\n").replace("\n", "\r\n");
+        for (int pad = 0;; pad++) {
+            StringBuilder sb = new StringBuilder("pad=");
+            for (int i = 0; i < pad; i++)
+                sb.append('p');
+            String text = sb.append("\r\n").append(crlf).toString();
+            byte[] bytes = TestInputs.utf8(text);
+            int middle = bytes.length / 2;
+            if (boundary == 0 ? bytes[middle] == '\r' : boundary == 1 ? bytes[middle - 1] == '\r' : bytes[middle - 1] == '\n')
+                return text;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableSet;
+
+import org.junit.Test;
+
+/**
+ * Checks that a prefix view follows its map and that its copy is independent of it
+ */
+public class PrefixViewTest {
+    private static TriggerOutOfMemory map() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        props.add("db.url", "jdbc:x");
+        props.add("db.pool", "1");
+        props.add("db.pool", "2");
+        props.add("dbx", "outside");
+        props.add("web.port", "80");
+        return props;
+    }
+
+    @Test
+    public void viewFollowsTheMap() {
+        TriggerOutOfMemory props = map();
+        PrefixView view = props.subView("db.");
+        assertEquals(2, view.size());
+        assertEquals("jdbc:x", view.getFirstValue("url"));
+        props.add("db.user", "u");
+        props.remove("db.url");
+        assertEquals(2, view.size());
+        assertNull(view.get("url"));
+        assertEquals(Arrays.asList("u"), view.get("user"));
+        assertEquals(Arrays.asList("pool", "user"), Arrays.asList(view.keySet().toArray()));
+    }
+
+    @Test
+    public void copyDoesNotShareValueLists() {
+        TriggerOutOfMemory props = map();
+        TriggerOutOfMemory copy = props.subView("db.").copy();
+        assertEquals(Arrays.asList("1", "2"), copy.get("pool"));
+
+        copy.get("pool").add("3");
+        assertEquals(Arrays.asList("1", "2"), props.get("db.pool"));
+        props.get("db.pool").set(0, "changed");
+        assertEquals(Arrays.asList("1", "2", "3"), copy.get("pool"));
+    }
+
+    @Test
+    public void removalsOutsideRemoveArePruned() {
+        TriggerOutOfMemory props = map();
+        PrefixView view = props.subView("db.");
+        assertEquals(2, view.size());
+        props.compute("db.url", (k, v) -> null);
+        props.computeIfPresent("db.pool", (k, v) -> null);
+        props.merge("web.port", Arrays.asList("x"), (a, b) -> null);
+        assertEquals(0, view.size());
+        assertEquals(Arrays.asList("dbx"), Arrays.asList(props.keyIndex().toArray()));
+    }
+
+    /**
+     * Keys removed through the views and iterators of the map cannot be seen by the index, which is rebuilt before it holds more of them than live keys
+     */
+    @Test
+    public void churningKeysKeepTheIndexBounded() {
+        TriggerOutOfMemory props = map();
+        PrefixView view = props.subView("db.");
+        assertEquals(2, view.size());
+        for (int i = 0; i < 10000; i++) {
+            props.add("db.temp" + i, "x");
+            if (i % 2 == 0)
+                props.keySet().remove("db.temp" + i);
+            else
+                props.entrySet().removeIf(entry -> entry.getKey().startsWith("db.temp"));
+            assertTrue(props.keyIndex().size() <= 2 * props.size() + 17);
+        }
+        assertEquals(2, view.size());
+        assertEquals(Arrays.asList("pool", "url"), Arrays.asList(view.keySet().toArray()));
+    }
+
+    /**
+     * Defaults are indexed when they are set on the builder, so builds only visit the defaults under their prefix and never index the shared map
+     */
+    @Test
+    public void defaultsAreIndexedOnce() throws Exception {
+        TriggerOutOfMemory defaults = map();
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().prefix("db.").defaults(defaults);
+        NavigableSet<String> index = defaults.keyIndex();
+        TriggerOutOfMemory built = builder.build(Collections.<String, String> emptyMap());
+        assertEquals(Arrays.asList("1", "2"), built.get("pool"));
+        assertEquals(Arrays.asList("jdbc:x"), built.get("url"));
+        assertEquals(2, built.size());
+        assertSame(index, defaults.keyIndex());
+    }
+}
@@ -0,0 +1,102 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Checks that what the writer writes reads back into the same map, through every kind of output
+ */
+public class PropertiesWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * More text than the character and encoding buffers hold, with repeated values, values with inner spaces and non-ASCII characters
+     */
+    private static TriggerOutOfMemory entries() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        for (int i = 0; i < 20000; i++) {
+            List<String> values = new ArrayList<String>();
+            for (int j = 0; j <= i % 4; j++)
+                values.add((j == 1) ? "same" : "v " + i + "\u00e9\u4e2d" + j);
+            props.put("key" + i, values);
+        }
+        return props;
+    }
+
+    @Test
+    public void roundTripThroughEveryOutput() throws Exception {
+        TriggerOutOfMemory props = entries();
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            PropertiesWriter writer = builder.writer();
+
+            StringWriter text = new StringWriter();
+            writer.write(props, text);
+            assertEquals(props, builder.build(new BufferedReader(new StringReader(text.toString()))));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writer.write(props, bytes);
+            assertEquals(props, builder.build(reader(bytes.toByteArray())));
+
+            ByteArrayOutputStream channel = new ByteArrayOutputStream();
+            writer.write(props, Channels.newChannel(channel));
+            assertEquals(props, builder.build(reader(channel.toByteArray())));
+
+            Path path = folder.newFile().toPath();
+            writer.write(props, path.toString());
+            assertEquals(props, builder.build(path.toString()));
+            assertEquals(props, builder.memoryMapped().build(path.toString()));
+        }
+    }
+
+    @Test
+    public void sortedKeysReadBackTheSame() throws Exception {
+        TriggerOutOfMemory props = entries();
+        StringWriter text = new StringWriter();
+        TriggerOutOfMemory.writer().sortKeys().write(props, text);
+        assertEquals(props, TriggerOutOfMemory.builder().build(new BufferedReader(new StringReader(text.toString()))));
+        assertTrue(text.toString().startsWith("key0="));
+    }
+
+    @Test
+    public void entriesThatWouldNotReadBackAreRejected() {
+        rejected(TriggerOutOfMemory.writer(), "a=b", "v");
+        rejected(TriggerOutOfMemory.writer(), "a\nb", "v");
+        rejected(TriggerOutOfMemory.writer().delimiter(","), "a", "x,y");
+        rejected(TriggerOutOfMemory.writer(), "a");
+    }
+
+    private static void rejected(PropertiesWriter writer, String key, String... values) {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        props.put(key, new ArrayList<String>(Arrays.asList(values)));
+        try {
+            writer.write(props, new StringWriter());
+            fail("wrote " + props);
+        } catch (CollectionProviderException expected) {
+        }
+    }
+
+    private static BufferedReader reader(byte[] bytes) {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+    }
+}
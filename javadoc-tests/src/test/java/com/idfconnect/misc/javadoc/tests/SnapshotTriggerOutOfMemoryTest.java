@@ -0,0 +1,151 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idfconnect.ssorest.common.collections.CollectionProviderException;
+
+/**
+ * Checks that a snapshot serves the same entries as the file it was written from, only to builders with the same configuration, and that corrupt
+ * snapshots are rejected when opened
+ */
+public class SnapshotTriggerOutOfMemoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        Path source = TestInputs.write(folder.newFile().toPath(), TestInputs.lines(2000, 4));
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            String snapshot = new File(folder.getRoot(), "snapshot" + System.nanoTime()).getPath();
+            TriggerOutOfMemory expected = builder.build(source.toString());
+            assertTrue(builder.buildFromSnapshot(snapshot, source.toString()) instanceof TriggerOutOfMemory);
+            MultiValuedLookup mapped = builder.buildFromSnapshot(snapshot, source.toString());
+            assertTrue(mapped instanceof SnapshotTriggerOutOfMemory);
+            assertEquals(expected, mapped);
+            assertEquals(expected, ((SnapshotTriggerOutOfMemory) mapped).thaw());
+            for (String key : expected.keySet())
+                assertEquals(expected.getFirstValue(key), mapped.getFirstValue(key));
+        }
+    }
+
+    @Test
+    public void changedSourceIsParsedAgain() throws Exception {
+        Path source = TestInputs.write(folder.newFile().toPath(), "a=1\nb=2\n");
+        String snapshot = new File(folder.getRoot(), "snapshot").getPath();
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder();
+        builder.buildFromSnapshot(snapshot, source.toString());
+        // same size, different contents
+        TestInputs.write(source, "a=1\nb=3\n");
+        MultiValuedLookup reparsed = builder.buildFromSnapshot(snapshot, source.toString());
+        assertTrue(reparsed instanceof TriggerOutOfMemory);
+        assertEquals("3", reparsed.getFirstValue("b"));
+        assertEquals("3", builder.buildFromSnapshot(snapshot, source.toString()).getFirstValue("b"));
+    }
+
+    @Test
+    public void fingerprintCoversTheConfiguration() {
+        TriggerOutOfMemory defaults = new TriggerOutOfMemory();
+        for (int i = 0; i < 100; i++)
+            defaults.add("key" + i, "v" + i);
+        TriggerOutOfMemory reordered = new TriggerOutOfMemory();
+        List<String> keys = new ArrayList<String>(defaults.keySet());
+        Collections.reverse(keys);
+        for (String key : keys)
+            reordered.put(key, new ArrayList<String>(defaults.get(key)));
+
+        long fingerprint = TriggerOutOfMemory.builder().defaults(defaults).fingerprint();
+        assertEquals(fingerprint, TriggerOutOfMemory.builder().defaults(defaults).fingerprint());
+        assertEquals(fingerprint, TriggerOutOfMemory.builder().defaults(reordered).fingerprint());
+        reordered.add("key7", "more");
+        assertNotEquals(fingerprint, TriggerOutOfMemory.builder().defaults(reordered).fingerprint());
+        assertNotEquals(fingerprint, TriggerOutOfMemory.builder().defaults(defaults).delimiter(",").fingerprint());
+        assertNotEquals(fingerprint, TriggerOutOfMemory.builder().defaults(defaults).quotedValues().fingerprint());
+        assertNotEquals(fingerprint, TriggerOutOfMemory.builder().fingerprint());
+    }
+
+    @Test
+    public void snapshotIsOnlyServedToTheSameConfiguration() throws Exception {
+        Path source = TestInputs.write(folder.newFile().toPath(), "a=1,2\n");
+        String snapshot = new File(folder.getRoot(), "snapshot").getPath();
+        TriggerOutOfMemory.builder().buildFromSnapshot(snapshot, source.toString());
+        MultiValuedLookup split = TriggerOutOfMemory.builder().delimiter(",").buildFromSnapshot(snapshot, source.toString());
+        assertTrue(split instanceof TriggerOutOfMemory);
+        assertEquals(Arrays.asList("1", "2"), ((TriggerOutOfMemory) split).get("a"));
+    }
+
+    @Test
+    public void corruptSnapshotsAreRejected() throws Exception {
+        Path source = TestInputs.write(folder.newFile().toPath(), "a=1\nb=2,3\n");
+        Path snapshot = new File(folder.getRoot(), "snapshot").toPath();
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().delimiter(",");
+        TriggerOutOfMemory expected = builder.build(source.toString());
+        builder.buildFromSnapshot(snapshot.toString(), source.toString());
+        byte[] valid = Files.readAllBytes(snapshot);
+        int stringCount = ByteBuffer.wrap(valid).getInt(32);
+        int keyCount = ByteBuffer.wrap(valid).getInt(36);
+        int keyIds = 52 + 4 * (stringCount + 1);
+        int valueOffsets = keyIds + 8 * keyCount;
+        int valueIds = valueOffsets + 4 * (keyCount + 1);
+
+        // a String id past the string table, a value offset going backwards, a duplicated key and a truncated file
+        corruptAndCheck(snapshot, valid, keyIds, stringCount, builder, source, expected);
+        corruptAndCheck(snapshot, valid, valueIds, -2, builder, source, expected);
+        corruptAndCheck(snapshot, valid, valueOffsets + 4, 100, builder, source, expected);
+
+        // a hash table holding one key twice and another not at all
+        int table = valueIds + 4 * ByteBuffer.wrap(valid).getInt(40);
+        int capacity = ByteBuffer.wrap(valid).getInt(44);
+        int first = -1;
+        int second = -1;
+        for (int slot = 0; slot < capacity && second == -1; slot++) {
+            if (ByteBuffer.wrap(valid).getInt(table + 4 * slot) == 0)
+                continue;
+            if (first == -1)
+                first = slot;
+            else
+                second = slot;
+        }
+        assertTrue(second != -1);
+        corruptAndCheck(snapshot, valid, table + 4 * second, ByteBuffer.wrap(valid).getInt(table + 4 * first), builder, source, expected);
+        Files.write(snapshot, Arrays.copyOf(valid, valid.length - 1));
+        assertRejected(snapshot);
+    }
+
+    private static void corruptAndCheck(Path snapshot, byte[] valid, int position, int value, TriggerOutOfMemory.Builder builder, Path source,
+            TriggerOutOfMemory expected) throws Exception {
+        byte[] corrupt = valid.clone();
+        ByteBuffer.wrap(corrupt).putInt(position, value);
+        Files.write(snapshot, corrupt);
+        assertRejected(snapshot);
+        // the build falls back to parsing the source and rewrites the snapshot
+        MultiValuedLookup props = builder.buildFromSnapshot(snapshot.toString(), source.toString());
+        assertTrue(props instanceof TriggerOutOfMemory);
+        assertEquals(expected, props);
+        assertEquals(expected, SnapshotTriggerOutOfMemory.open(snapshot));
+    }
+
+    private static void assertRejected(Path snapshot) {
+        try {
+            SnapshotTriggerOutOfMemory.open(snapshot);
+            fail("Expected the corrupt snapshot to be rejected");
+        } catch (CollectionProviderException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the values shared from the System properties are kept while they are unchanged and split again as soon as they change
+ */
+public class SystemPropertiesSnapshotTest {
+    private static final String PREFIX = "snapshottest.";
+
+    private Properties          original;
+
+    @Before
+    public void setUp() {
+        SystemPropertiesSnapshot.current();
+        original = System.getProperties();
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperties(original);
+        original.stringPropertyNames().stream().filter(name -> name.startsWith(PREFIX)).forEach(System::clearProperty);
+        SystemPropertiesSnapshot.invalidate();
+    }
+
+    @Test
+    public void unchangedPropertiesKeepTheSnapshot() {
+        SystemPropertiesSnapshot snapshot = SystemPropertiesSnapshot.current();
+        System.getProperty(PREFIX + "a");
+        assertSame(snapshot, SystemPropertiesSnapshot.current());
+    }
+
+    @Test
+    public void setPropertyIsSeenByTheNextLookup() {
+        SystemPropertiesSnapshot snapshot = SystemPropertiesSnapshot.current();
+        assertEquals(Collections.emptyMap(), snapshot.withPrefix(PREFIX));
+        System.setProperty(PREFIX + "a", "x,y");
+        assertSame(snapshot, SystemPropertiesSnapshot.current());
+        assertEquals(Arrays.asList("x", "y"), snapshot.withPrefix(PREFIX).get("a"));
+        System.setProperty(PREFIX + "a", "z");
+        assertEquals(Arrays.asList("z"), snapshot.withPrefix(PREFIX).get("a"));
+        System.clearProperty(PREFIX + "a");
+        assertNull(snapshot.withPrefix(PREFIX).get("a"));
+    }
+
+    @Test
+    public void unchangedValuesUnderThePrefixAreShared() {
+        System.setProperty(PREFIX + "a", "x,y");
+        SystemPropertiesSnapshot snapshot = SystemPropertiesSnapshot.current();
+        Map<String, List<String>> values = snapshot.withPrefix(PREFIX);
+        System.setProperty("other." + PREFIX + "a", "changed");
+        try {
+            assertSame(values, snapshot.withPrefix(PREFIX));
+        } finally {
+            System.clearProperty("other." + PREFIX + "a");
+        }
+    }
+
+    /**
+     * A value replaced by one with the same hash code is still seen as a change
+     */
+    @Test
+    public void sameHashValuesAreCompared() {
+        System.setProperty(PREFIX + "a", "Aa");
+        SystemPropertiesSnapshot snapshot = SystemPropertiesSnapshot.current();
+        assertEquals(Arrays.asList("Aa"), snapshot.withPrefix(PREFIX).get("a"));
+        System.setProperty(PREFIX + "a", "BB");
+        assertEquals(Arrays.asList("BB"), snapshot.withPrefix(PREFIX).get("a"));
+    }
+
+    @Test
+    public void replacedPropertiesAreReadAgain() {
+        Properties replacement = new Properties();
+        replacement.putAll(original);
+        replacement.setProperty(PREFIX + "b", "z");
+        System.setProperties(replacement);
+        assertEquals(Arrays.asList("z"), SystemPropertiesSnapshot.current().withPrefix(PREFIX).get("b"));
+        System.setProperty(PREFIX + "b", "w");
+        assertEquals(Arrays.asList("w"), SystemPropertiesSnapshot.current().withPrefix(PREFIX).get("b"));
+    }
+
+    /**
+     * Changes made through the views of the properties, or through a reference taken before, are seen without a refresh
+     */
+    @Test
+    public void viewChangesAreSeen() throws Exception {
+        Properties earlier = System.getProperties();
+        earlier.setProperty(PREFIX + "c", "1");
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().prefix(PREFIX).useSystemPropertiesAsDefaults();
+        assertEquals(Arrays.asList("1"), builder.build(Collections.<String, String> emptyMap()).get("c"));
+        System.getProperties().entrySet().removeIf(entry -> entry.getKey().equals(PREFIX + "c"));
+        assertNull(builder.build(Collections.<String, String> emptyMap()).get("c"));
+        earlier.put(PREFIX + "c", "2");
+        assertEquals(Arrays.asList("2"), builder.build(Collections.<String, String> emptyMap()).get("c"));
+    }
+
+    /**
+     * A build reads the System properties in place: the JVM-wide properties object is never replaced, so references to it and its defaults stay live
+     */
+    @Test
+    public void buildsNeverReplaceTheSystemProperties() throws Exception {
+        Properties before = System.getProperties();
+        SystemPropertiesSnapshot.invalidate();
+        TriggerOutOfMemory.builder().prefix(PREFIX).useSystemPropertiesAsDefaults().build(Collections.<String, String> emptyMap());
+        TriggerOutOfMemory.builder().prefix(PREFIX).loadSystemProperties().build(Collections.<String, String> emptyMap());
+        assertSame(before, System.getProperties());
+
+        Properties defaults = new Properties();
+        defaults.setProperty(PREFIX + "fromDefaults", "d");
+        Properties withDefaults = new Properties(defaults);
+        withDefaults.putAll(original);
+        System.setProperties(withDefaults);
+        TriggerOutOfMemory.builder().prefix(PREFIX).useSystemPropertiesAsDefaults().build(Collections.<String, String> emptyMap());
+        assertSame(withDefaults, System.getProperties());
+        assertEquals("d", System.getProperty(PREFIX + "fromDefaults"));
+    }
+}
@@ -0,0 +1,73 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates properties text that exercises the parsers: repeated keys, quoted and unquoted values, comments, blank lines, lines without '=', non-ASCII
+ * characters and a mix of \n and \r\n terminators
+ */
+final class TestInputs {
+    private TestInputs() {
+    }
+
+    /**
+     * Returns the builders whose results are compared: no delimiter, a comma delimiter, and a comma delimiter with quoted values
+     *
+     * @return new builders, which the caller may configure further
+     */
+    static TriggerOutOfMemory.Builder[] builders() {
+        return new TriggerOutOfMemory.Builder[] { TriggerOutOfMemory.builder(), TriggerOutOfMemory.builder().delimiter(","),
+                TriggerOutOfMemory.builder().delimiter(",").quotedValues() };
+    }
+
+    /**
+     * Returns the given number of lines, with keys repeated across the whole text
+     *
+     * @param count
+     * @param seed
+     * @return
+     */
+    static String lines(int count, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            line(sb, random, i);
+        return sb.toString();
+    }
+
+    static void line(StringBuilder sb, Random random, int i) {
+        String key = "key" + random.nextInt(200);
+        switch (random.nextInt(10)) {
+        case 0:
+            sb.append("# comment ").append(i);
+            break;
+        case 1:
+            sb.append(random.nextBoolean() ? "" : "   ");
+            break;
+        case 2:
+            sb.append("noequals").append(i);
+            break;
+        case 3:
+            sb.append(key).append(" = \"q").append(i).append(", r\u00e9").append(i).append("\",tail");
+            break;
+        case 4:
+            sb.append(key).append("=\u4e2d").append(i);
+            break;
+        default:
+            sb.append(key).append(" = v").append(i).append(",w").append(random.nextInt(10)).append(", x");
+        }
+        sb.append(random.nextBoolean() ? "\r\n" : "\n");
+    }
+
+    static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Path write(Path path, String text) throws IOException {
+        return Files.write(path, utf8(text));
+    }
+}
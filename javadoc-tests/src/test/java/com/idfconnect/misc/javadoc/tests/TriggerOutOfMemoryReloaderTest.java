@@ -0,0 +1,110 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the reloader publishes a new map when, and only when, the contents of its file change
+ */
+public class TriggerOutOfMemoryReloaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changedContentsArePublished() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), "a=1\nb=2\n");
+        TriggerOutOfMemory.Builder builder = TriggerOutOfMemory.builder().delimiter(",");
+        try (TriggerOutOfMemoryReloader reloader = new TriggerOutOfMemoryReloader(builder, path.toString())) {
+            List<Set<String>> notified = new ArrayList<Set<String>>();
+            reloader.addListener((previous, current, changedKeys) -> notified.add(changedKeys));
+            TriggerOutOfMemory first = reloader.get();
+            assertEquals(builder.build(path.toString()), first);
+
+            TestInputs.write(path, "a=1\nb=3,4\nc=5\n");
+            assertTrue(reloader.reload());
+            assertEquals(builder.build(path.toString()), reloader.get());
+            assertEquals(Arrays.asList("1"), first.get("a"));
+            assertEquals(Arrays.asList(new HashSet<String>(Arrays.asList("b", "c"))), notified);
+        }
+    }
+
+    @Test
+    public void touchedFileIsNotRebuilt() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), "a=1\n");
+        try (TriggerOutOfMemoryReloader reloader = new TriggerOutOfMemoryReloader(TriggerOutOfMemory.builder(), path.toString())) {
+            TriggerOutOfMemory first = reloader.get();
+            TestInputs.write(path, "a=1\n");
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            assertFalse(reloader.reload());
+            assertTrue(first == reloader.get());
+        }
+    }
+
+    @Test
+    public void sameSizeRewriteWithinTheClockGranularityIsSeen() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), "a=1\n");
+        FileTime modified = Files.getLastModifiedTime(path);
+        try (TriggerOutOfMemoryReloader reloader = new TriggerOutOfMemoryReloader(TriggerOutOfMemory.builder(), path.toString())) {
+            TestInputs.write(path, "a=2\n");
+            Files.setLastModifiedTime(path, modified);
+            assertTrue(reloader.reload());
+            assertEquals("2", reloader.get().getFirstValue("a"));
+        }
+    }
+
+    @Test
+    public void parallelBuilderMatchesSequential() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), TestInputs.lines(80000, 8));
+        for (TriggerOutOfMemory.Builder builder : TestInputs.builders()) {
+            TriggerOutOfMemory expected = builder.build(path.toString());
+            try (TriggerOutOfMemoryReloader reloader = new TriggerOutOfMemoryReloader(builder.parallelism(4), path.toString())) {
+                assertEquals(expected, reloader.get());
+            }
+        }
+    }
+
+    /**
+     * An Error thrown while reloading must not cancel the polling task, which would silently stop all later reloads
+     */
+    @Test
+    public void pollingSurvivesAnError() throws Exception {
+        Path path = TestInputs.write(folder.newFile().toPath(), "a=1\n");
+        try (TriggerOutOfMemoryReloader reloader = new TriggerOutOfMemoryReloader(TriggerOutOfMemory.builder().memoryMapped(), path.toString())) {
+            AtomicInteger reloads = new AtomicInteger();
+            reloader.addListener((previous, current, changedKeys) -> {
+                if (reloads.incrementAndGet() == 1)
+                    throw new StackOverflowError("thrown by the test");
+            });
+            reloader.startPolling(10, TimeUnit.MILLISECONDS);
+            TestInputs.write(path, "a=22\n");
+            awaitValue(reloader, "22");
+            TestInputs.write(path, "a=333\n");
+            awaitValue(reloader, "333");
+            // a poll may catch a file half rewritten and reload it once more
+            assertTrue(String.valueOf(reloads.get()), reloads.get() >= 2);
+        }
+    }
+
+    private static void awaitValue(TriggerOutOfMemoryReloader reloader, String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!expected.equals(reloader.get().getFirstValue("a")) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(expected, reloader.get().getFirstValue("a"));
+    }
+}
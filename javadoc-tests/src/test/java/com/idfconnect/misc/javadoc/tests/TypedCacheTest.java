@@ -0,0 +1,153 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks that the typed getters of {@link TriggerOutOfMemory} cache what they parse, and never serve a value that is no longer the first value of its key
+ */
+public class TypedCacheTest {
+    private static TriggerOutOfMemory map() {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        props.add("int", "1");
+        props.add("long", "9000000000");
+        props.add("double", "1.5");
+        props.add("duration", "PT30S");
+        props.add("millis", "250");
+        props.add("unit", "SECONDS");
+        props.add("flag", "yes");
+        return props;
+    }
+
+    @Test
+    public void putAddAndRemoveInvalidate() {
+        TriggerOutOfMemory props = map();
+        assertEquals(1, props.getFirstValueAsInt("int"));
+        props.put("int", "2");
+        assertEquals(2, props.getFirstValueAsInt("int"));
+        props.remove("int");
+        assertEquals(-1, props.getFirstValueAsInt("int", -1));
+        props.add("int", "3");
+        assertEquals(3, props.getFirstValueAsInt("int"));
+        props.add("int", "4");
+        assertEquals(3, props.getFirstValueAsInt("int"));
+
+        assertTrue(props.getFirstValueAsBoolean("flag", false));
+        props.put("flag", "no");
+        assertFalse(props.getFirstValueAsBoolean("flag", true));
+        props.putAll(map());
+        assertTrue(props.getFirstValueAsBoolean("flag", false));
+        assertEquals(1, props.getFirstValueAsInt("int"));
+        props.clear();
+        assertEquals(7, props.getFirstValueAsInt("int", 7));
+    }
+
+    /**
+     * A list changed directly never goes through the map, so the cache must notice that the first value is another String
+     */
+    @Test
+    public void listChangedDirectlyIsNotServedStale() {
+        TriggerOutOfMemory props = map();
+        assertEquals(9000000000L, props.getFirstValueAsLong("long"));
+        props.get("long").set(0, "42");
+        assertEquals(42L, props.getFirstValueAsLong("long"));
+
+        assertEquals(Duration.ofSeconds(30), props.getFirstValueAsDuration("duration"));
+        List<String> durations = props.get("duration");
+        durations.clear();
+        assertEquals(Duration.ofMinutes(1), props.getFirstValueAsDuration("duration", Duration.ofMinutes(1)));
+        durations.add("PT2M");
+        assertEquals(Duration.ofMinutes(2), props.getFirstValueAsDuration("duration"));
+
+        // an equal but distinct String is parsed again rather than matched by contents
+        assertEquals(1.5, props.getFirstValueAsDouble("double"), 0);
+        props.get("double").set(0, new String("1.5"));
+        assertEquals(1.5, props.getFirstValueAsDouble("double"), 0);
+        props.get("double").set(0, "-2.25");
+        assertEquals(-2.25, props.getFirstValueAsDouble("double"), 0);
+    }
+
+    @Test
+    public void parsedObjectsAreCached() {
+        TriggerOutOfMemory props = map();
+        Duration first = props.getFirstValueAsDuration("duration");
+        assertSame(first, props.getFirstValueAsDuration("duration"));
+        assertSame(first, props.getFirstValueAsDuration("duration", Duration.ZERO));
+        assertEquals(Duration.ofMillis(250), props.getFirstValueAsDuration("millis"));
+        assertSame(TimeUnit.SECONDS, props.getFirstValueAsEnum("unit", TimeUnit.class));
+        assertSame(TimeUnit.SECONDS, props.getFirstValueAsEnum("unit", TimeUnit.DAYS));
+        assertSame(TimeUnit.DAYS, props.getFirstValueAsEnum("missing", TimeUnit.DAYS));
+    }
+
+    /**
+     * A key read as another type is parsed again, and a failed parse is not cached
+     */
+    @Test
+    public void kindsDoNotMix() {
+        TriggerOutOfMemory props = map();
+        assertEquals(1, props.getFirstValueAsInt("int"));
+        assertEquals(1L, props.getFirstValueAsLong("int"));
+        assertEquals(1.0, props.getFirstValueAsDouble("int"), 0);
+        assertEquals(Duration.ofMillis(1), props.getFirstValueAsDuration("int"));
+        assertEquals(1, props.getFirstValueAsInt("int"));
+        try {
+            props.getFirstValueAsInt("long");
+            fail("9000000000 is not an int");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+        assertEquals(9000000000L, props.getFirstValueAsLong("long"));
+        try {
+            props.getFirstValueAsEnum("unit", Thread.State.class);
+            fail("SECONDS is not a thread state");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertSame(TimeUnit.SECONDS, props.getFirstValueAsEnum("unit", TimeUnit.class));
+        try {
+            props.getFirstValueAsDuration("unit");
+            fail("SECONDS is not a duration");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+        props.put("unit", "P1X");
+        try {
+            props.getFirstValueAsDuration("unit");
+            fail("P1X is not a duration");
+        } catch (DateTimeParseException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The cached getters return what the uncached defaults of {@link MultiValuedLookup} return
+     */
+    @Test
+    public void cachedGettersMatchTheLookupDefaults() {
+        TriggerOutOfMemory props = map();
+        MultiValuedLookup plain = key -> props.get(key);
+        for (String key : Arrays.asList("int", "long", "missing")) {
+            assertEquals(key, plain.getFirstValueAsLong(key, 5), props.getFirstValueAsLong(key, 5));
+            assertEquals(key, plain.getFirstValueAsDuration(key, null), props.getFirstValueAsDuration(key, null));
+        }
+        for (String key : Arrays.asList("int", "double", "missing"))
+            assertEquals(key, plain.getFirstValueAsDouble(key, 5), props.getFirstValueAsDouble(key, 5), 0);
+        for (String key : Arrays.asList("duration", "millis"))
+            assertEquals(key, plain.getFirstValueAsDuration(key), props.getFirstValueAsDuration(key));
+        for (String key : Arrays.asList("flag", "unit", "missing"))
+            assertEquals(key, plain.getFirstValueAsBoolean(key, true), props.getFirstValueAsBoolean(key, true));
+        for (String key : Arrays.asList("unit", "missing"))
+            assertEquals(key, plain.getFirstValueAsEnum(key, TimeUnit.DAYS), props.getFirstValueAsEnum(key, TimeUnit.DAYS));
+    }
+}
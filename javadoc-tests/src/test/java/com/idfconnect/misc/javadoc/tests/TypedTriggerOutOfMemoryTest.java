@@ -0,0 +1,132 @@
+package com.idfconnect.misc.javadoc.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks the column each key is held in, and that the typed projection returns the loaded Strings and numbers whatever the column
+ */
+public class TypedTriggerOutOfMemoryTest {
+    private static TypedTriggerOutOfMemory typed(String... values) {
+        TriggerOutOfMemory props = new TriggerOutOfMemory();
+        props.put("key", Arrays.asList(values));
+        TypedTriggerOutOfMemory typed = props.toTyped();
+        // every value prints back exactly as it was loaded, whatever the column
+        assertEquals(props, typed);
+        return typed;
+    }
+
+    /**
+     * Works out the column from what the projection does: the String column returns the loaded instances, and the primitive columns take 4 (int), 8 (long
+     * or double, told apart by whether the values read as longs) or 1 (boolean) bytes per value in {@link TypedTriggerOutOfMemory#estimatedSize()}
+     */
+    private static String columnOf(String... literals) {
+        // fresh instances, so that a column printing back an interned "true" is not mistaken for one keeping the loaded Strings
+        String[] values = new String[literals.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = (literals[i] == null) ? null : new String(literals[i]);
+        TypedTriggerOutOfMemory typed = typed(values);
+        List<String> read = typed.get("key");
+        boolean kept = true;
+        for (int i = 0; i < values.length; i++)
+            kept &= (read.get(i) == values[i]);
+        // eight copies of the values make every array a multiple of 8 bytes, so alignment adds nothing
+        String[] copies = new String[8 * values.length];
+        for (int i = 0; i < copies.length; i++)
+            copies[i] = values[i % values.length];
+        long width = (typed(copies).estimatedSize() - typed().estimatedSize()) / copies.length;
+        if (kept) {
+            assertEquals("references", 4, width);
+            return "String";
+        }
+        if (width == 4)
+            return "int";
+        if (width == 1)
+            return "boolean";
+        assertEquals("primitive width", 8, width);
+        try {
+            typed.getLongValues("key");
+            return "long";
+        } catch (NumberFormatException e) {
+            return "double";
+        }
+    }
+
+    private static void assertColumn(String column, String... values) {
+        assertEquals(Arrays.toString(values), column, columnOf(values));
+    }
+
+    @Test
+    public void integersInCanonicalFormAreTyped() {
+        assertColumn("int", "42");
+        assertColumn("int", "0");
+        assertColumn("int", "-7");
+        assertColumn("int", "2147483647", "-2147483648");
+        assertColumn("long", "2147483648");
+        assertColumn("long", "-9223372036854775808");
+        assertColumn("String", "9223372036854775808");
+        assertColumn("String", "042");
+        assertColumn("String", "-0");
+        assertColumn("String", "+1");
+        assertColumn("String", "1_000");
+        assertColumn("String", " 1");
+    }
+
+    @Test
+    public void doublesAndBooleansInCanonicalFormAreTyped() {
+        assertColumn("double", "1.5");
+        assertColumn("double", "-0.0");
+        assertColumn("double", "1.0E10");
+        assertColumn("double", "NaN", "Infinity");
+        assertColumn("String", "1.50");
+        assertColumn("String", "1e10");
+        assertColumn("String", ".5");
+        assertColumn("boolean", "true", "false");
+        assertColumn("String", "TRUE");
+        assertColumn("String", "");
+    }
+
+    @Test
+    public void mixedValuesShareAColumnOrStayStrings() {
+        assertColumn("long", "1", "2147483648", "-3");
+        assertColumn("long", "9223372036854775807", "0");
+        assertColumn("String", "1", "1.5");
+        assertColumn("String", "1", "true");
+        assertColumn("String", "1", "042");
+        assertColumn("String", "1.5", "x");
+        assertColumn("String", "1", null);
+    }
+
+    @Test
+    public void gettersReadEveryColumn() {
+        TypedTriggerOutOfMemory ints = typed("1", "-2");
+        assertEquals(1, ints.getInt("key"));
+        assertEquals(1L, ints.getLong("key"));
+        assertEquals(1.0, ints.getDouble("key"), 0.0);
+        assertArrayEquals(new int[] { 1, -2 }, ints.getIntValues("key"));
+        assertArrayEquals(new long[] { 1, -2 }, ints.getLongValues("key"));
+
+        TypedTriggerOutOfMemory longs = typed("5", "4294967296");
+        assertEquals(5, longs.getInt("key"));
+        assertArrayEquals(new long[] { 5, 4294967296L }, longs.getLongValues("key"));
+        try {
+            longs.getIntValues("key");
+            fail("Expected a long beyond the int range to fail");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+
+        // values kept as Strings are parsed as the MultiValuedLookup defaults would
+        TypedTriggerOutOfMemory strings = typed("042", "1.50");
+        assertEquals(42, strings.getInt("key"));
+        assertEquals(42L, strings.getLong("key"));
+        assertArrayEquals(new double[] { 42.0, 1.5 }, strings.getDoubleValues("key"), 0.0);
+        assertEquals(-1, strings.getInt("missing", -1));
+    }
+}